@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.benchmark;
+
+import org.regexml.ExpressionFactory;
+import org.regexml.resource.FileSystemResource;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Reports the heap retained by an expression factory as the generated rule file grows. Heap usage is measured after
+ * repeated garbage collection, so results are approximate; run with a fixed heap (for example -Xms4g -Xmx4g) for
+ * stable numbers.
+ */
+public class HeapFootprint
+{
+    private static final int[] COUNTS = {1000, 10000, 50000};
+    private static final int[] DEPTHS = {1, 4, 8};
+    private static final int[] WIDTHS = {2, 16, 64};
+
+    public static void main(String[] args) throws IOException
+    {
+        System.out.println("count\tdepth\twidth\tretainedBytes\tbytesPerExpression");
+
+        for (int count : COUNTS)
+        {
+            for (int depth : DEPTHS)
+            {
+                for (int width : WIDTHS)
+                {
+                    File file = File.createTempFile("regexml-footprint", ".xml");
+
+                    try
+                    {
+                        new RuleFileGenerator(count, depth, width, 0.3, 1).generate(file);
+
+                        long before = usedHeap();
+                        ExpressionFactory expressionFactory = new ExpressionFactory(new FileSystemResource(file));
+                        long retained = usedHeap() - before;
+
+                        System.out.println(count + "\t" + depth + "\t" + width + "\t" + retained + "\t" +
+                            retained / expressionFactory.getExpressionIds().size());
+                    }
+                    finally
+                    {
+                        file.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures used heap after garbage collection has settled.
+     *
+     * @return Used heap in bytes
+     */
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+
+        for (int i = 0; i < 5; i++)
+        {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+
+        return used;
+    }
+}
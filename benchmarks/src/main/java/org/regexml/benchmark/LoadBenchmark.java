@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.regexml.ExpressionFactory;
+import org.regexml.FactoryOptions;
+import org.regexml.resource.ClassPathResource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of constructing an expression factory from the bundled test.xml file. The lazy variant skips
+ * Pattern.compile, so it measures parsing and translation to regular expression strings alone.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark
+{
+    @Param({"false", "true"})
+    public boolean validate;
+
+    private ClassPathResource resource = new ClassPathResource("test.xml");
+
+    /**
+     * Loads the file, translates every expression and compiles its pattern.
+     *
+     * @return Expression factory
+     */
+    @Benchmark
+    public ExpressionFactory load()
+    {
+        return new ExpressionFactory(resource, validate);
+    }
+
+    /**
+     * Loads the file and translates every expression without compiling patterns.
+     *
+     * @return Expression factory
+     */
+    @Benchmark
+    public ExpressionFactory translate()
+    {
+        FactoryOptions options = new FactoryOptions();
+        options.setValidate(validate);
+        options.setCompileLazily(true);
+
+        return new ExpressionFactory(resource, options);
+    }
+}
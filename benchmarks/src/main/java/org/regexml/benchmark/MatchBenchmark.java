@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.ExpressionMatch;
+import org.regexml.resource.ClassPathResource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures match throughput of the url and zipcode expressions in test.xml on inputs that match and inputs that do
+ * not. Each iteration cycles through several inputs so that branch prediction cannot learn a single input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchBenchmark
+{
+    private static final String[] URL_HITS = {
+        "http://www.regexml.org:8080/sample/resource.html?param=1#anchor",
+        "https://example.com/",
+        "mailto:someone@example.com",
+        "ftp://files.example.org/pub/archive/release-1.2.3.tar.gz",
+        "http://10.0.0.1:443/api/v1/users?id=42&sort=name"
+    };
+    private static final String[] URL_MISSES = {
+        "www.regexml.org/sample/resource.html",
+        "http//missing-colon.example.com/path",
+        "12345 not a url at all, just some text from a log line",
+        "",
+        "http://bad domain.example.com/with spaces"
+    };
+    private static final String[] ZIPCODE_HITS = {"98765", "98765-4321", "02134", "10001-0001", "55555"};
+    private static final String[] ZIPCODE_MISSES = {"9876", "98765-432", "ABCDE", "98765 4321", "987654321012"};
+
+    @Param({"url", "zipcode"})
+    public String id;
+
+    @Param({"hit", "miss"})
+    public String input;
+
+    private Expression expression;
+    private Pattern pattern;
+    private String[] inputs;
+    private int index;
+
+    /**
+     * Loads the expression and selects the inputs for this run.
+     */
+    @Setup
+    public void setUp()
+    {
+        expression = new ExpressionFactory(new ClassPathResource("test.xml")).getExpression(id);
+        pattern = expression.getPattern();
+
+        if (id.equals("url"))
+        {
+            inputs = input.equals("hit") ? URL_HITS : URL_MISSES;
+        }
+        else
+        {
+            inputs = input.equals("hit") ? ZIPCODE_HITS : ZIPCODE_MISSES;
+        }
+    }
+
+    /**
+     * Matches directly against the compiled pattern.
+     *
+     * @return True if the input matched
+     */
+    @Benchmark
+    public boolean patternFind()
+    {
+        return pattern.matcher(nextInput()).find();
+    }
+
+    /**
+     * Matches through Expression.find, which also builds an immutable match result.
+     *
+     * @return Match result or null
+     */
+    @Benchmark
+    public ExpressionMatch expressionFind()
+    {
+        return expression.find(nextInput());
+    }
+
+    /**
+     * Gets the next input in round robin order.
+     *
+     * @return Input string
+     */
+    private String nextInput()
+    {
+        String next = inputs[index];
+        index = (index + 1) % inputs.length;
+
+        return next;
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.benchmark;
+
+import org.regexml.exception.SchemaValidationException;
+import org.regexml.resource.ClassPathResource;
+
+import javax.xml.XMLConstants;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates synthetic regexml documents for scaling benchmarks. Each expression consists of a chain of nested groups
+ * <i>depth</i> levels deep, each level holding a match followed by the next group, and ends in an operator="or" group
+ * with <i>width</i> literal alternatives. Optional attributes (capture, lazy, atomic, ignoreCase and min/max ranges)
+ * are added with probability <i>attributeRatio</i>. Generation is deterministic for a given seed.
+ */
+public class RuleFileGenerator
+{
+    private static final String[] WORDS = {
+        "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet", "kilo", "lima",
+        "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra", "tango", "uniform", "victor", "whiskey",
+        "xray", "yankee", "zulu"
+    };
+    private static final String[] CLASSES = {"[a-z]", "[A-Za-z0-9]", "\\d", "\\w", "[0-9.\\-]", "\\s"};
+
+    private int count;
+    private int depth;
+    private int width;
+    private double attributeRatio;
+    private Random random;
+
+    /**
+     * Constructs a new generator.
+     *
+     * @param count Number of expressions
+     * @param depth Group nesting depth of each expression
+     * @param width Number of alternatives in each expression's operator="or" group
+     * @param attributeRatio Probability between 0 and 1 that an optional attribute is added to an element
+     * @param seed Random seed
+     */
+    public RuleFileGenerator(int count, int depth, int width, double attributeRatio, long seed)
+    {
+        this.count = count;
+        this.depth = depth;
+        this.width = width;
+        this.attributeRatio = attributeRatio;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a document.
+     *
+     * @return Document text
+     */
+    public String generate()
+    {
+        StringBuilder xml = new StringBuilder(count * (depth * 80 + width * 40 + 100));
+        xml.append("<regexml xmlns=\"http://schemas.regexml.org/expressions\">\n");
+
+        for (int i = 0; i < count; i++)
+        {
+            appendExpression(xml, i);
+        }
+
+        xml.append("</regexml>\n");
+
+        return xml.toString();
+    }
+
+    /**
+     * Generates a document and writes it to the given file in UTF-8.
+     *
+     * @param file Output file
+     * @throws IOException Indicates that the file could not be written
+     */
+    public void generate(File file) throws IOException
+    {
+        write(generate(), file);
+    }
+
+    /**
+     * Validates a generated document against the regexml schema.
+     *
+     * @param xml Document text
+     * @throws SchemaValidationException Indicates that the document is not valid
+     */
+    public static void validate(String xml) throws SchemaValidationException
+    {
+        try
+        {
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schemaFactory.newSchema(new StreamSource(new ClassPathResource("regexml.xsd").getReader())).newValidator()
+                .validate(new StreamSource(new StringReader(xml)));
+        }
+        catch (Exception e)
+        {
+            throw new SchemaValidationException("Generated document is not valid", e);
+        }
+    }
+
+    /**
+     * Gets the ID of the expression at the given index.
+     *
+     * @param index Expression index
+     * @return Expression ID
+     */
+    public static String expressionId(int index)
+    {
+        return "rule" + index;
+    }
+
+    /**
+     * Appends a single expression.
+     *
+     * @param xml Document being generated
+     * @param index Expression index
+     */
+    private void appendExpression(StringBuilder xml, int index)
+    {
+        xml.append("  <expression id=\"").append(expressionId(index)).append("\"");
+        appendCaseAttribute(xml);
+        xml.append(">\n");
+
+        if (random.nextBoolean())
+        {
+            xml.append("    <start/>\n");
+        }
+
+        appendGroup(xml, 1);
+
+        if (random.nextBoolean())
+        {
+            xml.append("    <end/>\n");
+        }
+
+        xml.append("  </expression>\n");
+    }
+
+    /**
+     * Appends a group at the given nesting level.
+     *
+     * @param xml Document being generated
+     * @param level Nesting level starting at 1
+     */
+    private void appendGroup(StringBuilder xml, int level)
+    {
+        String indent = indent(level);
+
+        if (level > depth)
+        {
+            xml.append(indent).append("<group operator=\"or\"");
+            appendQuantifierAttributes(xml);
+            xml.append(">\n");
+
+            for (int i = 0; i < width; i++)
+            {
+                xml.append(indent).append("  <match equals=\"").append(WORDS[random.nextInt(WORDS.length)])
+                    .append(i).append("\"/>\n");
+            }
+
+            xml.append(indent).append("</group>\n");
+            return;
+        }
+
+        xml.append(indent).append("<group");
+        appendQuantifierAttributes(xml);
+        appendCaseAttribute(xml);
+        xml.append(">\n");
+
+        xml.append(indent).append("  <match equals=\"");
+
+        if (random.nextBoolean())
+        {
+            xml.append(CLASSES[random.nextInt(CLASSES.length)]).append("\"");
+            appendQuantifierAttributes(xml);
+        }
+        else
+        {
+            xml.append(WORDS[random.nextInt(WORDS.length)]).append("\"");
+            appendCaseAttribute(xml);
+        }
+
+        xml.append("/>\n");
+
+        appendGroup(xml, level + 1);
+
+        xml.append(indent).append("</group>\n");
+    }
+
+    /**
+     * Optionally appends min, max, capture, lazy and atomic attributes.
+     *
+     * @param xml Document being generated
+     */
+    private void appendQuantifierAttributes(StringBuilder xml)
+    {
+        if (chance())
+        {
+            int min = random.nextInt(3);
+            xml.append(" min=\"").append(min).append("\"");
+
+            if (random.nextBoolean())
+            {
+                xml.append(" max=\"*\"");
+            }
+            else
+            {
+                xml.append(" max=\"").append(Math.max(1, min + random.nextInt(3))).append("\"");
+            }
+
+            if (chance())
+            {
+                xml.append(" lazy=\"true\"");
+            }
+        }
+
+        if (chance())
+        {
+            xml.append(" capture=\"true\"");
+        }
+
+        if (chance())
+        {
+            xml.append(" atomic=\"true\"");
+        }
+    }
+
+    /**
+     * Optionally appends the ignoreCase attribute.
+     *
+     * @param xml Document being generated
+     */
+    private void appendCaseAttribute(StringBuilder xml)
+    {
+        if (chance())
+        {
+            xml.append(" ignoreCase=\"true\"");
+        }
+    }
+
+    /**
+     * Decides whether or not to add an optional attribute.
+     *
+     * @return True if the attribute should be added
+     */
+    private boolean chance()
+    {
+        return random.nextDouble() < attributeRatio;
+    }
+
+    /**
+     * Creates the indentation for the given nesting level.
+     *
+     * @param level Nesting level
+     * @return Indentation
+     */
+    private static String indent(int level)
+    {
+        StringBuilder indent = new StringBuilder("    ");
+
+        for (int i = 1; i < level; i++)
+        {
+            indent.append("  ");
+        }
+
+        return indent.toString();
+    }
+
+    /**
+     * Writes a generated document to a file.
+     *
+     * @param args Output file, count, depth, width, attribute ratio and optional seed
+     * @throws IOException Indicates that the file could not be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 5)
+        {
+            System.err.println("Usage: RuleFileGenerator <file> <count> <depth> <width> <attributeRatio> [seed]");
+            System.exit(1);
+        }
+
+        RuleFileGenerator generator = new RuleFileGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+            Integer.parseInt(args[3]), Double.parseDouble(args[4]), args.length > 5 ? Long.parseLong(args[5]) : 1);
+        String xml = generator.generate();
+        validate(xml);
+        write(xml, new File(args[0]));
+    }
+
+    /**
+     * Writes document text to a file in UTF-8.
+     *
+     * @param xml Document text
+     * @param file Output file
+     * @throws IOException Indicates that the file could not be written
+     */
+    public static void write(String xml, File file) throws IOException
+    {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try
+        {
+            writer.write(xml);
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+}
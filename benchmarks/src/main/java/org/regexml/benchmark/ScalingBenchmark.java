@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.resource.FileSystemResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how factory load time and expression lookup latency grow with the number of expressions, their group
+ * nesting depth and the width of their operator="or" alternations. Larger documents can be selected on the command
+ * line, for example -p count=50000.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScalingBenchmark
+{
+    @Param({"1000", "10000"})
+    public int count;
+
+    @Param({"1", "8"})
+    public int depth;
+
+    @Param({"2", "64"})
+    public int width;
+
+    @Param({"0.3"})
+    public double attributeRatio;
+
+    private File file;
+    private ExpressionFactory expressionFactory;
+    private String[] ids;
+    private int index;
+
+    /**
+     * Generates and validates the rule file for this trial and loads it once for the lookup benchmark.
+     *
+     * @throws IOException Indicates that the rule file could not be written
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+        RuleFileGenerator generator = new RuleFileGenerator(count, depth, width, attributeRatio, 1);
+        String xml = generator.generate();
+        RuleFileGenerator.validate(xml);
+
+        file = File.createTempFile("regexml-scaling", ".xml");
+        RuleFileGenerator.write(xml, file); //the document that was validated, not a second one from the same generator
+
+        expressionFactory = new ExpressionFactory(new FileSystemResource(file));
+        ids = new String[Math.min(count, 1024)];
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            ids[i] = RuleFileGenerator.expressionId((int) ((long) i * count / ids.length));
+        }
+    }
+
+    /**
+     * Deletes the generated rule file.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    /**
+     * Loads, translates and compiles the whole rule file.
+     *
+     * @return Expression factory
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public ExpressionFactory load()
+    {
+        return new ExpressionFactory(new FileSystemResource(file));
+    }
+
+    /**
+     * Looks up an expression by ID.
+     *
+     * @return Expression
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public Expression lookup()
+    {
+        String id = ids[index];
+        index = (index + 1) % ids.length;
+
+        return expressionFactory.getExpression(id);
+    }
+}
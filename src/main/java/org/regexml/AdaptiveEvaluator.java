@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Evaluates an input against a list of expressions, stopping at the first expression that decides the outcome, and
+ * periodically reorders the list so that cheap expressions that usually decide the outcome run first. In ALL mode an
+ * input passes if every expression matches, so the first non-match decides; in ANY mode an input passes if some
+ * expression matches, so the first match decides. Expressions are ranked by observed cost divided by the rate at
+ * which they decide, which minimizes the expected cost of a sequential evaluation.
+ * <p>
+ * Statistics are kept in atomic counters and the evaluation order is replaced as a whole, so evaluation never locks.
+ * When priority is declared the order is never changed, which keeps findFirst() returning the first matching
+ * expression in declaration order.
+ */
+public class AdaptiveEvaluator
+{
+    /**
+     * Outcome rule of an evaluation.
+     */
+    public enum Mode {ALL, ANY}
+
+    private static final int DEFAULT_REORDER_INTERVAL = 4096;
+
+    private Expression[] expressions;
+    private Mode mode;
+    private boolean fixedPriority;
+    private int reorderInterval = DEFAULT_REORDER_INTERVAL;
+    private volatile int[] order;
+    private AtomicLongArray invocations;
+    private AtomicLongArray decisions;
+    private AtomicLongArray costNanos;
+    private AtomicLong evaluationsUntilReorder = new AtomicLong(DEFAULT_REORDER_INTERVAL);
+    private AtomicBoolean reordering = new AtomicBoolean();
+
+    /**
+     * Constructs a new evaluator.
+     *
+     * @param expressions Expressions in declaration order
+     * @param mode Outcome rule
+     * @param fixedPriority True to always evaluate in declaration order
+     */
+    public AdaptiveEvaluator(Expression[] expressions, Mode mode, boolean fixedPriority)
+    {
+        this.expressions = expressions.clone();
+        this.mode = mode;
+        this.fixedPriority = fixedPriority;
+        this.invocations = new AtomicLongArray(expressions.length);
+        this.decisions = new AtomicLongArray(expressions.length);
+        this.costNanos = new AtomicLongArray(expressions.length);
+
+        int[] initialOrder = new int[expressions.length];
+
+        for (int i = 0; i < initialOrder.length; i++)
+        {
+            initialOrder[i] = i;
+        }
+
+        this.order = initialOrder;
+    }
+
+    /**
+     * Sets the number of evaluations between reorderings.
+     *
+     * @param reorderInterval Number of evaluations
+     */
+    public void setReorderInterval(int reorderInterval)
+    {
+        this.reorderInterval = Math.max(1, reorderInterval);
+        evaluationsUntilReorder.set(this.reorderInterval);
+    }
+
+    /**
+     * Evaluates an input.
+     *
+     * @param input Input to evaluate
+     * @return In ALL mode, true if every expression matches; in ANY mode, true if some expression matches
+     */
+    public boolean evaluate(CharSequence input)
+    {
+        int decisive = evaluateInOrder(input);
+
+        return mode == Mode.ALL ? decisive < 0 : decisive >= 0;
+    }
+
+    /**
+     * Finds an expression matching the input. With declared priority this is the first matching expression in
+     * declaration order; otherwise it is the first one in the current evaluation order.
+     *
+     * @param input Input to evaluate
+     * @return ID of a matching expression or null if none matches
+     * @throws IllegalStateException Indicates that the evaluator is not in ANY mode
+     */
+    public String findFirst(CharSequence input) throws IllegalStateException
+    {
+        if (mode != Mode.ANY)
+        {
+            throw new IllegalStateException("findFirst requires ANY mode");
+        }
+
+        int decisive = evaluateInOrder(input);
+
+        return decisive < 0 ? null : expressions[decisive].getId();
+    }
+
+    /**
+     * Gets the expression IDs in the current evaluation order.
+     *
+     * @return Expression IDs
+     */
+    public String[] getOrder()
+    {
+        int[] current = order;
+        String[] ids = new String[current.length];
+
+        for (int i = 0; i < current.length; i++)
+        {
+            ids[i] = expressions[current[i]].getId();
+        }
+
+        return ids;
+    }
+
+    /**
+     * Evaluates the expressions in the current order until one decides the outcome.
+     *
+     * @param input Input to evaluate
+     * @return Index of the deciding expression or -1 if none decided
+     */
+    private int evaluateInOrder(CharSequence input)
+    {
+        int[] current = order;
+        int decisive = -1;
+
+        for (int index : current)
+        {
+            long startTime = System.nanoTime();
+            boolean matched = expressions[index].find(input) != null;
+            costNanos.addAndGet(index, System.nanoTime() - startTime);
+            invocations.incrementAndGet(index);
+
+            if (matched == (mode == Mode.ANY))
+            {
+                decisions.incrementAndGet(index);
+                decisive = index;
+                break;
+            }
+        }
+
+        if (!fixedPriority && evaluationsUntilReorder.decrementAndGet() <= 0)
+        {
+            reorder();
+        }
+
+        return decisive;
+    }
+
+    /**
+     * Publishes a new evaluation order ranked by cost per decision and decays the statistics so that the order
+     * follows changes in traffic. Only one thread reorders at a time; others keep evaluating with the old order.
+     */
+    private void reorder()
+    {
+        if (!reordering.compareAndSet(false, true))
+        {
+            return;
+        }
+
+        try
+        {
+            evaluationsUntilReorder.set(reorderInterval);
+
+            final double[] rank = new double[expressions.length];
+            Integer[] indexes = new Integer[expressions.length];
+
+            for (int i = 0; i < expressions.length; i++)
+            {
+                long count = invocations.get(i);
+                double cost = count == 0 ? 0 : (double) costNanos.get(i) / count;
+                double decisionRate = count == 0 ? 1 : (decisions.get(i) + 1.0) / (count + 2.0); //smoothed
+
+                rank[i] = cost / decisionRate;
+                indexes[i] = i;
+
+                invocations.addAndGet(i, -count / 2);
+                decisions.addAndGet(i, -decisions.get(i) / 2);
+                costNanos.addAndGet(i, -costNanos.get(i) / 2);
+            }
+
+            Arrays.sort(indexes, new Comparator<Integer>()
+            {
+                public int compare(Integer a, Integer b)
+                {
+                    return Double.compare(rank[a], rank[b]);
+                }
+            });
+
+            int[] newOrder = new int[indexes.length];
+
+            for (int i = 0; i < newOrder.length; i++)
+            {
+                newOrder[i] = indexes[i];
+            }
+
+            order = newOrder;
+        }
+        finally
+        {
+            reordering.set(false);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes a capture group declared in the expressions file: its group number, optional name and value type.
+ */
+public class CaptureDefinition
+{
+    private int group;
+    private String name;
+    private CaptureType type;
+    private List<String> constants;
+    private boolean ignoreCase;
+
+    /**
+     * Constructs a new capture definition.
+     *
+     * @param group Capture group number, counting capturing elements in document order from 1
+     * @param name Name of the capture or null if it has none
+     * @param type Value type
+     * @param constants Literal alternatives of an ENUM capture in document order, null for alternatives that are not
+     * literals; empty for other types
+     * @param ignoreCase Indicates whether or not ENUM alternatives are compared without regard to case
+     */
+    public CaptureDefinition(int group, String name, CaptureType type, List<String> constants, boolean ignoreCase)
+    {
+        this.group = group;
+        this.name = name;
+        this.type = type;
+        this.constants = Collections.unmodifiableList(constants);
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Gets the capture group number.
+     *
+     * @return Group number
+     */
+    public int getGroup()
+    {
+        return group;
+    }
+
+    /**
+     * Gets the name of the capture.
+     *
+     * @return Name or null if the capture has none
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Gets the value type of the capture.
+     *
+     * @return Value type
+     */
+    public CaptureType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Gets the literal alternatives of an ENUM capture, whose positions are the ordinals reported for the capture.
+     *
+     * @return Literal alternatives, with null for alternatives that are not literals
+     */
+    public List<String> getConstants()
+    {
+        return constants;
+    }
+
+    /**
+     * Indicates whether or not ENUM alternatives are compared without regard to case.
+     *
+     * @return True if case is ignored
+     */
+    public boolean isIgnoreCase()
+    {
+        return ignoreCase;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+/**
+ * Value type of a capture, declared with the type attribute of a capturing match or group element.
+ */
+public enum CaptureType
+{
+    /**
+     * Text, which is only available as a string.
+     */
+    STRING,
+
+    /**
+     * Decimal integer in the range of an int.
+     */
+    INT,
+
+    /**
+     * Decimal integer in the range of a long.
+     */
+    LONG,
+
+    /**
+     * One of true, false, yes, no, on, off, 1 or 0, in any case.
+     */
+    BOOLEAN,
+
+    /**
+     * One of the literal alternatives of an operator="or" group, identified by its position among the alternatives.
+     */
+    ENUM
+}
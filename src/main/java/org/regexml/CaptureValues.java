@@ -0,0 +1,446 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * Reusable holder for the captures of one match, which parses typed captures straight from the input without creating
+ * strings. Obtain one per thread from Expression.createCaptureValues() and pass it to Expression.extract() for each
+ * input; the holder keeps a single matcher that is reset for every input, so extracting values allocates nothing.
+ * Captures are parsed when their value is requested. Instances are not thread safe.
+ */
+public class CaptureValues
+{
+    private static final String[] TRUE_VALUES = {"true", "yes", "on", "1"};
+    private static final String[] FALSE_VALUES = {"false", "no", "off", "0"};
+
+    private Expression expression;
+    private Matcher matcher;
+    private CharSequence input;
+    private boolean matched;
+    private List<CaptureDefinition> captures;
+    private CaptureDefinition[] capturesByGroup;
+    private String[][] constantsByGroup;
+    private Map<String, Integer> groupsByName = new HashMap<String, Integer>();
+
+    /**
+     * Constructs a new holder for the captures of an expression.
+     *
+     * @param expression Expression whose captures are held
+     */
+    CaptureValues(Expression expression)
+    {
+        this.expression = expression;
+        this.matcher = expression.getPattern().matcher("");
+        this.captures = expression.getCaptures();
+        this.capturesByGroup = new CaptureDefinition[matcher.groupCount() + 1];
+        this.constantsByGroup = new String[capturesByGroup.length][];
+
+        for (CaptureDefinition capture : captures)
+        {
+            if (capture.getGroup() < capturesByGroup.length)
+            {
+                List<String> constants = capture.getConstants();
+
+                capturesByGroup[capture.getGroup()] = capture;
+                constantsByGroup[capture.getGroup()] = constants.toArray(new String[constants.size()]);
+            }
+
+            if (capture.getName() != null)
+            {
+                groupsByName.put(capture.getName(), capture.getGroup());
+            }
+        }
+    }
+
+    /**
+     * Gets the expression whose captures are held.
+     *
+     * @return Expression
+     */
+    public Expression getExpression()
+    {
+        return expression;
+    }
+
+    /**
+     * Finds the first match in an input, replacing the values held.
+     *
+     * @param input Input to search
+     * @param from Position at which the search starts, or -1 if the input is known not to match
+     * @return True if the expression matched
+     */
+    boolean load(CharSequence input, int from)
+    {
+        this.input = input;
+        matcher.reset(input);
+        matched = from >= 0 && matcher.find(from);
+
+        return matched;
+    }
+
+    /**
+     * Indicates whether or not the last input matched.
+     *
+     * @return True if the last input matched
+     */
+    public boolean isMatched()
+    {
+        return matched;
+    }
+
+    /**
+     * Gets the group number of a named capture.
+     *
+     * @param name Capture name
+     * @return Group number
+     * @throws IllegalArgumentException Indicates that the expression has no capture with the name
+     */
+    public int getGroup(String name) throws IllegalArgumentException
+    {
+        Integer group = groupsByName.get(name);
+
+        if (group == null)
+        {
+            throw new IllegalArgumentException("Expression " + expression.getId() + " has no capture named " + name);
+        }
+
+        return group;
+    }
+
+    /**
+     * Indicates whether or not a capture group participated in the last match.
+     *
+     * @param group Group number
+     * @return True if the group captured text
+     */
+    public boolean isPresent(int group)
+    {
+        return matched && matcher.start(group) >= 0;
+    }
+
+    /**
+     * Gets the value of an int capture.
+     *
+     * @param group Group number
+     * @return Parsed value
+     * @throws NumberFormatException Indicates that the captured text is not an int
+     * @throws IllegalStateException Indicates that the group did not participate in the last match
+     */
+    public int getInt(int group) throws NumberFormatException, IllegalStateException
+    {
+        return (int) parseLong(group, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Gets the value of a named int capture.
+     *
+     * @param name Capture name
+     * @return Parsed value
+     * @throws NumberFormatException Indicates that the captured text is not an int
+     * @throws IllegalStateException Indicates that the capture did not participate in the last match
+     */
+    public int getInt(String name) throws NumberFormatException, IllegalStateException
+    {
+        return getInt(getGroup(name));
+    }
+
+    /**
+     * Gets the value of a long capture.
+     *
+     * @param group Group number
+     * @return Parsed value
+     * @throws NumberFormatException Indicates that the captured text is not a long
+     * @throws IllegalStateException Indicates that the group did not participate in the last match
+     */
+    public long getLong(int group) throws NumberFormatException, IllegalStateException
+    {
+        return parseLong(group, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets the value of a named long capture.
+     *
+     * @param name Capture name
+     * @return Parsed value
+     * @throws NumberFormatException Indicates that the captured text is not a long
+     * @throws IllegalStateException Indicates that the capture did not participate in the last match
+     */
+    public long getLong(String name) throws NumberFormatException, IllegalStateException
+    {
+        return getLong(getGroup(name));
+    }
+
+    /**
+     * Gets the value of a boolean capture.
+     *
+     * @param group Group number
+     * @return Parsed value
+     * @throws IllegalArgumentException Indicates that the captured text is not a boolean
+     * @throws IllegalStateException Indicates that the group did not participate in the last match
+     */
+    public boolean getBoolean(int group) throws IllegalArgumentException, IllegalStateException
+    {
+        int start = start(group);
+        int end = matcher.end(group);
+
+        if (indexOf(TRUE_VALUES, start, end, true) >= 0)
+        {
+            return true;
+        }
+
+        if (indexOf(FALSE_VALUES, start, end, true) >= 0)
+        {
+            return false;
+        }
+
+        throw new IllegalArgumentException("Not a boolean: " + input.subSequence(start, end));
+    }
+
+    /**
+     * Gets the value of a named boolean capture.
+     *
+     * @param name Capture name
+     * @return Parsed value
+     * @throws IllegalArgumentException Indicates that the captured text is not a boolean
+     * @throws IllegalStateException Indicates that the capture did not participate in the last match
+     */
+    public boolean getBoolean(String name) throws IllegalArgumentException, IllegalStateException
+    {
+        return getBoolean(getGroup(name));
+    }
+
+    /**
+     * Gets the position of the captured text among the literal alternatives of an enum capture.
+     *
+     * @param group Group number
+     * @return Position of the matching alternative or -1 if the text equals none of the literal alternatives
+     * @throws IllegalStateException Indicates that the group did not participate in the last match
+     */
+    public int getOrdinal(int group) throws IllegalStateException
+    {
+        int start = start(group);
+        CaptureDefinition capture = capturesByGroup[group];
+
+        if (capture == null)
+        {
+            return -1;
+        }
+
+        return indexOf(constantsByGroup[group], start, matcher.end(group), capture.isIgnoreCase());
+    }
+
+    /**
+     * Gets the position of the captured text among the literal alternatives of a named enum capture.
+     *
+     * @param name Capture name
+     * @return Position of the matching alternative or -1 if the text equals none of the literal alternatives
+     * @throws IllegalStateException Indicates that the capture did not participate in the last match
+     */
+    public int getOrdinal(String name) throws IllegalStateException
+    {
+        return getOrdinal(getGroup(name));
+    }
+
+    /**
+     * Maps an enum capture to the Java enum constant with the same position.
+     *
+     * @param group Group number
+     * @param type Java enum whose constants are declared in the order of the alternatives
+     * @param <E> Java enum type
+     * @return Enum constant or null if the text equals none of the literal alternatives
+     * @throws IllegalStateException Indicates that the group did not participate in the last match
+     */
+    public <E extends Enum<E>> E getEnum(int group, Class<E> type) throws IllegalStateException
+    {
+        int ordinal = getOrdinal(group);
+        E[] constants = type.getEnumConstants();
+
+        return ordinal >= 0 && ordinal < constants.length ? constants[ordinal] : null;
+    }
+
+    /**
+     * Gets the text of a capture. Unlike the typed getters this creates a string.
+     *
+     * @param group Group number
+     * @return Captured text or null if the group did not participate in the last match
+     */
+    public String getString(int group)
+    {
+        return isPresent(group) ? matcher.group(group) : null;
+    }
+
+    /**
+     * Copies the values of all typed captures into an array, in the order the captures are declared. INT and LONG
+     * captures are stored as their value, BOOLEAN captures as 1 or 0 and ENUM captures as their ordinal. Entries for
+     * STRING captures and captures that did not participate in the match are left unchanged.
+     *
+     * @param values Destination with one entry per declared capture
+     * @throws NumberFormatException Indicates that a numeric capture could not be parsed
+     * @throws IllegalArgumentException Indicates that a boolean capture could not be parsed
+     */
+    public void getValues(long[] values) throws NumberFormatException, IllegalArgumentException
+    {
+        for (int i = 0; i < captures.size() && i < values.length; i++)
+        {
+            CaptureDefinition capture = captures.get(i);
+            int group = capture.getGroup();
+
+            if (!isPresent(group))
+            {
+                continue;
+            }
+
+            switch (capture.getType())
+            {
+                case INT:
+                case LONG:
+                    values[i] = getLong(group);
+                    break;
+                case BOOLEAN:
+                    values[i] = getBoolean(group) ? 1 : 0;
+                    break;
+                case ENUM:
+                    values[i] = getOrdinal(group);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Gets the start of a group that must have participated in the match.
+     *
+     * @param group Group number
+     * @return Start index
+     * @throws IllegalStateException Indicates that the group did not participate in the last match
+     */
+    private int start(int group) throws IllegalStateException
+    {
+        if (!isPresent(group))
+        {
+            throw new IllegalStateException("Capture " + group + " of expression " + expression.getId() +
+                " did not match");
+        }
+
+        return matcher.start(group);
+    }
+
+    /**
+     * Parses a decimal integer from the captured region.
+     *
+     * @param group Group number
+     * @param min Smallest allowed value
+     * @param max Largest allowed value
+     * @return Parsed value
+     * @throws NumberFormatException Indicates that the text is not a decimal integer in range
+     */
+    private long parseLong(int group, long min, long max) throws NumberFormatException
+    {
+        int start = start(group);
+        int end = matcher.end(group);
+        int i = start;
+        boolean negative = false;
+
+        if (i < end && (input.charAt(i) == '-' || input.charAt(i) == '+'))
+        {
+            negative = input.charAt(i) == '-';
+            i++;
+        }
+
+        if (i == end)
+        {
+            throw new NumberFormatException("Not a number: " + input.subSequence(start, end));
+        }
+
+        long limit = negative ? min : -max;
+        long result = 0; //accumulated negatively so that the minimum value can be represented
+
+        for (; i < end; i++)
+        {
+            int digit = Character.digit(input.charAt(i), 10);
+
+            if (digit < 0 || result < (limit + digit) / 10)
+            {
+                throw new NumberFormatException("Not a number in range: " + input.subSequence(start, end));
+            }
+
+            result = result * 10 - digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    /**
+     * Finds the string equal to a region of the input.
+     *
+     * @param candidates Candidate strings, may contain null
+     * @param start Start of the region
+     * @param end End of the region
+     * @param ignoreCase Indicates whether or not case is ignored
+     * @return Index of the first equal candidate or -1 if there is none
+     */
+    private int indexOf(String[] candidates, int start, int end, boolean ignoreCase)
+    {
+        for (int i = 0; i < candidates.length; i++)
+        {
+            String candidate = candidates[i];
+
+            if (candidate == null || candidate.length() != end - start)
+            {
+                continue;
+            }
+
+            int j = 0;
+
+            while (j < candidate.length() && equal(candidate.charAt(j), input.charAt(start + j), ignoreCase))
+            {
+                j++;
+            }
+
+            if (j == candidate.length())
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Compares two characters.
+     *
+     * @param a First character
+     * @param b Second character
+     * @param ignoreCase Indicates whether or not case is ignored
+     * @return True if the characters are equal
+     */
+    private static boolean equal(char a, char b, boolean ignoreCase)
+    {
+        return a == b || (ignoreCase && Character.toLowerCase(a) == Character.toLowerCase(b));
+    }
+}
@@ -21,6 +21,15 @@
  */
 package org.regexml;
 
+import org.regexml.metrics.ExpressionEventListener;
+import org.regexml.metrics.ExpressionMetrics;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -28,9 +37,24 @@ import java.util.regex.Pattern;
  */
 public class Expression
 {
+    private static final int STREAM_CHUNK_SIZE = 8192;
+
     private String id;
-    private Pattern pattern;
+    private volatile Pattern pattern;
     private String regExString;
+    private int flags;
+    private PatternStore patternStore;
+    private int slot;
+    private ExpressionPrefilter prefilter;
+    private List<CaptureDefinition> captures = Collections.emptyList();
+    private List<Fragment> requiredFragments = Collections.emptyList();
+    private Fragment leadingFragment;
+    private List<String> matchingExamples = Collections.emptyList();
+    private List<String> nonMatchingExamples = Collections.emptyList();
+    private volatile MatchCache cache;
+    private volatile ExpressionMetrics metrics;
+    private volatile ExpressionEventListener slowMatchListener;
+    private volatile long slowMatchThresholdNanos;
 
     /**
      * Constructs a new expression object.
@@ -44,6 +68,36 @@ public class Expression
         this.id = id;
         this.regExString = regExString;
         this.pattern = pattern;
+        this.flags = pattern.flags();
+    }
+
+    /**
+     * Constructs a new expression object whose pattern is compiled when first requested.
+     *
+     * @param id Expression ID
+     * @param regExString Regular expression string
+     * @param flags Match flags passed to Pattern.compile
+     */
+    public Expression(String id, String regExString, int flags)
+    {
+        this.id = id;
+        this.regExString = regExString;
+        this.flags = flags;
+    }
+
+    /**
+     * Constructs a new expression object whose pattern is kept in a memory-bounded pattern store.
+     *
+     * @param id Expression ID
+     * @param regExString Regular expression string
+     * @param flags Match flags passed to Pattern.compile
+     * @param patternStore Pattern store holding the compiled pattern
+     */
+    public Expression(String id, String regExString, int flags, PatternStore patternStore)
+    {
+        this(id, regExString, flags);
+        this.patternStore = patternStore;
+        this.slot = patternStore.add(regExString, flags);
     }
 
     /**
@@ -63,9 +117,32 @@ public class Expression
      */
     public Pattern getPattern()
     {
+        if (patternStore != null)
+        {
+            return patternStore.get(slot);
+        }
+
+        Pattern pattern = this.pattern;
+
+        if (pattern == null)
+        {
+            pattern = PatternPool.compile(regExString, flags);
+            this.pattern = pattern; //concurrent callers may compile twice, but will see equivalent patterns
+        }
+
         return pattern;
     }
 
+    /**
+     * Gets the match flags used to compile this expression's pattern.
+     *
+     * @return Match flags
+     */
+    public int getFlags()
+    {
+        return flags;
+    }
+
     /**
      * Gets the expression in traditional regular expression syntax.
      *
@@ -75,4 +152,491 @@ public class Expression
     {
         return regExString;
     }
+
+    /**
+     * Gets the checks used to reject inputs before the pattern is run.
+     *
+     * @return Prefilter or null if every input is passed to the pattern
+     */
+    public ExpressionPrefilter getPrefilter()
+    {
+        return prefilter;
+    }
+
+    /**
+     * Sets the checks used to reject inputs before the pattern is run.
+     *
+     * @param prefilter Prefilter derived from the expression's document or null to disable prefiltering
+     */
+    void setPrefilter(ExpressionPrefilter prefilter)
+    {
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * Gets the typed capture groups declared in the document.
+     *
+     * @return Unmodifiable list of captures, ordered by group number
+     */
+    public List<CaptureDefinition> getCaptures()
+    {
+        return captures;
+    }
+
+    /**
+     * Sets the typed capture groups declared in the document.
+     *
+     * @param captures Captures ordered by group number
+     */
+    void setCaptures(List<CaptureDefinition> captures)
+    {
+        this.captures = Collections.unmodifiableList(new ArrayList<CaptureDefinition>(captures));
+    }
+
+    /**
+     * Gets the fragments that occur in every match of this expression.
+     *
+     * @return Unmodifiable list of required fragments, empty if the expression refers to no fragment or only to
+     * optional ones
+     */
+    public List<Fragment> getRequiredFragments()
+    {
+        return requiredFragments;
+    }
+
+    /**
+     * Gets the fragment that every match of this expression starts with.
+     *
+     * @return Leading fragment or null if matches do not start with a fragment
+     */
+    public Fragment getLeadingFragment()
+    {
+        return leadingFragment;
+    }
+
+    /**
+     * Sets the fragments found in every match of this expression.
+     *
+     * @param requiredFragments Fragments that occur in every match
+     * @param leadingFragment Fragment that every match starts with or null
+     */
+    void setFragments(List<Fragment> requiredFragments, Fragment leadingFragment)
+    {
+        this.requiredFragments = Collections.unmodifiableList(new ArrayList<Fragment>(requiredFragments));
+        this.leadingFragment = leadingFragment;
+    }
+
+    /**
+     * Creates a reusable holder for this expression's captures. Create one per thread and pass it to
+     * extract(CharSequence, CaptureValues) for every input.
+     *
+     * @return New capture holder
+     */
+    public CaptureValues createCaptureValues()
+    {
+        return new CaptureValues(this);
+    }
+
+    /**
+     * Finds the first match of this expression and loads its captures into a holder, without creating a match result
+     * or capture strings. The result cache is bypassed since the holder needs the live match.
+     *
+     * @param input Input to search
+     * @param values Holder created by this expression's createCaptureValues()
+     * @return True if the expression matched
+     * @throws IllegalArgumentException Indicates that the holder was created by another expression
+     */
+    public boolean extract(CharSequence input, CaptureValues values) throws IllegalArgumentException
+    {
+        if (values.getExpression() != this)
+        {
+            throw new IllegalArgumentException("Capture values belong to expression " +
+                values.getExpression().getId());
+        }
+
+        int from = prefilter == null ? 0 : prefilter.firstCandidate(input);
+
+        return values.load(input, from);
+    }
+
+    /**
+     * Gets the example inputs declared in the document that the expression should match.
+     *
+     * @return Unmodifiable list of examples
+     */
+    public List<String> getMatchingExamples()
+    {
+        return matchingExamples;
+    }
+
+    /**
+     * Gets the example inputs declared in the document that the expression should not match.
+     *
+     * @return Unmodifiable list of examples
+     */
+    public List<String> getNonMatchingExamples()
+    {
+        return nonMatchingExamples;
+    }
+
+    /**
+     * Sets the example inputs declared in the document.
+     *
+     * @param matching Examples the expression should match
+     * @param nonMatching Examples the expression should not match
+     */
+    void setExamples(List<String> matching, List<String> nonMatching)
+    {
+        this.matchingExamples = Collections.unmodifiableList(new ArrayList<String>(matching));
+        this.nonMatchingExamples = Collections.unmodifiableList(new ArrayList<String>(nonMatching));
+    }
+
+    /**
+     * Gets the result cache used by this expression.
+     *
+     * @return Result cache or null if caching is disabled
+     */
+    public MatchCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Sets the result cache used by this expression. Caching pays off when the same inputs are matched repeatedly.
+     *
+     * @param cache Result cache or null to disable caching
+     */
+    public void setCache(MatchCache cache)
+    {
+        this.cache = cache;
+    }
+
+    /**
+     * Gets the metrics recorder used by this expression.
+     *
+     * @return Metrics recorder or null if metrics are disabled
+     */
+    public ExpressionMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics recorder used by this expression.
+     *
+     * @param metrics Metrics recorder or null to disable metrics
+     */
+    public void setMetrics(ExpressionMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the listener notified when a match takes longer than the given threshold. Every match is timed while a
+     * listener is set.
+     *
+     * @param listener Event listener or null to disable slow match reporting
+     * @param thresholdNanos Matching time in nanoseconds above which the listener is notified
+     */
+    public void setSlowMatchListener(ExpressionEventListener listener, long thresholdNanos)
+    {
+        this.slowMatchThresholdNanos = thresholdNanos;
+        this.slowMatchListener = listener;
+    }
+
+    /**
+     * Finds the first match of this expression in the given input. Results are served from the result cache when one
+     * is configured and each invocation is reported to the metrics recorder and slow match listener when configured.
+     *
+     * @param input Input to search
+     * @return Match result or null if the expression does not match
+     */
+    public ExpressionMatch find(CharSequence input)
+    {
+        ExpressionMetrics metrics = this.metrics;
+        ExpressionEventListener listener = this.slowMatchListener;
+
+        if (metrics == null && listener == null)
+        {
+            return findCached(input);
+        }
+
+        boolean sampled = metrics != null && metrics.sample();
+        boolean timed = sampled || listener != null;
+        long startTime = timed ? System.nanoTime() : 0;
+        ExpressionMatch match = findCached(input);
+        long elapsedNanos = timed ? System.nanoTime() - startTime : -1;
+
+        if (metrics != null)
+        {
+            metrics.recordInvocation(id, match != null, sampled ? elapsedNanos : -1);
+        }
+
+        if (listener != null && elapsedNanos > slowMatchThresholdNanos)
+        {
+            listener.slowMatch(id, input.length(), elapsedNanos);
+        }
+
+        return match;
+    }
+
+    /**
+     * Finds the first match of this expression in the given input, consulting the result cache if one is configured.
+     *
+     * @param input Input to search
+     * @return Match result or null if the expression does not match
+     */
+    private ExpressionMatch findCached(CharSequence input)
+    {
+        int from = prefilter == null ? 0 : prefilter.firstCandidate(input);
+
+        if (from < 0)
+        {
+            return null;
+        }
+
+        MatchCache cache = this.cache;
+
+        if (cache == null)
+        {
+            return doFind(input.toString(), from);
+        }
+
+        String key = input.toString();
+        MatchCache.Entry entry = cache.get(key);
+
+        if (entry != null)
+        {
+            return entry.getMatch();
+        }
+
+        ExpressionMatch match = doFind(key, from);
+        cache.put(key, match);
+
+        return match;
+    }
+
+    /**
+     * Finds the first match of this expression without the result cache, metrics or slow match listener. Warm-up and
+     * benchmarking use this method so that they exercise the pattern itself and do not show up in production metrics.
+     *
+     * @param input Input to search
+     * @return Match result or null if the expression does not match
+     */
+    public ExpressionMatch findUncached(CharSequence input)
+    {
+        return find(input, 0);
+    }
+
+    /**
+     * Finds the first match of this expression that starts at or after the given index, bypassing the result cache,
+     * metrics and slow match listener.
+     *
+     * @param input Input to search
+     * @param from Index in front of which no match can start
+     * @return Match result or null if the expression does not match
+     */
+    ExpressionMatch find(CharSequence input, int from)
+    {
+        int candidate = prefilter == null ? 0 : prefilter.firstCandidate(input);
+
+        if (candidate < 0)
+        {
+            return null;
+        }
+
+        return doFind(input.toString(), Math.max(from, candidate));
+    }
+
+    /**
+     * Finds the first match of this expression in the given input without consulting the cache.
+     *
+     * @param input Input to search
+     * @param from Position at which the search starts, in front of which no match can start
+     * @return Match result or null if the expression does not match
+     */
+    private ExpressionMatch doFind(String input, int from)
+    {
+        Matcher matcher = getPattern().matcher(input);
+
+        if (!matcher.find(from))
+        {
+            return null;
+        }
+
+        return new ExpressionMatch(input, matcher);
+    }
+
+    /**
+     * Replaces every match in the input, writing the result to the output as matches are found.
+     *
+     * @param input Input to search
+     * @param template Replacement for each match
+     * @param output Destination of the rewritten input, such as a Writer, StringBuilder or CharBuffer
+     * @return Number of replaced matches
+     * @throws IOException Indicates that the output could not be written
+     * @throws IllegalArgumentException Indicates that the template refers to a capture group this expression lacks
+     */
+    public int replace(CharSequence input, ReplacementTemplate template, Appendable output)
+        throws IOException, IllegalArgumentException
+    {
+        Matcher matcher = getPattern().matcher(input);
+        checkTemplate(template, matcher);
+
+        int from = prefilter == null ? 0 : prefilter.firstCandidate(input);
+        int count = 0;
+        int last = 0;
+
+        if (from >= 0 && matcher.find(from))
+        {
+            do
+            {
+                output.append(input, last, matcher.start());
+                template.appendTo(output, input, matcher);
+                last = matcher.end();
+                count++;
+            }
+            while (matcher.find());
+        }
+
+        output.append(input, last, input.length());
+
+        return count;
+    }
+
+    /**
+     * Replaces every character of every match in the input with a mask character, writing the result to the output.
+     *
+     * @param input Input to search
+     * @param mask Mask character
+     * @param output Destination of the redacted input
+     * @return Number of redacted matches
+     * @throws IOException Indicates that the output could not be written
+     */
+    public int redact(CharSequence input, char mask, Appendable output) throws IOException
+    {
+        return replace(input, ReplacementTemplate.mask(mask), output);
+    }
+
+    /**
+     * Replaces every match in a character stream, writing the result to the output as matches are found. The input
+     * is read in chunks and at most a few chunks are buffered at any time, so arbitrarily large inputs are processed in
+     * constant memory. A match is assumed to be no longer than maxMatchLength chars; a longer match, or a lookbehind
+     * reaching further back, may be missed or cut short at a chunk boundary.
+     *
+     * @param input Input to search
+     * @param template Replacement for each match
+     * @param output Destination of the rewritten input
+     * @param maxMatchLength Maximum length of a match in chars
+     * @return Number of replaced matches
+     * @throws IOException Indicates that the input could not be read or the output could not be written
+     * @throws IllegalArgumentException Indicates that the template refers to a capture group this expression lacks
+     */
+    public int replace(Reader input, ReplacementTemplate template, Appendable output, int maxMatchLength)
+        throws IOException, IllegalArgumentException
+    {
+        int capacity = Math.max(STREAM_CHUNK_SIZE, maxMatchLength * 2);
+        char[] chunk = new char[STREAM_CHUNK_SIZE];
+        StringBuilder buffer = new StringBuilder(capacity + STREAM_CHUNK_SIZE);
+        Matcher matcher = getPattern().matcher(buffer);
+        checkTemplate(template, matcher);
+
+        int context = 0; //chars at the start of the buffer that were already written, kept for lookbehind
+        int emptyMatchAt = -1; //position of an empty match already replaced at the start of the region
+        int count = 0;
+        boolean eof = false;
+
+        while (true)
+        {
+            while (!eof && buffer.length() - context < capacity)
+            {
+                int read = input.read(chunk);
+
+                if (read < 0)
+                {
+                    eof = true;
+                }
+                else
+                {
+                    buffer.append(chunk, 0, read);
+                }
+            }
+
+            boolean full = buffer.length() - context >= capacity;
+            matcher.reset(buffer);
+            matcher.useTransparentBounds(true);
+            matcher.useAnchoringBounds(false); //a start anchor must not match at a chunk boundary
+            matcher.region(context, buffer.length());
+
+            int written = context;
+            int emptyEnd = emptyMatchAt;
+            int pending = -1;
+
+            while (matcher.find())
+            {
+                if (matcher.start() == emptyMatchAt && matcher.end() == emptyMatchAt)
+                {
+                    continue; //replaced in the previous round; like Matcher.find(), resume one char further
+                }
+
+                if (!eof && (matcher.hitEnd() || matcher.requireEnd()) && !(full && matcher.start() == context))
+                {
+                    pending = matcher.start(); //more input could change this match
+                    break;
+                }
+
+                output.append(buffer, written, matcher.start());
+                template.appendTo(output, buffer, matcher);
+                written = matcher.end();
+                emptyEnd = matcher.start() == written ? written : -1;
+                count++;
+            }
+
+            if (eof && pending < 0)
+            {
+                output.append(buffer, written, buffer.length());
+                return count;
+            }
+
+            int keep = pending >= 0 ? pending : Math.max(written, buffer.length() - maxMatchLength);
+            output.append(buffer, written, keep);
+
+            int discard = Math.max(0, keep - maxMatchLength);
+            buffer.delete(0, discard);
+            context = keep - discard;
+            emptyMatchAt = emptyEnd == keep ? context : -1;
+        }
+    }
+
+    /**
+     * Replaces every character of every match in a character stream with a mask character, writing the result to the
+     * output.
+     *
+     * @param input Input to search
+     * @param mask Mask character
+     * @param output Destination of the redacted input
+     * @param maxMatchLength Maximum length of a match in chars
+     * @return Number of redacted matches
+     * @throws IOException Indicates that the input could not be read or the output could not be written
+     */
+    public int redact(Reader input, char mask, Appendable output, int maxMatchLength) throws IOException
+    {
+        return replace(input, ReplacementTemplate.mask(mask), output, maxMatchLength);
+    }
+
+    /**
+     * Verifies that a replacement template only refers to capture groups of this expression.
+     *
+     * @param template Replacement template
+     * @param matcher Matcher for this expression's pattern
+     * @throws IllegalArgumentException Indicates that the template refers to a missing capture group
+     */
+    private void checkTemplate(ReplacementTemplate template, Matcher matcher) throws IllegalArgumentException
+    {
+        if (template.getMaxGroup() > matcher.groupCount())
+        {
+            throw new IllegalArgumentException("Replacement refers to capture " + template.getMaxGroup() +
+                ", but expression " + id + " only has " + matcher.groupCount());
+        }
+    }
 }
@@ -23,8 +23,12 @@ package org.regexml;
 
 import org.regexml.exception.ExpressionNotFoundException;
 import org.regexml.exception.SchemaValidationException;
+import org.regexml.metrics.ExpressionEventListener;
+import org.regexml.metrics.ExpressionMetrics;
 import org.regexml.resource.ClassPathResource;
 import org.regexml.resource.Resource;
+import org.regexml.resource.ResourceInput;
+import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
 import javax.xml.stream.XMLEventReader;
@@ -35,13 +39,21 @@ import javax.xml.stream.events.EndElement;
 import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
-import java.io.Reader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -57,6 +69,9 @@ public class ExpressionFactory
     private static final String ELEMENT_END = "end";
     private static final String ELEMENT_MATCH = "match";
     private static final String ELEMENT_GROUP = "group";
+    private static final String ELEMENT_EXAMPLE = "example";
+    private static final String ELEMENT_FRAGMENT = "fragment";
+    private static final String ELEMENT_REF = "ref";
     private static final String ATTR_AUTO_ESCAPE = "autoEscape";
     private static final String ATTR_ID = "id";
     private static final String ATTR_IGNORE_CASE = "ignoreCase";
@@ -73,22 +88,48 @@ public class ExpressionFactory
     private static final String ATTR_OPERATOR = "operator";
     private static final String ATTR_LOOKAHEAD = "lookahead";
     private static final String ATTR_LOOKBEHIND = "lookbehind";
+    private static final String ATTR_MATCHES = "matches";
+    private static final String ATTR_TYPE = "type";
+    private static final String ATTR_NAME = "name";
+    private static final String ATTR_FRAGMENT = "fragment";
     private static final String TRUE = "true";
     private static final String FALSE = "false";
     private static final String OPERATOR_AND = "and";
     private static final String OPERATOR_OR = "or";
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+    private static Schema schema;
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\$\\{([A-Za-z_][A-Za-z0-9_.\\-]*)\\}");
 
     private Map<String, Expression> expressionMap = new HashMap<String, Expression>();
-    private XMLInputFactory inputFactory = XMLInputFactory.newInstance();
-    private SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+    private Map<String, ExpressionTemplate> templateMap = new HashMap<String, ExpressionTemplate>();
+    private Map<String, Fragment> fragmentMap = new HashMap<String, Fragment>();
     private Stack<GroupData> groupStack = new Stack<GroupData>();
     private StringBuilder regExpression;
     private String expressionId;
+    private ExpressionEventListener eventListener;
+    private boolean compileLazily;
+    private boolean optimize;
+    private boolean prefilter;
+    private int templateCacheSize;
+    private List<String> parameterNames;
+    private List<ExpressionShape> shapes;
+    private boolean shapeUnknown;
+    private List<CaptureDefinition> captures;
+    private List<Fragment> requiredFragments;
+    private Fragment leadingFragment;
+    private boolean alternated;
+    private List<String> matchingExamples;
+    private List<String> nonMatchingExamples;
+    private StringBuilder exampleText;
+    private boolean exampleMatches;
+    private PatternStore patternStore;
     private boolean autoEscape = true;
     private boolean ignoreCase;
     private boolean dotMatchesLineBreaks;
     private boolean anchorsMatchLineBreaks;
     private boolean startAnchorMatchesLineBreaks;
+    private int toggleOffEnd = -1;
+    private String toggleOff;
     private enum LookaroundOptions {NONE, POSITIVE, NEGATIVE};
 
     /**
@@ -109,12 +150,76 @@ public class ExpressionFactory
      */
     public ExpressionFactory(Resource inputResource, boolean validate)
     {
-        if (validate)
+        this(inputResource, createOptions(validate));
+    }
+
+    /**
+     * Constructs an ExpressionFactory object.
+     *
+     * @param inputResource Resource referencing the file containing expressions in XML
+     * @param options Options controlling how the expressions file is loaded
+     */
+    public ExpressionFactory(Resource inputResource, FactoryOptions options)
+    {
+        long startTime = System.nanoTime();
+        eventListener = options.getEventListener();
+        compileLazily = options.isCompileLazily();
+        optimize = options.isOptimize();
+        prefilter = options.isPrefilter();
+        templateCacheSize = options.getTemplateCacheSize();
+
+        if (options.getPatternBudgetBytes() > 0)
+        {
+            patternStore = new PatternStore(options.getPatternBudgetBytes());
+        }
+
+        if (options.isValidate())
         {
             validateDocument(inputResource);
+
+            if (eventListener != null)
+            {
+                eventListener.documentValidated(inputResource.getName(), System.nanoTime() - startTime);
+            }
+        }
+
+        long parseStartTime = System.nanoTime();
+        processExpressions(inputResource);
+
+        if (eventListener != null)
+        {
+            long endTime = System.nanoTime();
+            eventListener.documentParsed(inputResource.getName(), expressionMap.size(), endTime - parseStartTime);
+
+            if (options.getSlowMatchThresholdNanos() > 0)
+            {
+                for (Expression expression : expressionMap.values())
+                {
+                    expression.setSlowMatchListener(eventListener, options.getSlowMatchThresholdNanos());
+                }
+            }
+
+            eventListener.factoryLoaded(inputResource.getName(), expressionMap.size(), endTime - startTime);
+        }
+
+        if (options.getWarmUpIterations() > 0)
+        {
+            warmUp(options.getWarmUpIterations());
         }
+    }
+
+    /**
+     * Creates load options for the given validation setting.
+     *
+     * @param validate Indicates whether or not the expressions file should be validated against the regexml schema
+     * @return Load options
+     */
+    private static FactoryOptions createOptions(boolean validate)
+    {
+        FactoryOptions options = new FactoryOptions();
+        options.setValidate(validate);
 
-        processExpressions(inputResource.getReader());
+        return options;
     }
 
     /**
@@ -125,12 +230,19 @@ public class ExpressionFactory
      */
     private void validateDocument(Resource inputResource) throws SchemaValidationException
     {
-        Resource schemaResource = new ClassPathResource(SCHEMA_FILE_NAME);
-
         try
         {
-            Validator validator = schemaFactory.newSchema(new StreamSource(schemaResource.getReader())).newValidator();
-            validator.validate(new StreamSource(inputResource.getReader()));
+            ResourceInput input = new ResourceInput(inputResource);
+
+            try
+            {
+                Validator validator = getSchema().newValidator();
+                validator.validate(input.createSource());
+            }
+            finally
+            {
+                input.close();
+            }
         }
         catch (Exception e)
         {
@@ -138,6 +250,23 @@ public class ExpressionFactory
         }
     }
 
+    /**
+     * Gets the compiled expressions schema, which is thread safe and shared by all factories.
+     *
+     * @return Expressions schema
+     * @throws SAXException Indicates that the schema could not be compiled
+     */
+    private static synchronized Schema getSchema() throws SAXException
+    {
+        if (schema == null)
+        {
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schema = schemaFactory.newSchema(new StreamSource(new ClassPathResource(SCHEMA_FILE_NAME).getReader()));
+        }
+
+        return schema;
+    }
+
     /**
      * Retrieves a pattern based on the given ID.
      *
@@ -172,16 +301,214 @@ public class ExpressionFactory
         return expressionMap.get(id);
     }
 
+    /**
+     * Retrieves the template of an expression whose equals or except attributes contain ${name} placeholders. Such
+     * expressions are not available from getExpression() since they cannot be compiled until the parameters are known.
+     *
+     * @param id ID of expression
+     * @return Expression template
+     * @throws ExpressionNotFoundException Indicates that the requested template was not found
+     */
+    public ExpressionTemplate getTemplate(String id) throws ExpressionNotFoundException
+    {
+        if (!templateMap.containsKey(id))
+        {
+            throw new ExpressionNotFoundException("Expression template not found: " + id);
+        }
+
+        return templateMap.get(id);
+    }
+
+    /**
+     * Gets the IDs of all expression templates loaded by this factory.
+     *
+     * @return Unmodifiable set of template IDs
+     */
+    public Set<String> getTemplateIds()
+    {
+        return Collections.unmodifiableSet(templateMap.keySet());
+    }
+
+    /**
+     * Retrieves a fragment defined by a fragment element.
+     *
+     * @param name Name of fragment
+     * @return Fragment
+     * @throws ExpressionNotFoundException Indicates that the requested fragment was not found
+     */
+    public Fragment getFragment(String name) throws ExpressionNotFoundException
+    {
+        if (!fragmentMap.containsKey(name))
+        {
+            throw new ExpressionNotFoundException("Fragment not found: " + name);
+        }
+
+        return fragmentMap.get(name);
+    }
+
+    /**
+     * Creates a lexer whose token types are the given expressions. The order of the IDs decides between tokens of
+     * equal length.
+     *
+     * @param ids IDs of the token expressions in priority order
+     * @return Lexer for the expressions
+     * @throws ExpressionNotFoundException Indicates that a requested expression was not found
+     */
+    public Lexer createLexer(String... ids) throws ExpressionNotFoundException
+    {
+        return new Lexer(getExpressions(ids));
+    }
+
+    /**
+     * Creates an evaluator that checks inputs against the given expressions in an order adapted to the traffic.
+     *
+     * @param mode ALL to require every expression to match, ANY to require one
+     * @param fixedPriority True to always evaluate in the given order, so that the first match is well defined
+     * @param ids IDs of the expressions in priority order
+     * @return Evaluator for the expressions
+     * @throws ExpressionNotFoundException Indicates that a requested expression was not found
+     */
+    public AdaptiveEvaluator createEvaluator(AdaptiveEvaluator.Mode mode, boolean fixedPriority, String... ids)
+        throws ExpressionNotFoundException
+    {
+        return new AdaptiveEvaluator(getExpressions(ids), mode, fixedPriority);
+    }
+
+    /**
+     * Runs every expression against its examples so that the JIT compiles the matching code before real traffic
+     * arrives. Expressions without examples are skipped.
+     *
+     * @param iterations Number of times each example is matched
+     */
+    public void warmUp(int iterations)
+    {
+        for (Expression expression : expressionMap.values())
+        {
+            for (int i = 0; i < iterations; i++)
+            {
+                for (String example : expression.getMatchingExamples())
+                {
+                    expression.findUncached(example);
+                }
+
+                for (String example : expression.getNonMatchingExamples())
+                {
+                    expression.findUncached(example);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves several expressions based on their IDs.
+     *
+     * @param ids IDs of the expressions
+     * @return Expressions in the order of the IDs
+     * @throws ExpressionNotFoundException Indicates that a requested expression was not found
+     */
+    private Expression[] getExpressions(String[] ids) throws ExpressionNotFoundException
+    {
+        Expression[] expressions = new Expression[ids.length];
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            expressions[i] = getExpression(ids[i]);
+        }
+
+        return expressions;
+    }
+
+    /**
+     * Gets the IDs of all expressions created by this factory.
+     *
+     * @return Unmodifiable set of expression IDs
+     */
+    public Set<String> getExpressionIds()
+    {
+        return Collections.unmodifiableSet(expressionMap.keySet());
+    }
+
+    /**
+     * Gets the memory-bounded store holding this factory's compiled patterns.
+     *
+     * @return Pattern store or null if the factory keeps every pattern
+     */
+    public PatternStore getPatternStore()
+    {
+        return patternStore;
+    }
+
+    /**
+     * Sets the metrics recorder used by every expression created by this factory.
+     *
+     * @param metrics Metrics recorder or null to disable metrics
+     */
+    public void setMetrics(ExpressionMetrics metrics)
+    {
+        for (Expression expression : expressionMap.values())
+        {
+            expression.setMetrics(metrics);
+        }
+    }
+
+    /**
+     * Enables result caching for the given expression, bounded by entry count.
+     *
+     * @param id ID of expression
+     * @param maxEntries Maximum number of cached inputs
+     * @return Result cache used by the expression
+     * @throws ExpressionNotFoundException Indicates that the requested expression was not found
+     */
+    public MatchCache enableCache(String id, int maxEntries) throws ExpressionNotFoundException
+    {
+        return enableCache(id, maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Enables result caching for the given expression, bounded by entry count and estimated memory.
+     *
+     * @param id ID of expression
+     * @param maxEntries Maximum number of cached inputs
+     * @param maxBytes Maximum estimated number of bytes retained by the cache
+     * @return Result cache used by the expression
+     * @throws ExpressionNotFoundException Indicates that the requested expression was not found
+     */
+    public MatchCache enableCache(String id, int maxEntries, long maxBytes) throws ExpressionNotFoundException
+    {
+        MatchCache cache = new MatchCache(maxEntries, maxBytes);
+        getExpression(id).setCache(cache);
+
+        return cache;
+    }
+
+    /**
+     * Disables result caching for the given expression.
+     *
+     * @param id ID of expression
+     * @throws ExpressionNotFoundException Indicates that the requested expression was not found
+     */
+    public void disableCache(String id) throws ExpressionNotFoundException
+    {
+        getExpression(id).setCache(null);
+    }
+
     /**
      * Initializes the factory by loading regular expressions from an XML file using the StAX pull parser.
      *
-     * @param reader Reader for file containing regular expressions in XML
+     * @param inputResource Resource referencing the file containing regular expressions in XML
      */
-    private void processExpressions(Reader reader)
+    private void processExpressions(Resource inputResource)
     {
+        ResourceInput input = new ResourceInput(inputResource);
+
         try
         {
-            XMLEventReader xmlEventReader = inputFactory.createXMLEventReader(reader);
+            XMLEventReader xmlEventReader;
+
+            synchronized (INPUT_FACTORY) //the factory is shared, and not every StAX implementation is thread safe
+            {
+                xmlEventReader = input.createEventReader(INPUT_FACTORY);
+            }
 
             while (xmlEventReader.hasNext())
             {
@@ -195,6 +522,10 @@ public class ExpressionFactory
                 {
                     handleEndElement(xmlEvent.asEndElement());
                 }
+                else if (xmlEvent.isCharacters() && exampleText != null)
+                {
+                    exampleText.append(xmlEvent.asCharacters().getData());
+                }
             }
 
             xmlEventReader.close();
@@ -203,6 +534,27 @@ public class ExpressionFactory
         {
             e.printStackTrace();
         }
+        finally
+        {
+            closeInput(input);
+        }
+    }
+
+    /**
+     * Closes an opened resource, ignoring failures since the expressions have been read by then.
+     *
+     * @param input Opened resource
+     */
+    private static void closeInput(ResourceInput input)
+    {
+        try
+        {
+            input.close();
+        }
+        catch (IOException e)
+        {
+            //nothing left to read
+        }
     }
 
     /**
@@ -238,6 +590,18 @@ public class ExpressionFactory
         {
             handleGroupElementStart(se);
         }
+        else if (name.equals(ELEMENT_EXAMPLE))
+        {
+            handleExampleElementStart(se);
+        }
+        else if (name.equals(ELEMENT_FRAGMENT))
+        {
+            handleFragmentElementStart(se);
+        }
+        else if (name.equals(ELEMENT_REF))
+        {
+            handleRefElement(se);
+        }
     }
 
     /**
@@ -257,6 +621,14 @@ public class ExpressionFactory
         {
             handleGroupElementEnd(ee);
         }
+        else if (name.equals(ELEMENT_EXAMPLE))
+        {
+            handleExampleElementEnd(ee);
+        }
+        else if (name.equals(ELEMENT_FRAGMENT))
+        {
+            handleFragmentElementEnd(ee);
+        }
     }
 
     /**
@@ -324,6 +696,17 @@ public class ExpressionFactory
         dotMatchesLineBreaks = false;
         anchorsMatchLineBreaks = false;
         startAnchorMatchesLineBreaks = false;
+        toggleOffEnd = -1;
+        shapes = new ArrayList<ExpressionShape>();
+        shapeUnknown = false;
+        captures = new ArrayList<CaptureDefinition>();
+        requiredFragments = new ArrayList<Fragment>();
+        leadingFragment = null;
+        alternated = false;
+        parameterNames = new ArrayList<String>();
+        matchingExamples = new ArrayList<String>();
+        nonMatchingExamples = new ArrayList<String>();
+        exampleText = null;
         regExpression = new StringBuilder();
     }
 
@@ -341,20 +724,388 @@ public class ExpressionFactory
             options = options | Pattern.CASE_INSENSITIVE;
         }
 
-        if (dotMatchesLineBreaks)
+        if (dotMatchesLineBreaks)
+        {
+            options = options | Pattern.DOTALL;
+        }
+
+        if (anchorsMatchLineBreaks)
+        {
+            options = options | Pattern.MULTILINE;
+        }
+
+        String regExpressionString = regExpression.toString();
+        Collections.sort(captures, new Comparator<CaptureDefinition>()
+        {
+            public int compare(CaptureDefinition a, CaptureDefinition b)
+            {
+                return a.getGroup() - b.getGroup();
+            }
+        });
+
+        if (!parameterNames.isEmpty())
+        {
+            templateMap.put(expressionId, new ExpressionTemplate(expressionId, regExpressionString, options,
+                parameterNames, Collections.unmodifiableList(captures), templateCacheSize));
+            return;
+        }
+
+        Expression expression;
+
+        if (patternStore != null)
+        {
+            expression = new Expression(expressionId, regExpressionString, options, patternStore);
+        }
+        else if (compileLazily)
+        {
+            expression = new Expression(expressionId, regExpressionString, options);
+        }
+        else
+        {
+            long startTime = System.nanoTime();
+            Pattern pattern = PatternPool.compile(regExpressionString, options);
+
+            if (eventListener != null)
+            {
+                long elapsedNanos = System.nanoTime() - startTime;
+                eventListener.expressionCompiled(expressionId, regExpressionString.length(), elapsedNanos);
+            }
+
+            expression = new Expression(expressionId, regExpressionString, pattern);
+        }
+
+        if (prefilter && !shapeUnknown)
+        {
+            expression.setPrefilter(new ExpressionPrefilter(ExpressionShape.sequence(shapes)));
+        }
+
+        if (!alternated)
+        {
+            expression.setFragments(new ArrayList<Fragment>(new LinkedHashSet<Fragment>(requiredFragments)),
+                leadingFragment);
+        }
+
+        expression.setCaptures(captures);
+        expression.setExamples(matchingExamples, nonMatchingExamples);
+        expressionMap.put(expressionId, expression);
+    }
+
+    /**
+     * Processes the start of the fragment element. The fragment's children are translated like those of an
+     * expression, starting from the fragment's own match options.
+     *
+     * @param se Start element
+     */
+    private void handleFragmentElementStart(StartElement se)
+    {
+        resetInstanceVariables();
+
+        for (Iterator<Attribute> it = se.getAttributes(); it.hasNext();)
+        {
+            Attribute a = it.next();
+
+            String name = a.getName().getLocalPart();
+            String value = a.getValue();
+
+            if (name.equals(ATTR_NAME))
+            {
+                expressionId = value;
+            }
+            else if (name.equals(ATTR_IGNORE_CASE) && value.equals(TRUE))
+            {
+                ignoreCase = true;
+            }
+            else if (name.equals(ATTR_DOT_MATCHES_LINE_BREAKS) && value.equals(TRUE))
+            {
+                dotMatchesLineBreaks = true;
+            }
+            else if (name.equals(ATTR_ANCHORS_MATCH_LINE_BREAKS) && value.equals(TRUE))
+            {
+                anchorsMatchLineBreaks = true;
+            }
+        }
+    }
+
+    /**
+     * Processes the end of the fragment element. The translated fragment is wrapped in a group that sets every match
+     * option, so it is unaffected by the options of the expressions that refer to it.
+     *
+     * @param ee End element
+     * @throws IllegalArgumentException Indicates that the fragment contains parameters
+     */
+    private void handleFragmentElementEnd(EndElement ee) throws IllegalArgumentException
+    {
+        if (!parameterNames.isEmpty())
+        {
+            throw new IllegalArgumentException("Fragment " + expressionId + " cannot contain parameters");
+        }
+
+        StringBuilder optionsOn = new StringBuilder(3);
+        StringBuilder optionsOff = new StringBuilder(3);
+
+        if (ignoreCase)
+        {
+            optionsOn.append("i");
+        }
+        else
+        {
+            optionsOff.append("i");
+        }
+
+        if (dotMatchesLineBreaks)
+        {
+            optionsOn.append("s");
+        }
+        else
+        {
+            optionsOff.append("s");
+        }
+
+        if (anchorsMatchLineBreaks)
+        {
+            optionsOn.append("m");
+        }
+        else
+        {
+            optionsOff.append("m");
+        }
+
+        StringBuilder fragment = new StringBuilder("(?").append(optionsOn);
+
+        if (optionsOff.length() > 0)
+        {
+            fragment.append("-").append(optionsOff);
+        }
+
+        fragment.append(":").append(regExpression).append(")");
+
+        Collections.sort(captures, new Comparator<CaptureDefinition>()
+        {
+            public int compare(CaptureDefinition a, CaptureDefinition b)
+            {
+                return a.getGroup() - b.getGroup();
+            }
+        });
+
+        ExpressionShape shape = null;
+
+        if (prefilter)
+        {
+            shape = shapeUnknown ? ExpressionShape.unknown() : ExpressionShape.sequence(shapes);
+        }
+
+        fragmentMap.put(expressionId, new Fragment(expressionId, fragment.toString(), captures, shape));
+    }
+
+    /**
+     * Processes the ref element, which inserts a fragment as if it were a group.
+     *
+     * @param se Start element
+     * @throws IllegalArgumentException Indicates that the fragment is not defined before the reference
+     */
+    private void handleRefElement(StartElement se) throws IllegalArgumentException
+    {
+        processOrOperator();
+
+        int length = regExpression.length();
+        toggleOffEnd = -1;
+
+        Fragment fragment = null;
+        boolean capture = false;
+        boolean lazy = false;
+        boolean atomic = false;
+        LookaroundOptions lookahead = LookaroundOptions.NONE;
+        LookaroundOptions lookbehind = LookaroundOptions.NONE;
+        CaptureType captureType = CaptureType.STRING;
+        String captureName = null;
+        String min = "1";
+        String max = "1";
+
+        for (Iterator<Attribute> it = se.getAttributes(); it.hasNext();)
+        {
+            Attribute attribute = it.next();
+
+            String name = attribute.getName().getLocalPart();
+            String value = attribute.getValue();
+
+            if (name.equals(ATTR_FRAGMENT))
+            {
+                fragment = fragmentMap.get(value);
+
+                if (fragment == null)
+                {
+                    throw new IllegalArgumentException("Expression " + expressionId + " refers to fragment " + value +
+                        ", which is not defined before it");
+                }
+            }
+            else if (name.equals(ATTR_MIN))
+            {
+                min = value;
+            }
+            else if (name.equals(ATTR_MAX))
+            {
+                max = value;
+            }
+            else if (name.equals(ATTR_CAPTURE) && value.equals(TRUE))
+            {
+                capture = true;
+            }
+            else if (name.equals(ATTR_TYPE))
+            {
+                captureType = CaptureType.valueOf(value.toUpperCase());
+            }
+            else if (name.equals(ATTR_NAME))
+            {
+                captureName = value;
+            }
+            else if (name.equals(ATTR_LAZY) && value.equals(TRUE))
+            {
+                lazy = true;
+            }
+            else if (name.equals(ATTR_ATOMIC) && value.equals(TRUE))
+            {
+                atomic = true;
+            }
+            else if (name.equals(ATTR_LOOKAHEAD))
+            {
+                lookahead = LookaroundOptions.valueOf(value.toUpperCase());
+            }
+            else if (name.equals(ATTR_LOOKBEHIND))
+            {
+                lookbehind = LookaroundOptions.valueOf(value.toUpperCase());
+            }
+        }
+
+        if (capture)
+        {
+            captures.add(new CaptureDefinition(nextCaptureGroup(length), captureName, captureType,
+                Collections.<String>emptyList(), false));
+            regExpression.append("(");
+        }
+
+        int groupOffset = RegExSyntax.countCapturingGroups(regExpression);
+
+        for (CaptureDefinition definition : fragment.getCaptures())
+        {
+            captures.add(new CaptureDefinition(definition.getGroup() + groupOffset, definition.getName(),
+                definition.getType(), definition.getConstants(), definition.isIgnoreCase()));
+        }
+
+        regExpression.append(fragment.getRegExString()); //a single group, so a quantifier applies to all of it
+
+        if (capture)
+        {
+            regExpression.append(")");
+        }
+
+        handleMinMax(min, max, lazy, -1);
+
+        boolean lookaround = lookahead != LookaroundOptions.NONE || lookbehind != LookaroundOptions.NONE;
+
+        if (lookahead == LookaroundOptions.POSITIVE)
+        {
+            regExpression.insert(length, "(?=").append(")");
+        }
+        else if (lookahead == LookaroundOptions.NEGATIVE)
+        {
+            regExpression.insert(length, "(?!").append(")");
+        }
+        else if (lookbehind == LookaroundOptions.POSITIVE)
+        {
+            regExpression.insert(length, "(?<=").append(")");
+        }
+        else if (lookbehind == LookaroundOptions.NEGATIVE)
+        {
+            regExpression.insert(length, "(?<!").append(")");
+        }
+
+        if (atomic)
+        {
+            regExpression.insert(length, "(?>").append(")");
+        }
+
+        boolean required = Integer.parseInt(min) > 0 && lookahead != LookaroundOptions.NEGATIVE &&
+            lookbehind != LookaroundOptions.NEGATIVE;
+
+        if (required)
+        {
+            if (groupStack.isEmpty())
+            {
+                requiredFragments.add(fragment);
+
+                if (length == 0 && !lookaround)
+                {
+                    leadingFragment = fragment; //every match starts where this fragment matches
+                }
+            }
+            else
+            {
+                groupStack.peek().addFragment(fragment);
+            }
+        }
+
+        if (prefilter)
+        {
+            if (lookaround)
+            {
+                addShape(ExpressionShape.empty());
+            }
+            else
+            {
+                ExpressionShape shape = fragment.getShape() == null ? ExpressionShape.unknown() : fragment.getShape();
+                addShape(shape.repeat(min, max));
+            }
+        }
+
+        if (!groupStack.isEmpty())
+        {
+            groupStack.peek().addConstant(null);
+        }
+
+        if (optimize)
+        {
+            registerChild(null, null);
+        }
+    }
+
+    /**
+     * Processes the start of the example element.
+     *
+     * @param se Start element
+     */
+    private void handleExampleElementStart(StartElement se)
+    {
+        exampleText = new StringBuilder();
+        exampleMatches = true;
+
+        for (Iterator<Attribute> it = se.getAttributes(); it.hasNext();)
+        {
+            Attribute a = it.next();
+
+            if (a.getName().getLocalPart().equals(ATTR_MATCHES) && a.getValue().equals(FALSE))
+            {
+                exampleMatches = false;
+            }
+        }
+    }
+
+    /**
+     * Processes the end of the example element.
+     *
+     * @param ee End element
+     */
+    private void handleExampleElementEnd(EndElement ee)
+    {
+        if (exampleMatches)
         {
-            options = options | Pattern.DOTALL;
+            matchingExamples.add(exampleText.toString());
         }
-
-        if (anchorsMatchLineBreaks)
+        else
         {
-            options = options | Pattern.MULTILINE;
+            nonMatchingExamples.add(exampleText.toString());
         }
 
-        String regExpressionString = regExpression.toString();
-        Pattern pattern = Pattern.compile(regExpressionString, options);
-
-        expressionMap.put(expressionId, new Expression(expressionId, regExpressionString, pattern));
+        exampleText = null;
     }
 
     /**
@@ -364,6 +1115,8 @@ public class ExpressionFactory
      */
     private void handleStartAnchorElement(StartElement se)
     {
+        markAnchor();
+
         for (Iterator<Attribute> it = se.getAttributes(); it.hasNext();)
         {
             Attribute a = it.next();
@@ -379,6 +1132,7 @@ public class ExpressionFactory
         }
 
         regExpression.append("^");
+        addShape(ExpressionShape.anchor(true, !startAnchorMatchesLineBreaks && !isMultilineScope()));
     }
 
     /**
@@ -389,6 +1143,7 @@ public class ExpressionFactory
     private void handleEndAnchorElement(StartElement se)
     {
         boolean matchLineBreaks = false;
+        markAnchor();
 
         for (Iterator<Attribute> it = se.getAttributes(); it.hasNext();)
         {
@@ -416,6 +1171,9 @@ public class ExpressionFactory
         }
 
         regExpression.append("$");
+
+        boolean anchored = !matchLineBreaks && (startAnchorMatchesLineBreaks || !isMultilineScope());
+        addShape(ExpressionShape.anchor(false, anchored));
     }
 
     /**
@@ -425,6 +1183,8 @@ public class ExpressionFactory
      */
     private void handleMatchElement(StartElement se)
     {
+        processOrOperator();
+
         int length = regExpression.length();
         boolean capture = false;
         boolean ignoreCase = false;
@@ -434,13 +1194,13 @@ public class ExpressionFactory
         LookaroundOptions lookahead = LookaroundOptions.NONE;
         LookaroundOptions lookbehind = LookaroundOptions.NONE;
         int addGroupingIndex = -1;
+        CaptureType captureType = CaptureType.STRING;
+        String captureName = null;
         String equalsExpression = null;
         String exceptExpression = null;
         String min = "1";
         String max = "1";
 
-        processOrOperator();
-
         for (Iterator<Attribute> it = se.getAttributes(); it.hasNext();)
         {
             Attribute attribute = it.next();
@@ -450,11 +1210,11 @@ public class ExpressionFactory
 
             if (name.equals(ATTR_EQUALS))
             {
-                equalsExpression = autoEscape(value);
+                equalsExpression = translateAttribute(value);
             }
             else if (name.equals(ATTR_EXCEPT))
             {
-                exceptExpression = autoEscape(value);
+                exceptExpression = translateAttribute(value);
             }
             else if (name.equals(ATTR_MIN))
             {
@@ -468,6 +1228,14 @@ public class ExpressionFactory
             {
                 capture = true;
             }
+            else if (name.equals(ATTR_TYPE))
+            {
+                captureType = CaptureType.valueOf(value.toUpperCase());
+            }
+            else if (name.equals(ATTR_NAME))
+            {
+                captureName = value;
+            }
             else if (name.equals(ATTR_IGNORE_CASE) && value.equals(TRUE))
             {
                 ignoreCase = true;
@@ -497,11 +1265,11 @@ public class ExpressionFactory
         // process equals and except expressions
         if (equalsExpression != null && exceptExpression != null)
         {
-            if (isCharacterClass(equalsExpression))
+            if (RegExSyntax.isCharacterClass(equalsExpression))
             {
                 regExpression.append("[").append(equalsExpression).append("&&[^");
 
-                if (isCharacterClass(exceptExpression))
+                if (RegExSyntax.isCharacterClass(exceptExpression))
                 {
                     regExpression.append(exceptExpression.substring(1));
                 }
@@ -527,7 +1295,7 @@ public class ExpressionFactory
             {
                 regExpression.append("[^");
 
-                if (isCharacterClass(exceptExpression))
+                if (RegExSyntax.isCharacterClass(exceptExpression))
                 {
                     regExpression.append(exceptExpression.substring(1));
                 }
@@ -545,6 +1313,8 @@ public class ExpressionFactory
             addGroupingIndex = length;
         }
 
+        String matchExpression = regExpression.substring(length);
+        boolean templated = ExpressionTemplate.hasPlaceholder(matchExpression);
         handleMinMax(min, max, lazy, addGroupingIndex);
 
         if (ignoreCase || dotMatchesLineBreaks)
@@ -569,11 +1339,49 @@ public class ExpressionFactory
             optionsOn.append(")");
             optionsOff.append(")");
 
-            regExpression.insert(length, optionsOn.toString()).append(optionsOff.toString());
+            boolean wrapped = capture || atomic || lookahead != LookaroundOptions.NONE ||
+                lookbehind != LookaroundOptions.NONE;
+
+            if (optimize && !wrapped && toggleOffEnd == length && optionsOff.toString().equals(toggleOff))
+            {
+                // the previous match switched the same options off right here, so keep them on instead
+                regExpression.delete(length - toggleOff.length(), length).append(optionsOff.toString());
+            }
+            else
+            {
+                regExpression.insert(length, optionsOn.toString()).append(optionsOff.toString());
+            }
+
+            if (!wrapped)
+            {
+                toggleOffEnd = regExpression.length();
+                toggleOff = optionsOff.toString();
+            }
+            else
+            {
+                toggleOffEnd = -1;
+            }
+        }
+        else
+        {
+            toggleOffEnd = -1;
         }
 
         if (capture)
         {
+            List<String> constants = new ArrayList<String>();
+
+            if (captureType == CaptureType.ENUM && equalsExpression != null && exceptExpression == null)
+            {
+                for (String alternative : RegExSyntax.splitTopLevelAlternatives(equalsExpression))
+                {
+                    constants.add(RegExSyntax.literalValue(alternative));
+                }
+            }
+
+            boolean captureIgnoresCase = ignoreCase || isCaseInsensitiveScope();
+            captures.add(new CaptureDefinition(nextCaptureGroup(length), captureName, captureType, constants,
+                captureIgnoresCase));
             regExpression.insert(length, "(").append(")");
         }
 
@@ -598,6 +1406,185 @@ public class ExpressionFactory
         {
             regExpression.insert(length, "(?>").append(")"); //do not store any backtracking positions
         }
+
+        boolean unenclosedAlternation = lookahead == LookaroundOptions.NONE && lookbehind == LookaroundOptions.NONE &&
+            !capture && !atomic && min.equals("1") && max.equals("1") &&
+            RegExSyntax.hasTopLevelAlternation(matchExpression);
+
+        if (prefilter)
+        {
+            if (RegExSyntax.hasFlagToggle(matchExpression))
+            {
+                shapeUnknown = true; //an inline flag changes how the rest of the expression matches
+            }
+            else if (unenclosedAlternation)
+            {
+                shapeUnknown = true; //the alternatives split the enclosing sequence, which the shapes cannot express
+            }
+            else if (templated)
+            {
+                shapeUnknown = true; //the parameter values are not known until the template is instantiated
+            }
+
+            if (lookahead != LookaroundOptions.NONE || lookbehind != LookaroundOptions.NONE)
+            {
+                addShape(ExpressionShape.empty());
+            }
+            else
+            {
+                int flags = ignoreCase || isCaseInsensitiveScope() ? Pattern.CASE_INSENSITIVE : 0;
+                addShape(ExpressionShape.of(matchExpression, flags).repeat(min, max));
+            }
+        }
+
+        if (unenclosedAlternation)
+        {
+            markAlternation(); //the alternatives are not enclosed in a group, so they split the enclosing sequence
+        }
+
+        if (!groupStack.isEmpty())
+        {
+            boolean constant = equalsExpression != null && exceptExpression == null && !templated &&
+                lookahead == LookaroundOptions.NONE && lookbehind == LookaroundOptions.NONE && min.equals("1") &&
+                max.equals("1");
+
+            groupStack.peek().addConstant(constant ? RegExSyntax.literalValue(equalsExpression) : null);
+        }
+
+        if (optimize)
+        {
+            boolean simple = equalsExpression != null && exceptExpression == null && !templated && !capture &&
+                !ignoreCase && !dotMatchesLineBreaks && !lazy && !atomic && lookahead == LookaroundOptions.NONE &&
+                lookbehind == LookaroundOptions.NONE && min.equals("1") && max.equals("1");
+
+            if (simple)
+            {
+                registerChild(RegExSyntax.literalValue(equalsExpression), toClassItem(equalsExpression));
+            }
+            else
+            {
+                registerChild(null, null);
+            }
+        }
+    }
+
+    /**
+     * Converts a match expression into a member of a character class, if possible.
+     *
+     * @param expression Escaped equals expression
+     * @return Class member or null if the expression does not match exactly one character from a fixed set
+     */
+    private String toClassItem(String expression)
+    {
+        String literal = RegExSyntax.literalValue(expression);
+
+        if (literal != null)
+        {
+            return literal.length() == 1 ? RegExSyntax.quoteClassCharacter(literal.charAt(0)) : null;
+        }
+
+        if (expression.matches("\\\\[dDwWsS]") || (expression.startsWith("[") && RegExSyntax.isSingleAtom(expression)))
+        {
+            return expression;
+        }
+
+        return null;
+    }
+
+    /**
+     * Records a completed match or group with the enclosing group so that the optimizer can rewrite the group.
+     *
+     * @param literal Literal text matched by the child or null if the child is not a plain literal
+     * @param classItem Character class member equivalent to the child or null if there is none
+     */
+    private void registerChild(String literal, String classItem)
+    {
+        if (!groupStack.isEmpty())
+        {
+            groupStack.peek().addChild(literal, classItem);
+        }
+    }
+
+    /**
+     * Determines the number of a capture group that opens at a position of the expression being built.
+     *
+     * @param position Position of the group's opening parenthesis
+     * @return Group number, counting from 1
+     */
+    private int nextCaptureGroup(int position)
+    {
+        return RegExSyntax.countCapturingGroups(regExpression.substring(0, position)) + 1;
+    }
+
+    /**
+     * Records the shape of a completed match, group or anchor with the enclosing group or expression.
+     *
+     * @param shape Shape of the child
+     */
+    private void addShape(ExpressionShape shape)
+    {
+        if (!prefilter)
+        {
+            return;
+        }
+
+        if (groupStack.isEmpty())
+        {
+            shapes.add(shape);
+        }
+        else
+        {
+            groupStack.peek().addShape(shape);
+        }
+    }
+
+    /**
+     * Indicates whether or not case-insensitive matching may be in effect for the next child.
+     *
+     * @return True if the expression or an enclosing group ignores case
+     */
+    private boolean isCaseInsensitiveScope()
+    {
+        return groupStack.isEmpty() ? ignoreCase : groupStack.peek().isCaseInsensitive();
+    }
+
+    /**
+     * Indicates whether or not anchors may match at line breaks for the next child.
+     *
+     * @return True if the expression or an enclosing group lets anchors match at line breaks
+     */
+    private boolean isMultilineScope()
+    {
+        return groupStack.isEmpty() ? anchorsMatchLineBreaks : groupStack.peek().isMultiline();
+    }
+
+    /**
+     * Records that the content of the enclosing group or expression has a top level alternation, so that none of its
+     * fragments is required.
+     */
+    private void markAlternation()
+    {
+        if (groupStack.isEmpty())
+        {
+            alternated = true;
+        }
+        else
+        {
+            groupStack.peek().setAlternated(true);
+        }
+    }
+
+    /**
+     * Records that an anchor appears in the enclosing group, which prevents the optimizer from rewriting it.
+     */
+    private void markAnchor()
+    {
+        toggleOffEnd = -1;
+
+        if (!groupStack.isEmpty())
+        {
+            groupStack.peek().setAnchored(true);
+        }
     }
 
     /**
@@ -641,7 +1628,7 @@ public class ExpressionFactory
                 requiresGrouping = false;
             }
         }
-        else if (expression.length() == 1 || isCharacterClass(expression))
+        else if (expression.length() == 1 || RegExSyntax.isCharacterClass(expression))
         {
             requiresGrouping = false;
         }
@@ -649,19 +1636,6 @@ public class ExpressionFactory
         return requiresGrouping;
     }
 
-    /**
-     * Indicates whether or not the given expression represents a character class.
-     *
-     * @param expression Expression to evaluate
-     * @return True if expression is a character class
-     */
-    private boolean isCharacterClass(String expression)
-    {
-        return (expression.startsWith("[") && expression.endsWith("]")) || expression.equals(".") ||
-            expression.equalsIgnoreCase("\\d") || expression.equalsIgnoreCase("\\s") ||
-            expression.equalsIgnoreCase("\\w") || expression.equalsIgnoreCase("\\b");
-    }
-
     /**
      * Processes the start of the group element.
      *
@@ -676,8 +1650,11 @@ public class ExpressionFactory
         processOrOperator();
 
         int length = regExpression.length();
+        toggleOffEnd = -1;
 
         GroupData groupData = new GroupData();
+        groupData.setCaseInsensitive(isCaseInsensitiveScope());
+        groupData.setMultiline(isMultilineScope());
         groupStack.push(groupData);
 
         for (Iterator<Attribute> it = se.getAttributes(); it.hasNext();)
@@ -699,6 +1676,14 @@ public class ExpressionFactory
             {
                 capture = true;
             }
+            else if (name.equals(ATTR_TYPE))
+            {
+                groupData.setCaptureType(CaptureType.valueOf(value.toUpperCase()));
+            }
+            else if (name.equals(ATTR_NAME))
+            {
+                groupData.setCaptureName(value);
+            }
             else if (name.equals(ATTR_LAZY) && value.equals(TRUE))
             {
                 groupData.setLazy(true);
@@ -712,6 +1697,7 @@ public class ExpressionFactory
                 if (value.equals(TRUE))
                 {
                     matchOptionsOn.append("i");
+                    groupData.setCaseInsensitive(true);
                 }
                 else
                 {
@@ -734,6 +1720,7 @@ public class ExpressionFactory
                 if (value.equals(TRUE))
                 {
                     matchOptionsOn.append("m");
+                    groupData.setMultiline(true);
                 }
                 else
                 {
@@ -754,71 +1741,242 @@ public class ExpressionFactory
             }
         }
 
-        StringBuilder groupStart = new StringBuilder("("); //start capturing or non-capturing group
+        StringBuilder groupStart = new StringBuilder("("); //start capturing or non-capturing group
+
+        if (groupData.isAtomic())
+        {
+            groupStart.append("?>("); //start atomic group
+        }
+
+        if (groupData.getLookahead() == LookaroundOptions.POSITIVE)
+        {
+            groupStart.append("?=("); //start positive lookahead
+        }
+        else if (groupData.getLookahead() == LookaroundOptions.NEGATIVE)
+        {
+            groupStart.append("?!("); //start negative lookahead
+        }
+        else if (groupData.getLookbehind() == LookaroundOptions.POSITIVE)
+        {
+            groupStart.append("?<=("); //start positive lookbehind
+        }
+        else if (groupData.getLookbehind() == LookaroundOptions.NEGATIVE)
+        {
+            groupStart.append("?<!("); //start negative lookbehind
+        }
+
+        StringBuilder matchOptions = new StringBuilder(matchOptionsOn);
+
+        if (matchOptionsOff.length() > 0)
+        {
+            matchOptions.append("-").append(matchOptionsOff.toString());
+        }
+
+        if (capture)
+        {
+            if (matchOptions.length() > 0)
+            {
+                groupStart.append("(?").append(matchOptions).append(")"); //a capturing group cannot carry flags
+            }
+        }
+        else
+        {
+            groupStart.append("?").append(matchOptions).append(":"); //start non-capturing group
+        }
+
+        if (capture)
+        {
+            groupData.setCaptureGroup(nextCaptureGroup(length)); //atomic and lookaround prefixes do not capture
+        }
+
+        regExpression.insert(length, groupStart.toString());
+
+        groupData.setStart(length);
+        groupData.setContentStart(regExpression.length());
+        groupData.setPlain(groupStart.toString().equals("(?:"));
+    }
+
+    /**
+     * Processes the end of the group element.
+     *
+     * @param ee End element
+     */
+    private void handleGroupElementEnd(EndElement ee)
+    {
+        GroupData groupData = groupStack.pop();
+        boolean redundant = false;
+        toggleOffEnd = -1;
+
+        if (optimize)
+        {
+            optimizeGroupContent(groupData);
+            redundant = isRedundantGroup(groupData);
+        }
+
+        if (redundant)
+        {
+            regExpression.delete(groupData.getStart(), groupData.getContentStart());
+        }
+        else
+        {
+            regExpression.append(")"); //end capturing or non-capturing group
+        }
+
+        handleMinMax(groupData.getMin(), groupData.getMax(), groupData.isLazy(), -1);
+
+        if (groupData.getLookahead() != LookaroundOptions.NONE || groupData.getLookbehind() != LookaroundOptions.NONE)
+        {
+            regExpression.append(")"); //end lookaround group
+        }
+
+        if (groupData.isAtomic())
+        {
+            regExpression.append(")"); //end atomic group
+        }
+
+        if (prefilter)
+        {
+            List<ExpressionShape> childShapes = groupData.getShapes();
+            boolean lookaround = groupData.getLookahead() != LookaroundOptions.NONE ||
+                groupData.getLookbehind() != LookaroundOptions.NONE;
+
+            if (lookaround)
+            {
+                addShape(ExpressionShape.empty());
+            }
+            else if (groupData.getOperator().equals(OPERATOR_OR))
+            {
+                addShape(ExpressionShape.alternation(childShapes).repeat(groupData.getMin(), groupData.getMax()));
+            }
+            else
+            {
+                addShape(ExpressionShape.sequence(childShapes).repeat(groupData.getMin(), groupData.getMax()));
+            }
+        }
+
+        boolean required = groupData.getOperator().equals(OPERATOR_AND) && !groupData.isAlternated() &&
+            Integer.parseInt(groupData.getMin()) > 0 && groupData.getLookahead() != LookaroundOptions.NEGATIVE &&
+            groupData.getLookbehind() != LookaroundOptions.NEGATIVE;
+
+        if (required)
+        {
+            for (Fragment fragment : groupData.getFragments())
+            {
+                if (groupStack.isEmpty())
+                {
+                    requiredFragments.add(fragment);
+                }
+                else
+                {
+                    groupStack.peek().addFragment(fragment);
+                }
+            }
+        }
+
+        if (groupData.getCaptureGroup() > 0)
+        {
+            List<String> constants = groupData.getCaptureType() == CaptureType.ENUM ?
+                groupData.getConstants() : Collections.<String>emptyList();
 
-        if (groupData.isAtomic())
+            captures.add(new CaptureDefinition(groupData.getCaptureGroup(), groupData.getCaptureName(),
+                groupData.getCaptureType(), constants, groupData.isCaseInsensitive()));
+        }
+
+        if (!groupStack.isEmpty())
         {
-            groupStart.append("?>("); //start atomic group
+            groupStack.peek().addConstant(null);
         }
 
-        if (groupData.getLookahead() == LookaroundOptions.POSITIVE)
+        if (optimize)
         {
-            groupStart.append("?=("); //start positive lookahead
+            registerChild(null, null);
         }
-        else if (groupData.getLookahead() == LookaroundOptions.NEGATIVE)
+    }
+
+    /**
+     * Rewrites the content of an operator="or" group whose alternatives are all plain matches: single characters and
+     * character classes are merged into one class, and literal alternatives are compiled into a prefix trie.
+     * Neither rewrite changes which alternative matches or the numbering of capture groups.
+     *
+     * @param groupData Settings of the group being closed
+     */
+    private void optimizeGroupContent(GroupData groupData)
+    {
+        if (!groupData.getOperator().equals(OPERATOR_OR) || groupData.isAnchored() || groupData.getChildCount() < 2)
         {
-            groupStart.append("?!("); //start negative lookahead
+            return;
         }
-        else if (groupData.getLookbehind() == LookaroundOptions.POSITIVE)
+
+        String content = null;
+
+        if (!groupData.getChildClassItems().contains(null))
         {
-            groupStart.append("?<=("); //start positive lookbehind
+            StringBuilder characterClass = new StringBuilder("[");
+
+            for (String classItem : groupData.getChildClassItems())
+            {
+                characterClass.append(classItem);
+            }
+
+            content = characterClass.append("]").toString();
         }
-        else if (groupData.getLookbehind() == LookaroundOptions.NEGATIVE)
+        else if (!groupData.isCaseInsensitive() && !groupData.getChildLiterals().contains(null))
         {
-            groupStart.append("?<!("); //start negative lookbehind
+            //the trie merges branches by exact character, which would reorder alternatives that differ only in case
+            content = compileLiteralTrie(groupData.getChildLiterals());
         }
 
-        if (!capture)
+        if (content != null)
         {
-            groupStart.append("?"); //start non-capturing group
+            regExpression.replace(groupData.getContentStart(), regExpression.length(), content);
         }
+    }
 
-        groupStart.append(matchOptionsOn.toString());
+    /**
+     * Compiles literal alternatives into a prefix trie so that the matcher does not try each alternative in turn.
+     *
+     * @param literals Literal alternatives in document order
+     * @return Rewritten alternation or null if an alternative is empty
+     */
+    private String compileLiteralTrie(List<String> literals)
+    {
+        LiteralTrie trie = new LiteralTrie();
 
-        if (matchOptionsOff.length() > 0)
+        for (String literal : literals)
         {
-            groupStart.append("-").append(matchOptionsOff.toString());
-        }
+            if (literal.length() == 0)
+            {
+                return null;
+            }
 
-        if (!capture)
-        {
-            groupStart.append(":"); //part of non-capturing group start
+            trie.add(literal);
         }
 
-        regExpression.insert(length, groupStart.toString());
+        return trie.toRegEx();
     }
 
     /**
-     * Processes the end of the group element.
+     * Indicates whether or not a group's non-capturing parentheses can be dropped without changing the expression.
      *
-     * @param ee End element
+     * @param groupData Settings of the group being closed
+     * @return True if the group's parentheses are redundant
      */
-    private void handleGroupElementEnd(EndElement ee)
+    private boolean isRedundantGroup(GroupData groupData)
     {
-        regExpression.append(")"); //end capturing or non-capturing group
-
-        GroupData groupData = groupStack.pop();
-        handleMinMax(groupData.getMin(), groupData.getMax(), groupData.isLazy(), -1);
-
-        if (groupData.getLookahead() != LookaroundOptions.NONE || groupData.getLookbehind() != LookaroundOptions.NONE)
+        if (!groupData.isPlain())
         {
-            regExpression.append(")"); //end lookaround group
+            return false;
         }
 
-        if (groupData.isAtomic())
+        String content = regExpression.substring(groupData.getContentStart());
+
+        if (RegExSyntax.isSingleAtom(content))
         {
-            regExpression.append(")"); //end atomic group
+            return true;
         }
+
+        return groupData.getMin().equals("1") && groupData.getMax().equals("1") &&
+            !RegExSyntax.hasTopLevelAlternation(content) && !RegExSyntax.hasFlagToggle(content);
     }
 
     /**
@@ -873,6 +2031,50 @@ public class ExpressionFactory
         }
     }
 
+    /**
+     * Translates the text of an equals or except attribute: the text is escaped if autoEscape is enabled and each
+     * ${name} placeholder is replaced with a marker character that the expression template substitutes later.
+     *
+     * @param text Attribute text
+     * @return Expression text
+     * @throws IllegalArgumentException Indicates that the expression uses too many distinct parameters
+     */
+    private String translateAttribute(String text) throws IllegalArgumentException
+    {
+        if (text.indexOf("${") < 0)
+        {
+            return autoEscape(text);
+        }
+
+        StringBuilder expression = new StringBuilder(text.length());
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
+        int last = 0;
+
+        while (matcher.find())
+        {
+            String name = matcher.group(1);
+            int index = parameterNames.indexOf(name);
+
+            if (index < 0)
+            {
+                if (parameterNames.size() == ExpressionTemplate.MAX_PARAMETERS)
+                {
+                    throw new IllegalArgumentException("Expression " + expressionId + " has more than " +
+                        ExpressionTemplate.MAX_PARAMETERS + " parameters");
+                }
+
+                index = parameterNames.size();
+                parameterNames.add(name);
+            }
+
+            expression.append(autoEscape(text.substring(last, matcher.start())));
+            expression.append((char) (ExpressionTemplate.PLACEHOLDER_BASE + index));
+            last = matcher.end();
+        }
+
+        return expression.append(autoEscape(text.substring(last))).toString();
+    }
+
     /**
      * Escapes the following characters: $()*+?^{|
      * 
@@ -883,7 +2085,7 @@ public class ExpressionFactory
     {
         if (autoEscape)
         {
-            text = text.replaceAll("[\\$\\(\\)\\*\\+\\?\\^\\{\\|]", "\\\\$0");
+            text = RegExSyntax.escape(text);
         }
 
         return text;
@@ -902,6 +2104,21 @@ public class ExpressionFactory
         private LookaroundOptions lookahead = LookaroundOptions.NONE;
         private LookaroundOptions lookbehind = LookaroundOptions.NONE;
         private boolean firstMatch = true;
+        private int start;
+        private int contentStart;
+        private boolean plain;
+        private boolean anchored;
+        private List<String> childLiterals = new ArrayList<String>();
+        private List<String> childClassItems = new ArrayList<String>();
+        private List<ExpressionShape> shapes = new ArrayList<ExpressionShape>();
+        private boolean caseInsensitive;
+        private boolean multiline;
+        private int captureGroup;
+        private String captureName;
+        private CaptureType captureType = CaptureType.STRING;
+        private List<String> constants = new ArrayList<String>();
+        private List<Fragment> fragments = new ArrayList<Fragment>();
+        private boolean alternated;
 
         /**
          * Gets the minimum number of times group may appear.
@@ -1064,5 +2281,307 @@ public class ExpressionFactory
         {
             this.firstMatch = firstMatch;
         }
+
+        /**
+         * Gets the position in the regular expression at which this group starts.
+         *
+         * @return Start index
+         */
+        public int getStart()
+        {
+            return start;
+        }
+
+        /**
+         * Sets the position in the regular expression at which this group starts.
+         *
+         * @param start Start index
+         */
+        public void setStart(int start)
+        {
+            this.start = start;
+        }
+
+        /**
+         * Gets the position in the regular expression at which this group's content starts.
+         *
+         * @return Content start index
+         */
+        public int getContentStart()
+        {
+            return contentStart;
+        }
+
+        /**
+         * Sets the position in the regular expression at which this group's content starts.
+         *
+         * @param contentStart Content start index
+         */
+        public void setContentStart(int contentStart)
+        {
+            this.contentStart = contentStart;
+        }
+
+        /**
+         * Indicates whether or not this group is a plain non-capturing group without options or lookaround.
+         *
+         * @return True indicates a plain group
+         */
+        public boolean isPlain()
+        {
+            return plain;
+        }
+
+        /**
+         * Sets whether or not this group is a plain non-capturing group without options or lookaround.
+         *
+         * @param plain True indicates a plain group
+         */
+        public void setPlain(boolean plain)
+        {
+            this.plain = plain;
+        }
+
+        /**
+         * Indicates whether or not a start or end anchor appears directly in this group.
+         *
+         * @return True if the group contains an anchor
+         */
+        public boolean isAnchored()
+        {
+            return anchored;
+        }
+
+        /**
+         * Sets whether or not a start or end anchor appears directly in this group.
+         *
+         * @param anchored True if the group contains an anchor
+         */
+        public void setAnchored(boolean anchored)
+        {
+            this.anchored = anchored;
+        }
+
+        /**
+         * Indicates whether or not a child match adds an alternation that is not enclosed in a group of its own.
+         *
+         * @return True if the group content has a top level alternation
+         */
+        public boolean isAlternated()
+        {
+            return alternated;
+        }
+
+        /**
+         * Sets whether or not a child match adds an alternation that is not enclosed in a group of its own.
+         *
+         * @param alternated True if the group content has a top level alternation
+         */
+        public void setAlternated(boolean alternated)
+        {
+            this.alternated = alternated;
+        }
+
+        /**
+         * Records a fragment that every match of this group's content contains.
+         *
+         * @param fragment Fragment referenced by a child
+         */
+        public void addFragment(Fragment fragment)
+        {
+            fragments.add(fragment);
+        }
+
+        /**
+         * Gets the fragments that every match of this group's content contains.
+         *
+         * @return Fragments in document order
+         */
+        public List<Fragment> getFragments()
+        {
+            return fragments;
+        }
+
+        /**
+         * Records a completed child match or group.
+         *
+         * @param literal Literal text matched by the child or null if the child is not a plain literal
+         * @param classItem Character class member equivalent to the child or null if there is none
+         */
+        public void addChild(String literal, String classItem)
+        {
+            childLiterals.add(literal);
+            childClassItems.add(classItem);
+        }
+
+        /**
+         * Gets the number of completed child matches and groups.
+         *
+         * @return Number of children
+         */
+        public int getChildCount()
+        {
+            return childLiterals.size();
+        }
+
+        /**
+         * Gets the literal text of each child, with null entries for children that are not plain literals.
+         *
+         * @return Child literals in document order
+         */
+        public List<String> getChildLiterals()
+        {
+            return childLiterals;
+        }
+
+        /**
+         * Gets the character class member equivalent to each child, with null entries where there is none.
+         *
+         * @return Child class members in document order
+         */
+        public List<String> getChildClassItems()
+        {
+            return childClassItems;
+        }
+
+        /**
+         * Records the literal text of a completed child, used as an alternative of an ENUM capture.
+         *
+         * @param constant Literal text matched by the child or null if the child is not a literal
+         */
+        public void addConstant(String constant)
+        {
+            constants.add(constant);
+        }
+
+        /**
+         * Gets the literal text of each child, with null entries for children that are not literals.
+         *
+         * @return Child constants in document order
+         */
+        public List<String> getConstants()
+        {
+            return constants;
+        }
+
+        /**
+         * Gets the number of the capture group opened by this group.
+         *
+         * @return Group number or 0 if this group does not capture
+         */
+        public int getCaptureGroup()
+        {
+            return captureGroup;
+        }
+
+        /**
+         * Sets the number of the capture group opened by this group.
+         *
+         * @param captureGroup Group number
+         */
+        public void setCaptureGroup(int captureGroup)
+        {
+            this.captureGroup = captureGroup;
+        }
+
+        /**
+         * Gets the name of the capture.
+         *
+         * @return Name or null if the capture has none
+         */
+        public String getCaptureName()
+        {
+            return captureName;
+        }
+
+        /**
+         * Sets the name of the capture.
+         *
+         * @param captureName Name of the capture
+         */
+        public void setCaptureName(String captureName)
+        {
+            this.captureName = captureName;
+        }
+
+        /**
+         * Gets the value type of the capture.
+         *
+         * @return Value type
+         */
+        public CaptureType getCaptureType()
+        {
+            return captureType;
+        }
+
+        /**
+         * Sets the value type of the capture.
+         *
+         * @param captureType Value type
+         */
+        public void setCaptureType(CaptureType captureType)
+        {
+            this.captureType = captureType;
+        }
+
+        /**
+         * Records the shape of a completed child match, group or anchor.
+         *
+         * @param shape Shape of the child
+         */
+        public void addShape(ExpressionShape shape)
+        {
+            shapes.add(shape);
+        }
+
+        /**
+         * Gets the shapes of the completed children.
+         *
+         * @return Child shapes in document order
+         */
+        public List<ExpressionShape> getShapes()
+        {
+            return shapes;
+        }
+
+        /**
+         * Indicates whether or not case-insensitive matching may be in effect inside this group.
+         *
+         * @return True if this group or an enclosing one ignores case
+         */
+        public boolean isCaseInsensitive()
+        {
+            return caseInsensitive;
+        }
+
+        /**
+         * Sets whether or not case-insensitive matching may be in effect inside this group.
+         *
+         * @param caseInsensitive True if this group or an enclosing one ignores case
+         */
+        public void setCaseInsensitive(boolean caseInsensitive)
+        {
+            this.caseInsensitive = caseInsensitive;
+        }
+
+        /**
+         * Indicates whether or not anchors may match at line breaks inside this group.
+         *
+         * @return True if this group or an enclosing one lets anchors match at line breaks
+         */
+        public boolean isMultiline()
+        {
+            return multiline;
+        }
+
+        /**
+         * Sets whether or not anchors may match at line breaks inside this group.
+         *
+         * @param multiline True if this group or an enclosing one lets anchors match at line breaks
+         */
+        public void setMultiline(boolean multiline)
+        {
+            this.multiline = multiline;
+        }
     }
 }
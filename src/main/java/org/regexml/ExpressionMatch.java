@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+
+/**
+ * Immutable result of matching an expression against an input string. Unlike a Matcher, an ExpressionMatch holds only
+ * the input and the capture offsets, so it may be cached and shared between threads.
+ */
+public class ExpressionMatch implements MatchResult
+{
+    private String input;
+    private int[] offsets;
+
+    /**
+     * Constructs a new expression match from the current state of the given matcher.
+     *
+     * @param input Input string that was matched
+     * @param matcher Matcher positioned on a successful match
+     */
+    ExpressionMatch(String input, Matcher matcher)
+    {
+        this.input = input;
+        this.offsets = new int[(matcher.groupCount() + 1) * 2];
+
+        for (int i = 0; i <= matcher.groupCount(); i++)
+        {
+            offsets[i * 2] = matcher.start(i);
+            offsets[i * 2 + 1] = matcher.end(i);
+        }
+    }
+
+    /**
+     * Constructs a new expression match from capture offsets, such as those received from a match server.
+     *
+     * @param input Input string that was matched
+     * @param offsets Start and end index of each group, starting with the whole match, -1 for groups that did not
+     * participate in the match
+     */
+    public ExpressionMatch(String input, int[] offsets)
+    {
+        this.input = input;
+        this.offsets = offsets.clone();
+    }
+
+    /**
+     * Gets the input string that was matched.
+     *
+     * @return Input string
+     */
+    public String getInput()
+    {
+        return input;
+    }
+
+    /**
+     * Gets the start index of the match.
+     *
+     * @return Start index
+     */
+    public int start()
+    {
+        return start(0);
+    }
+
+    /**
+     * Gets the start index of the given capture group.
+     *
+     * @param group Capture group number (0 for the entire match)
+     * @return Start index or -1 if the group did not participate in the match
+     */
+    public int start(int group)
+    {
+        checkGroup(group);
+        return offsets[group * 2];
+    }
+
+    /**
+     * Gets the end index of the match.
+     *
+     * @return End index
+     */
+    public int end()
+    {
+        return end(0);
+    }
+
+    /**
+     * Gets the end index of the given capture group.
+     *
+     * @param group Capture group number (0 for the entire match)
+     * @return End index or -1 if the group did not participate in the match
+     */
+    public int end(int group)
+    {
+        checkGroup(group);
+        return offsets[group * 2 + 1];
+    }
+
+    /**
+     * Gets the text of the match.
+     *
+     * @return Matched text
+     */
+    public String group()
+    {
+        return group(0);
+    }
+
+    /**
+     * Gets the text of the given capture group.
+     *
+     * @param group Capture group number (0 for the entire match)
+     * @return Captured text or null if the group did not participate in the match
+     */
+    public String group(int group)
+    {
+        checkGroup(group);
+
+        if (offsets[group * 2] == -1)
+        {
+            return null;
+        }
+
+        return input.substring(offsets[group * 2], offsets[group * 2 + 1]);
+    }
+
+    /**
+     * Gets the number of capture groups in the expression.
+     *
+     * @return Number of capture groups
+     */
+    public int groupCount()
+    {
+        return offsets.length / 2 - 1;
+    }
+
+    /**
+     * Estimates the number of bytes retained by this match, excluding the input string.
+     *
+     * @return Estimated size in bytes
+     */
+    int estimateSize()
+    {
+        return 32 + 16 + offsets.length * 4;
+    }
+
+    /**
+     * Verifies that the given group number exists.
+     *
+     * @param group Capture group number
+     */
+    private void checkGroup(int group)
+    {
+        if (group < 0 || group > groupCount())
+        {
+            throw new IndexOutOfBoundsException("No group " + group);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.BitSet;
+
+/**
+ * Cheap checks that rule out inputs an expression cannot match before its pattern is run. The checks are derived from
+ * the document when it is loaded: the minimum and maximum length implied by the min and max attributes, whether the
+ * expression is anchored by start and end elements and which characters a match can start with. An unanchored search
+ * skips the positions in front of the first possible start character.
+ */
+public final class ExpressionPrefilter
+{
+    private static final int ASCII_SIZE = 128;
+    private static final int MAX_LINE_TERMINATOR_LENGTH = 2;
+
+    private final int minLength;
+    private final int maxLength;
+    private final boolean startAnchored;
+    private final boolean endAnchored;
+    private final boolean[] firstChars;
+    private final boolean firstNonAscii;
+
+    /**
+     * Constructs a new prefilter from the shape of a whole expression.
+     *
+     * @param shape Shape of the expression
+     */
+    ExpressionPrefilter(ExpressionShape shape)
+    {
+        this.minLength = shape.getMinLength();
+        this.maxLength = shape.getMaxLength();
+        this.startAnchored = shape.isStartAnchored();
+        this.endAnchored = shape.isEndAnchored();
+
+        BitSet set = minLength > 0 ? shape.getFirstChars() : null; //an empty match can occur anywhere
+
+        if (set == null)
+        {
+            this.firstChars = null;
+            this.firstNonAscii = true;
+        }
+        else
+        {
+            this.firstChars = new boolean[ASCII_SIZE];
+
+            for (int i = set.nextSetBit(0); i >= 0 && i < ASCII_SIZE; i = set.nextSetBit(i + 1))
+            {
+                firstChars[i] = true;
+            }
+
+            this.firstNonAscii = shape.isFirstNonAscii();
+        }
+    }
+
+    /**
+     * Gets the minimum length of a match in chars.
+     *
+     * @return Minimum length
+     */
+    public int getMinLength()
+    {
+        return minLength;
+    }
+
+    /**
+     * Gets the maximum length of a match in chars.
+     *
+     * @return Maximum length or -1 if matches are unbounded
+     */
+    public int getMaxLength()
+    {
+        return maxLength;
+    }
+
+    /**
+     * Indicates whether or not every match starts at the start of the input.
+     *
+     * @return True if the expression is anchored at the start
+     */
+    public boolean isStartAnchored()
+    {
+        return startAnchored;
+    }
+
+    /**
+     * Indicates whether or not every match ends at the end of the input or before a final line terminator.
+     *
+     * @return True if the expression is anchored at the end
+     */
+    public boolean isEndAnchored()
+    {
+        return endAnchored;
+    }
+
+    /**
+     * Indicates whether or not a match can start with the given character.
+     *
+     * @param c Character
+     * @return True if a match can start with the character
+     */
+    public boolean isFirstChar(char c)
+    {
+        return c < ASCII_SIZE ? firstChars == null || firstChars[c] : firstNonAscii;
+    }
+
+    /**
+     * Finds the first position in the input at which a match could start.
+     *
+     * @param input Input to search
+     * @return Start position for the search or -1 if the expression cannot match the input
+     */
+    public int firstCandidate(CharSequence input)
+    {
+        int length = input.length();
+
+        if (length < minLength)
+        {
+            return -1;
+        }
+
+        if (startAnchored && endAnchored && maxLength >= 0 && length > maxLength &&
+            (length - maxLength > MAX_LINE_TERMINATOR_LENGTH || !isLineTerminator(input.charAt(length - 1))))
+        {
+            return -1;
+        }
+
+        if (firstChars == null && firstNonAscii)
+        {
+            return 0;
+        }
+
+        if (startAnchored)
+        {
+            return isFirstChar(input.charAt(0)) ? 0 : -1;
+        }
+
+        for (int i = 0, last = length - minLength; i <= last; i++)
+        {
+            if (isFirstChar(input.charAt(i)))
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Indicates whether or not a character terminates a line.
+     *
+     * @param c Character
+     * @return True for line terminators recognized by the end anchor
+     */
+    private static boolean isLineTerminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Static description of the text matched by part of an expression: bounds on its length in chars, the characters a
+ * non-empty match can start with and whether it is pinned to the start or end of the input. Shapes are derived from
+ * the document while it is translated and always over-approximate what the regular expression can match, so a part
+ * that cannot be analyzed is described as matching anything.
+ */
+final class ExpressionShape
+{
+    public static final int UNBOUNDED = -1;
+
+    private static final int ASCII_SIZE = 128;
+    private static final String ZERO_WIDTH_ESCAPES = "bBAGZzXRQEk";
+    private static final String NON_ASCII_ESCAPES = "DWSpPxuc0NhHvV";
+
+    private int minLength;
+    private int maxLength;
+    private BitSet firstChars;
+    private boolean firstNonAscii;
+    private boolean startAnchored;
+    private boolean endAnchored;
+
+    /**
+     * Constructs a new shape.
+     *
+     * @param minLength Minimum length in chars
+     * @param maxLength Maximum length in chars or UNBOUNDED
+     * @param firstChars ASCII characters a non-empty match can start with or null if any character is possible
+     * @param firstNonAscii Indicates whether or not a non-empty match can start with a non-ASCII character
+     */
+    private ExpressionShape(int minLength, int maxLength, BitSet firstChars, boolean firstNonAscii)
+    {
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.firstChars = firstChars;
+        this.firstNonAscii = firstNonAscii;
+    }
+
+    /**
+     * Creates a shape that may match anything.
+     *
+     * @return Unknown shape
+     */
+    public static ExpressionShape unknown()
+    {
+        return new ExpressionShape(0, UNBOUNDED, null, true);
+    }
+
+    /**
+     * Creates the shape of a zero-width assertion such as a lookaround.
+     *
+     * @return Empty shape
+     */
+    public static ExpressionShape empty()
+    {
+        return new ExpressionShape(0, 0, new BitSet(ASCII_SIZE), false);
+    }
+
+    /**
+     * Creates the shape of a start or end anchor.
+     *
+     * @param start True for a start anchor, false for an end anchor
+     * @param anchored False if the anchor also matches at line breaks
+     * @return Anchor shape
+     */
+    public static ExpressionShape anchor(boolean start, boolean anchored)
+    {
+        ExpressionShape shape = empty();
+        shape.startAnchored = start && anchored;
+        shape.endAnchored = !start && anchored;
+
+        return shape;
+    }
+
+    /**
+     * Creates the shape of the regular expression generated for a match element, before its quantifier is applied.
+     *
+     * @param expression Regular expression
+     * @param flags Match flags in effect, of which only CASE_INSENSITIVE is relevant
+     * @return Shape of the expression
+     */
+    public static ExpressionShape of(String expression, int flags)
+    {
+        boolean ignoreCase = (flags & Pattern.CASE_INSENSITIVE) != 0;
+        String literal = RegExSyntax.literalValue(expression);
+
+        if (literal != null)
+        {
+            return literal(literal, ignoreCase);
+        }
+
+        if (!RegExSyntax.isSingleAtom(expression))
+        {
+            return unknown();
+        }
+
+        char escaped = expression.charAt(0) == '\\' ? expression.charAt(1) : 0;
+
+        if (escaped != 0 && (ZERO_WIDTH_ESCAPES.indexOf(escaped) >= 0 || Character.isDigit(escaped)))
+        {
+            return unknown();
+        }
+
+        boolean asciiOnly = !expression.equals(".") && isAsciiOnly(expression);
+        BitSet firstChars = new BitSet(ASCII_SIZE);
+        Pattern pattern;
+
+        try
+        {
+            pattern = Pattern.compile(expression, flags | Pattern.DOTALL);
+        }
+        catch (PatternSyntaxException e)
+        {
+            return unknown(); //reported when the expression itself is compiled
+        }
+
+        for (char c = 0; c < ASCII_SIZE; c++)
+        {
+            if (pattern.matcher(String.valueOf(c)).matches())
+            {
+                firstChars.set(c);
+            }
+        }
+
+        return new ExpressionShape(1, asciiOnly ? 1 : 2, firstChars, !asciiOnly); //a code point may take two chars
+    }
+
+    /**
+     * Creates the shape of a literal.
+     *
+     * @param literal Literal text
+     * @param ignoreCase Indicates whether or not the literal is matched without regard to case
+     * @return Shape of the literal
+     */
+    private static ExpressionShape literal(String literal, boolean ignoreCase)
+    {
+        BitSet firstChars = new BitSet(ASCII_SIZE);
+        boolean firstNonAscii = false;
+
+        if (literal.length() > 0)
+        {
+            char c = literal.charAt(0);
+
+            if (c < ASCII_SIZE)
+            {
+                firstChars.set(c);
+
+                if (ignoreCase)
+                {
+                    firstChars.set(Character.toLowerCase(c));
+                    firstChars.set(Character.toUpperCase(c));
+                }
+            }
+            else
+            {
+                firstNonAscii = true;
+            }
+        }
+
+        return new ExpressionShape(literal.length(), literal.length(), firstChars, firstNonAscii);
+    }
+
+    /**
+     * Indicates whether or not a single atom can only match ASCII characters. Character classes qualify if they are
+     * not negated and only list ASCII characters and escapes that stay within ASCII.
+     *
+     * @param atom Single atom
+     * @return True if the atom only matches ASCII characters
+     */
+    private static boolean isAsciiOnly(String atom)
+    {
+        for (int i = 0; i < atom.length(); i++)
+        {
+            char c = atom.charAt(i);
+
+            if (c >= ASCII_SIZE || c == '^')
+            {
+                return false;
+            }
+
+            if (c == '\\' && i + 1 < atom.length() && NON_ASCII_ESCAPES.indexOf(atom.charAt(++i)) >= 0)
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Combines shapes matched one after the other.
+     *
+     * @param shapes Shapes in document order
+     * @return Shape of the sequence
+     */
+    public static ExpressionShape sequence(List<ExpressionShape> shapes)
+    {
+        ExpressionShape result = empty();
+
+        for (ExpressionShape shape : shapes)
+        {
+            if (result.minLength == 0)
+            {
+                result.firstChars = union(result.firstChars, shape.firstChars);
+                result.firstNonAscii |= shape.firstNonAscii;
+            }
+
+            result.startAnchored |= result.maxLength == 0 && shape.startAnchored;
+            result.endAnchored = shape.endAnchored || (shape.maxLength == 0 && result.endAnchored);
+            result.minLength = add(result.minLength, shape.minLength);
+            result.maxLength = shape.maxLength == UNBOUNDED || result.maxLength == UNBOUNDED ? UNBOUNDED :
+                add(result.maxLength, shape.maxLength);
+        }
+
+        return result;
+    }
+
+    /**
+     * Combines the shapes of alternatives.
+     *
+     * @param shapes Shapes of the alternatives
+     * @return Shape of the alternation
+     */
+    public static ExpressionShape alternation(List<ExpressionShape> shapes)
+    {
+        if (shapes.isEmpty())
+        {
+            return empty();
+        }
+
+        ExpressionShape result = new ExpressionShape(Integer.MAX_VALUE, 0, new BitSet(ASCII_SIZE), false);
+        result.startAnchored = true;
+        result.endAnchored = true;
+
+        for (ExpressionShape shape : shapes)
+        {
+            result.minLength = Math.min(result.minLength, shape.minLength);
+            result.maxLength = shape.maxLength == UNBOUNDED || result.maxLength == UNBOUNDED ? UNBOUNDED :
+                Math.max(result.maxLength, shape.maxLength);
+            result.firstChars = union(result.firstChars, shape.firstChars);
+            result.firstNonAscii |= shape.firstNonAscii;
+            result.startAnchored &= shape.startAnchored;
+            result.endAnchored &= shape.endAnchored;
+        }
+
+        return result;
+    }
+
+    /**
+     * Applies a quantifier to this shape.
+     *
+     * @param min Minimum number of repetitions
+     * @param max Maximum number of repetitions or "*"
+     * @return Shape of the repetition
+     */
+    public ExpressionShape repeat(String min, String max)
+    {
+        int minCount = Integer.parseInt(min);
+        int maxCount = max.equals("*") ? UNBOUNDED : Math.max(minCount, Integer.parseInt(max)); //min="5" means {5}
+
+        ExpressionShape result = new ExpressionShape(multiply(minLength, minCount),
+            maxLength == UNBOUNDED || maxCount == UNBOUNDED ? UNBOUNDED : multiply(maxLength, maxCount),
+            firstChars, firstNonAscii);
+
+        result.startAnchored = minCount > 0 && startAnchored;
+        result.endAnchored = minCount > 0 && endAnchored;
+
+        return result;
+    }
+
+    /**
+     * Gets the minimum length of a match in chars.
+     *
+     * @return Minimum length
+     */
+    public int getMinLength()
+    {
+        return minLength;
+    }
+
+    /**
+     * Gets the maximum length of a match in chars.
+     *
+     * @return Maximum length or UNBOUNDED
+     */
+    public int getMaxLength()
+    {
+        return maxLength;
+    }
+
+    /**
+     * Gets the ASCII characters a non-empty match can start with.
+     *
+     * @return Possible first characters or null if any character is possible
+     */
+    public BitSet getFirstChars()
+    {
+        return firstChars;
+    }
+
+    /**
+     * Indicates whether or not a non-empty match can start with a non-ASCII character.
+     *
+     * @return True if a non-ASCII first character is possible
+     */
+    public boolean isFirstNonAscii()
+    {
+        return firstNonAscii;
+    }
+
+    /**
+     * Indicates whether or not every match starts at the start of the input.
+     *
+     * @return True if the shape is anchored at the start
+     */
+    public boolean isStartAnchored()
+    {
+        return startAnchored;
+    }
+
+    /**
+     * Indicates whether or not every match ends at the end of the input or before a final line terminator.
+     *
+     * @return True if the shape is anchored at the end
+     */
+    public boolean isEndAnchored()
+    {
+        return endAnchored;
+    }
+
+    /**
+     * Computes the union of two first character sets.
+     *
+     * @param a First set or null for any character
+     * @param b Second set or null for any character
+     * @return Union of both sets
+     */
+    private static BitSet union(BitSet a, BitSet b)
+    {
+        if (a == null || b == null)
+        {
+            return null;
+        }
+
+        BitSet union = (BitSet) a.clone();
+        union.or(b);
+
+        return union;
+    }
+
+    /**
+     * Adds two lengths, saturating at Integer.MAX_VALUE.
+     *
+     * @param a First length
+     * @param b Second length
+     * @return Sum of both lengths
+     */
+    private static int add(int a, int b)
+    {
+        return (int) Math.min((long) a + b, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Multiplies a length by a repetition count, saturating at Integer.MAX_VALUE.
+     *
+     * @param length Length
+     * @param count Repetition count
+     * @return Product of both values
+     */
+    private static int multiply(int length, int count)
+    {
+        return (int) Math.min((long) length * count, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expression whose equals or except attributes contain ${name} placeholders. The document is translated once; each
+ * call to instantiate() substitutes parameter values into the translated expression and returns a compiled variant.
+ * Variants are kept in a size-bounded cache keyed by the parameter values, split into independently locked segments
+ * so that concurrent lookups rarely contend.
+ * <p/>
+ * Values are quoted so that every character, including '.', '[' and '\', matches only itself, whether or not the
+ * document enables autoEscape, so a value cannot add groups, alternatives or wildcards to the expression. A placeholder
+ * outside a character class matches the value, and a placeholder inside one adds each character of the value to the
+ * class. A collection value matches any one of its elements.
+ */
+public class ExpressionTemplate
+{
+    static final char PLACEHOLDER_BASE = '\uE000';
+    static final int MAX_PARAMETERS = 256;
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private String id;
+    private String regExString;
+    private int flags;
+    private List<String> parameterNames;
+    private List<CaptureDefinition> captures;
+    private Segment[] segments;
+    private int maxVariants;
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+    private AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructs a new expression template.
+     *
+     * @param id ID of the expression
+     * @param regExString Translated expression in which placeholder n is the character PLACEHOLDER_BASE + n
+     * @param flags Match flags
+     * @param parameterNames Parameter names in order of first appearance
+     * @param captures Typed captures declared in the document
+     * @param maxVariants Maximum number of compiled variants cached
+     */
+    ExpressionTemplate(String id, String regExString, int flags, List<String> parameterNames,
+                       List<CaptureDefinition> captures, int maxVariants)
+    {
+        if (maxVariants < 1)
+        {
+            throw new IllegalArgumentException("Template cache size must be positive");
+        }
+
+        this.id = id;
+        this.regExString = regExString;
+        this.flags = flags;
+        this.parameterNames = Collections.unmodifiableList(new ArrayList<String>(parameterNames));
+        this.captures = captures;
+        this.maxVariants = maxVariants;
+
+        int segmentCount = Math.min(DEFAULT_SEGMENTS, Integer.highestOneBit(maxVariants));
+        segments = new Segment[segmentCount];
+
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment(maxVariants / segmentCount);
+        }
+    }
+
+    /**
+     * Indicates whether or not translated expression text contains a placeholder.
+     *
+     * @param expression Translated expression text or null
+     * @return True if the text contains a placeholder character
+     */
+    static boolean hasPlaceholder(String expression)
+    {
+        if (expression != null)
+        {
+            for (int i = 0; i < expression.length(); i++)
+            {
+                if (isPlaceholder(expression.charAt(i)))
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Indicates whether or not a character stands for a placeholder.
+     *
+     * @param c Character to evaluate
+     * @return True if the character is a placeholder
+     */
+    private static boolean isPlaceholder(char c)
+    {
+        return c >= PLACEHOLDER_BASE && c < PLACEHOLDER_BASE + MAX_PARAMETERS;
+    }
+
+    /**
+     * Gets the ID of the expression.
+     *
+     * @return Expression ID
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets the translated expression with placeholders written as ${name}.
+     *
+     * @return Regular expression text
+     */
+    public String getRegExString()
+    {
+        StringBuilder text = new StringBuilder(regExString.length() + 16);
+
+        for (int i = 0; i < regExString.length(); i++)
+        {
+            char c = regExString.charAt(i);
+
+            if (isPlaceholder(c))
+            {
+                text.append("${").append(parameterNames.get(c - PLACEHOLDER_BASE)).append("}");
+            }
+            else
+            {
+                text.append(c);
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Gets the names of the template parameters.
+     *
+     * @return Unmodifiable list of names in order of first appearance in the document
+     */
+    public List<String> getParameterNames()
+    {
+        return parameterNames;
+    }
+
+    /**
+     * Gets the typed capture groups declared in the document, shared by every variant.
+     *
+     * @return Unmodifiable list of captures, ordered by group number
+     */
+    public List<CaptureDefinition> getCaptures()
+    {
+        return captures;
+    }
+
+    /**
+     * Gets the compiled variant for the given parameter values.
+     *
+     * @param parameters Value of every parameter by name: a CharSequence or a Collection of alternatives
+     * @return Compiled expression
+     * @throws IllegalArgumentException Indicates that a parameter is missing or has an unsupported value
+     */
+    public Expression instantiate(Map<String, ?> parameters) throws IllegalArgumentException
+    {
+        Object[] values = new Object[parameterNames.size()];
+
+        for (int i = 0; i < values.length; i++)
+        {
+            String name = parameterNames.get(i);
+
+            if (!parameters.containsKey(name))
+            {
+                throw new IllegalArgumentException("Missing parameter " + name + " for expression " + id);
+            }
+
+            values[i] = parameters.get(name);
+        }
+
+        return instantiate(values);
+    }
+
+    /**
+     * Gets the compiled variant for the given parameter values.
+     *
+     * @param values Value of every parameter in the order of getParameterNames(): a CharSequence or a Collection of
+     * alternatives
+     * @return Compiled expression
+     * @throws IllegalArgumentException Indicates that the number of values is wrong or a value is unsupported
+     */
+    public Expression instantiate(Object... values) throws IllegalArgumentException
+    {
+        if (values.length != parameterNames.size())
+        {
+            throw new IllegalArgumentException("Expression " + id + " takes " + parameterNames.size() +
+                " parameters, got " + values.length);
+        }
+
+        List<Object> key = new ArrayList<Object>(values.length);
+
+        for (int i = 0; i < values.length; i++)
+        {
+            key.add(normalize(parameterNames.get(i), values[i]));
+        }
+
+        Segment segment = segmentFor(key);
+        Expression variant = segment.get(key);
+
+        if (variant != null)
+        {
+            hitCount.incrementAndGet();
+            return variant;
+        }
+
+        missCount.incrementAndGet();
+
+        String variantString = substitute(key);
+        variant = new Expression(id, variantString, PatternPool.compile(variantString, flags));
+        variant.setCaptures(captures);
+
+        return segment.putIfAbsent(key, variant); //if another thread compiled the same variant first, its one wins
+    }
+
+    /**
+     * Converts a parameter value into an immutable cache key component.
+     *
+     * @param name Parameter name
+     * @param value Parameter value
+     * @return String or list of strings
+     * @throws IllegalArgumentException Indicates that the value is null, an empty collection or of another type
+     */
+    private static Object normalize(String name, Object value) throws IllegalArgumentException
+    {
+        if (value instanceof CharSequence)
+        {
+            return value.toString();
+        }
+
+        if (value instanceof Collection && !((Collection<?>) value).isEmpty())
+        {
+            List<String> alternatives = new ArrayList<String>(((Collection<?>) value).size());
+
+            for (Object alternative : (Collection<?>) value)
+            {
+                alternatives.add(String.valueOf(alternative));
+            }
+
+            return Collections.unmodifiableList(alternatives);
+        }
+
+        throw new IllegalArgumentException("Parameter " + name + " must be a string or a non-empty collection");
+    }
+
+    /**
+     * Replaces every placeholder of the translated expression with its escaped value.
+     *
+     * @param values Normalized value of every parameter
+     * @return Regular expression text of the variant
+     */
+    private String substitute(List<Object> values)
+    {
+        StringBuilder variant = new StringBuilder(regExString.length() + 32);
+        int classDepth = 0;
+
+        for (int i = 0; i < regExString.length(); i++)
+        {
+            char c = regExString.charAt(i);
+
+            if (c == '\\' && i + 1 < regExString.length())
+            {
+                variant.append(c).append(regExString.charAt(++i));
+            }
+            else if (isPlaceholder(c))
+            {
+                appendValue(variant, values.get(c - PLACEHOLDER_BASE), classDepth > 0);
+            }
+            else
+            {
+                if (c == '[')
+                {
+                    classDepth++;
+                }
+                else if (c == ']' && classDepth > 0)
+                {
+                    classDepth--;
+                }
+
+                variant.append(c);
+            }
+        }
+
+        return variant.toString();
+    }
+
+    /**
+     * Appends a quoted parameter value.
+     *
+     * @param variant Expression being built
+     * @param value Normalized parameter value
+     * @param inClass Indicates whether or not the placeholder is inside a character class
+     */
+    private static void appendValue(StringBuilder variant, Object value, boolean inClass)
+    {
+        List<?> alternatives = value instanceof List ? (List<?>) value : Collections.singletonList(value);
+
+        if (inClass)
+        {
+            for (Object alternative : alternatives)
+            {
+                String text = (String) alternative;
+
+                for (int i = 0; i < text.length(); i++)
+                {
+                    variant.append(RegExSyntax.quoteClassCharacter(text.charAt(i)));
+                }
+            }
+
+            return;
+        }
+
+        variant.append("(?:"); //non-capturing, so the group numbers of the captures are unchanged
+
+        for (Iterator<?> it = alternatives.iterator(); it.hasNext();)
+        {
+            variant.append(RegExSyntax.quoteLiteral((String) it.next()));
+
+            if (it.hasNext())
+            {
+                variant.append("|");
+            }
+        }
+
+        variant.append(")");
+    }
+
+    /**
+     * Removes all cached variants. Counters are not reset.
+     */
+    public void clear()
+    {
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Gets the number of variants currently cached.
+     *
+     * @return Number of cached variants
+     */
+    public int getVariantCount()
+    {
+        int size = 0;
+
+        for (Segment segment : segments)
+        {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Gets the maximum number of cached variants.
+     *
+     * @return Maximum number of cached variants
+     */
+    public int getMaxVariants()
+    {
+        return maxVariants;
+    }
+
+    /**
+     * Gets the number of instantiations answered with a cached variant.
+     *
+     * @return Hit count
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of instantiations that compiled a new variant.
+     *
+     * @return Miss count
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of variants evicted to stay within the cache limit.
+     *
+     * @return Eviction count
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    /**
+     * Selects the segment responsible for the given parameter values.
+     *
+     * @param key Normalized parameter values
+     * @return Cache segment
+     */
+    private Segment segmentFor(List<Object> key)
+    {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * Independently locked portion of the variant cache holding entries in least recently used order.
+     */
+    private class Segment
+    {
+        private LinkedHashMap<List<Object>, Expression> map =
+            new LinkedHashMap<List<Object>, Expression>(16, 0.75f, true);
+        private int maxEntries;
+
+        /**
+         * Constructs a new cache segment.
+         *
+         * @param maxEntries Maximum number of entries in this segment
+         */
+        Segment(int maxEntries)
+        {
+            this.maxEntries = Math.max(1, maxEntries);
+        }
+
+        /**
+         * Looks up the variant for the given parameter values and marks it as most recently used.
+         *
+         * @param key Normalized parameter values
+         * @return Cached variant or null
+         */
+        synchronized Expression get(List<Object> key)
+        {
+            return map.get(key);
+        }
+
+        /**
+         * Stores a variant unless one is already cached for the same values, then evicts least recently used entries
+         * until the segment is within its limit.
+         *
+         * @param key Normalized parameter values
+         * @param variant Compiled variant
+         * @return Cached variant for the values
+         */
+        synchronized Expression putIfAbsent(List<Object> key, Expression variant)
+        {
+            Expression existing = map.get(key);
+
+            if (existing != null)
+            {
+                return existing;
+            }
+
+            map.put(key, variant);
+
+            for (Iterator<Expression> it = map.values().iterator(); it.hasNext() && map.size() > maxEntries;)
+            {
+                it.next();
+                it.remove();
+                evictionCount.incrementAndGet();
+            }
+
+            return variant;
+        }
+
+        /**
+         * Removes all entries from this segment.
+         */
+        synchronized void clear()
+        {
+            map.clear();
+        }
+
+        /**
+         * Gets the number of entries in this segment.
+         *
+         * @return Number of entries
+         */
+        synchronized int size()
+        {
+            return map.size();
+        }
+    }
+}
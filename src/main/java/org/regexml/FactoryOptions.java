@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import org.regexml.metrics.ExpressionEventListener;
+
+/**
+ * Options controlling how an ExpressionFactory loads an expressions file.
+ */
+public class FactoryOptions
+{
+    private boolean validate = false;
+    private boolean compileLazily = false;
+    private boolean optimize = false;
+    private boolean prefilter = true;
+    private int warmUpIterations = 0;
+    private int templateCacheSize = 256;
+    private long patternBudgetBytes = 0;
+    private ExpressionEventListener eventListener;
+    private long slowMatchThresholdNanos = 0;
+
+    /**
+     * Indicates whether or not the expressions file should be validated against the regexml schema.
+     *
+     * @return True indicates the file is validated
+     */
+    public boolean isValidate()
+    {
+        return validate;
+    }
+
+    /**
+     * Sets whether or not the expressions file should be validated against the regexml schema.
+     *
+     * @param validate True indicates the file is validated
+     */
+    public void setValidate(boolean validate)
+    {
+        this.validate = validate;
+    }
+
+    /**
+     * Indicates whether or not patterns are compiled when first requested rather than while loading.
+     *
+     * @return True indicates patterns are compiled lazily
+     */
+    public boolean isCompileLazily()
+    {
+        return compileLazily;
+    }
+
+    /**
+     * Sets whether or not patterns are compiled when first requested rather than while loading. Lazy compilation
+     * shortens startup when only some expressions are used, but moves compilation errors and cost to first use.
+     *
+     * @param compileLazily True indicates patterns are compiled lazily
+     */
+    public void setCompileLazily(boolean compileLazily)
+    {
+        this.compileLazily = compileLazily;
+    }
+
+    /**
+     * Indicates whether or not generated regular expressions are simplified before they are compiled.
+     *
+     * @return True indicates expressions are optimized
+     */
+    public boolean isOptimize()
+    {
+        return optimize;
+    }
+
+    /**
+     * Sets whether or not generated regular expressions are simplified before they are compiled. The optimizer drops
+     * redundant non-capturing groups, merges option toggles of adjacent matches, turns operator="or" groups of single
+     * characters into one character class and compiles literal alternatives into a prefix trie, so that the cost of
+     * a large keyword list no longer grows with the number of keywords. Matching results and capture group numbers
+     * are unchanged, but getRegExString() returns the optimized form.
+     *
+     * @param optimize True indicates expressions are optimized
+     */
+    public void setOptimize(boolean optimize)
+    {
+        this.optimize = optimize;
+    }
+
+    /**
+     * Indicates whether or not expressions reject inputs with cheap length and first character checks before running
+     * their pattern.
+     *
+     * @return True indicates prefilters are used
+     */
+    public boolean isPrefilter()
+    {
+        return prefilter;
+    }
+
+    /**
+     * Sets whether or not expressions reject inputs with cheap length and first character checks before running their
+     * pattern. The checks are derived from the document while it is loaded and never reject an input the pattern
+     * would match.
+     *
+     * @param prefilter True indicates prefilters are used
+     */
+    public void setPrefilter(boolean prefilter)
+    {
+        this.prefilter = prefilter;
+    }
+
+    /**
+     * Gets the number of times each expression is run against its examples after loading.
+     *
+     * @return Number of warm-up iterations
+     */
+    public int getWarmUpIterations()
+    {
+        return warmUpIterations;
+    }
+
+    /**
+     * Sets the number of times each expression is run against its examples after loading, so that the JIT compiles
+     * the matching code before the first real input arrives. A few thousand iterations are typically needed. Warm-up
+     * compiles lazily compiled patterns and is skipped for expressions without examples.
+     *
+     * @param warmUpIterations Number of warm-up iterations, 0 to disable warm-up
+     */
+    public void setWarmUpIterations(int warmUpIterations)
+    {
+        this.warmUpIterations = warmUpIterations;
+    }
+
+    /**
+     * Gets the maximum number of compiled variants each expression template caches.
+     *
+     * @return Maximum number of variants per template
+     */
+    public int getTemplateCacheSize()
+    {
+        return templateCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of compiled variants each expression template caches. Once the limit is reached the
+     * least recently used variant is discarded and compiled again if it is requested later.
+     *
+     * @param templateCacheSize Maximum number of variants per template
+     */
+    public void setTemplateCacheSize(int templateCacheSize)
+    {
+        this.templateCacheSize = templateCacheSize;
+    }
+
+    /**
+     * Gets the estimated heap available for compiled patterns.
+     *
+     * @return Budget in bytes (0 indicates every pattern is kept)
+     */
+    public long getPatternBudgetBytes()
+    {
+        return patternBudgetBytes;
+    }
+
+    /**
+     * Sets the estimated heap available for compiled patterns. When a budget is set, the factory keeps only each
+     * expression's regular expression string and flags, and compiled patterns live in a PatternStore that evicts
+     * rarely used patterns and recompiles them on demand.
+     *
+     * @param patternBudgetBytes Budget in bytes (0 keeps every pattern)
+     */
+    public void setPatternBudgetBytes(long patternBudgetBytes)
+    {
+        this.patternBudgetBytes = patternBudgetBytes;
+    }
+
+    /**
+     * Gets the listener notified of load timings and slow matches.
+     *
+     * @return Event listener or null
+     */
+    public ExpressionEventListener getEventListener()
+    {
+        return eventListener;
+    }
+
+    /**
+     * Sets the listener notified of load timings and slow matches.
+     *
+     * @param eventListener Event listener or null
+     */
+    public void setEventListener(ExpressionEventListener eventListener)
+    {
+        this.eventListener = eventListener;
+    }
+
+    /**
+     * Gets the matching time above which the event listener is notified of a slow match.
+     *
+     * @return Threshold in nanoseconds (0 indicates slow matches are not reported)
+     */
+    public long getSlowMatchThresholdNanos()
+    {
+        return slowMatchThresholdNanos;
+    }
+
+    /**
+     * Sets the matching time above which the event listener is notified of a slow match. Every match is timed while a
+     * threshold is set.
+     *
+     * @param slowMatchThresholdNanos Threshold in nanoseconds (0 disables slow match reporting)
+     */
+    public void setSlowMatchThresholdNanos(long slowMatchThresholdNanos)
+    {
+        this.slowMatchThresholdNanos = slowMatchThresholdNanos;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Named sub-expression defined once by a fragment element and inserted wherever a ref element names it. A fragment is
+ * translated once and sets every match option itself, so it matches the same text in every expression that refers to
+ * it, whatever the options of that expression. This lets a FragmentEvaluator search for a fragment once per input on
+ * behalf of all expressions containing it.
+ */
+public class Fragment
+{
+    private String name;
+    private String regExString;
+    private List<CaptureDefinition> captures;
+    private ExpressionShape shape;
+    private volatile Pattern pattern;
+
+    /**
+     * Constructs a new fragment.
+     *
+     * @param name Fragment name
+     * @param regExString Regular expression string, including the option group that sets every match option
+     * @param captures Capture groups declared inside the fragment, numbered from 1 within the fragment
+     * @param shape Shape of the fragment for prefiltering, or null if the factory does not prefilter
+     */
+    Fragment(String name, String regExString, List<CaptureDefinition> captures, ExpressionShape shape)
+    {
+        this.name = name;
+        this.regExString = regExString;
+        this.captures = Collections.unmodifiableList(new ArrayList<CaptureDefinition>(captures));
+        this.shape = shape;
+    }
+
+    /**
+     * Gets the name of this fragment.
+     *
+     * @return Fragment name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Gets the regular expression string inserted for each reference to this fragment.
+     *
+     * @return Regular expression string
+     */
+    public String getRegExString()
+    {
+        return regExString;
+    }
+
+    /**
+     * Gets the capture groups declared inside this fragment.
+     *
+     * @return Captures ordered by group number, counting from 1 within the fragment
+     */
+    public List<CaptureDefinition> getCaptures()
+    {
+        return captures;
+    }
+
+    /**
+     * Gets the shape of this fragment.
+     *
+     * @return Shape or null if the factory does not prefilter
+     */
+    ExpressionShape getShape()
+    {
+        return shape;
+    }
+
+    /**
+     * Gets the pattern matching this fragment on its own, compiling it when first requested.
+     *
+     * @return Regular expression pattern
+     */
+    public Pattern getPattern()
+    {
+        Pattern pattern = this.pattern;
+
+        if (pattern == null)
+        {
+            pattern = PatternPool.compile(regExString, 0);
+            this.pattern = pattern;
+        }
+
+        return pattern;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+/**
+ * Finds the first match of each of a set of expressions in an input, sharing the work of the fragments the expressions
+ * refer to. Each fragment is searched for at most once per input, however many expressions contain it, and the
+ * position of its first match is remembered for the rest of the input's evaluation. An expression that requires a
+ * fragment absent from the input is skipped without running its pattern, and an expression whose matches start with
+ * a fragment is searched from that fragment's first match rather than from the start of the input.
+ * <p>
+ * The evaluator keeps no state between inputs apart from its counters, so it may be shared between threads.
+ */
+public class FragmentEvaluator
+{
+    private static final int UNKNOWN = -2;
+
+    private Expression[] expressions;
+    private Fragment[] fragments;
+    private int[][] requiredFragments;
+    private int[] leadingFragments;
+    private AtomicLong fragmentSearchCount = new AtomicLong();
+    private AtomicLong skippedCount = new AtomicLong();
+
+    /**
+     * Constructs a new evaluator.
+     *
+     * @param expressions Expressions to evaluate, typically loaded by one factory
+     */
+    public FragmentEvaluator(Expression[] expressions)
+    {
+        this.expressions = expressions.clone();
+        this.requiredFragments = new int[expressions.length][];
+        this.leadingFragments = new int[expressions.length];
+
+        List<Fragment> distinct = new ArrayList<Fragment>();
+
+        for (int i = 0; i < expressions.length; i++)
+        {
+            List<Fragment> required = expressions[i].getRequiredFragments();
+            requiredFragments[i] = new int[required.size()];
+
+            for (int j = 0; j < required.size(); j++)
+            {
+                requiredFragments[i][j] = indexOf(distinct, required.get(j));
+            }
+
+            Fragment leading = expressions[i].getLeadingFragment();
+            leadingFragments[i] = leading == null ? -1 : indexOf(distinct, leading);
+        }
+
+        this.fragments = distinct.toArray(new Fragment[distinct.size()]);
+    }
+
+    /**
+     * Finds the first match of each expression in an input.
+     *
+     * @param input Input to search
+     * @return Match of each matching expression, keyed by expression ID in the order given when the evaluator was
+     * constructed
+     */
+    public Map<String, ExpressionMatch> findAll(CharSequence input)
+    {
+        String text = input.toString();
+        int[] positions = new int[fragments.length];
+        Arrays.fill(positions, UNKNOWN);
+
+        Map<String, ExpressionMatch> matches = new LinkedHashMap<String, ExpressionMatch>();
+
+        for (int i = 0; i < expressions.length; i++)
+        {
+            ExpressionMatch match = find(i, text, positions);
+
+            if (match != null)
+            {
+                matches.put(expressions[i].getId(), match);
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Gets the number of fragment searches run, at most one per fragment and input.
+     *
+     * @return Number of fragment searches
+     */
+    public long getFragmentSearchCount()
+    {
+        return fragmentSearchCount.get();
+    }
+
+    /**
+     * Gets the number of times an expression was skipped because a fragment it requires is absent from the input.
+     *
+     * @return Number of skipped evaluations
+     */
+    public long getSkippedCount()
+    {
+        return skippedCount.get();
+    }
+
+    /**
+     * Finds the first match of one expression, consulting and filling the fragment positions of the current input.
+     *
+     * @param expression Index of the expression
+     * @param text Input to search
+     * @param positions Position of the first match of each fragment, -1 for fragments absent from the input and
+     * UNKNOWN for fragments not searched for yet
+     * @return Match result or null if the expression does not match
+     */
+    private ExpressionMatch find(int expression, String text, int[] positions)
+    {
+        for (int fragment : requiredFragments[expression])
+        {
+            if (getPosition(fragment, text, positions) < 0)
+            {
+                skippedCount.incrementAndGet();
+                return null;
+            }
+        }
+
+        int leading = leadingFragments[expression];
+        int from = leading < 0 ? 0 : getPosition(leading, text, positions); //no match can start before it
+
+        return expressions[expression].find(text, from);
+    }
+
+    /**
+     * Gets the position of the first match of a fragment, searching for the fragment on first use.
+     *
+     * @param fragment Index of the fragment
+     * @param text Input to search
+     * @param positions Fragment positions of the current input
+     * @return Start of the fragment's first match or -1 if the fragment is absent from the input
+     */
+    private int getPosition(int fragment, String text, int[] positions)
+    {
+        if (positions[fragment] == UNKNOWN)
+        {
+            Matcher matcher = fragments[fragment].getPattern().matcher(text);
+            positions[fragment] = matcher.find() ? matcher.start() : -1;
+            fragmentSearchCount.incrementAndGet();
+        }
+
+        return positions[fragment];
+    }
+
+    /**
+     * Finds a fragment in a list, adding it if it is not present.
+     *
+     * @param fragments Distinct fragments
+     * @param fragment Fragment to find
+     * @return Index of the fragment
+     */
+    private static int indexOf(List<Fragment> fragments, Fragment fragment)
+    {
+        int index = fragments.indexOf(fragment);
+
+        if (index < 0)
+        {
+            index = fragments.size();
+            fragments.add(fragment);
+        }
+
+        return index;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits input into tokens in a single left-to-right pass, where each token type is an expression. At every position
+ * the token is the longest match of any expression starting there; of equally long matches the one declared first
+ * wins. Only expressions whose prefilter accepts the character at the position are tried, so the cost per position
+ * depends on the number of plausible token types rather than the total number of types.
+ * <p>
+ * A lexer is immutable and may be shared between threads. Each call to tokenize() uses its own matchers, which are
+ * reused for every position of the input.
+ */
+public class Lexer
+{
+    public static final int UNMATCHED = -1;
+
+    private static final int ASCII_SIZE = 128;
+
+    private String[] ids;
+    private Pattern[] patterns;
+    private int[][] asciiCandidates = new int[ASCII_SIZE][];
+    private int[] nonAsciiCandidates;
+
+    /**
+     * Constructs a new lexer.
+     *
+     * @param expressions Token expressions in priority order
+     */
+    public Lexer(Expression... expressions)
+    {
+        ids = new String[expressions.length];
+        patterns = new Pattern[expressions.length];
+
+        for (int i = 0; i < expressions.length; i++)
+        {
+            ids[i] = expressions[i].getId();
+            patterns[i] = expressions[i].getPattern();
+        }
+
+        for (char c = 0; c < ASCII_SIZE; c++)
+        {
+            asciiCandidates[c] = candidates(expressions, c);
+        }
+
+        nonAsciiCandidates = candidates(expressions, (char) ASCII_SIZE);
+    }
+
+    /**
+     * Finds the expressions that can produce a token starting with the given character.
+     *
+     * @param expressions Token expressions in priority order
+     * @param c Character, where any non-ASCII character stands for all of them
+     * @return Indexes of the candidate expressions in priority order
+     */
+    private static int[] candidates(Expression[] expressions, char c)
+    {
+        List<Integer> candidates = new ArrayList<Integer>();
+
+        for (int i = 0; i < expressions.length; i++)
+        {
+            ExpressionPrefilter prefilter = expressions[i].getPrefilter();
+
+            if (prefilter == null || prefilter.isFirstChar(c))
+            {
+                candidates.add(i);
+            }
+        }
+
+        int[] indexes = new int[candidates.size()];
+
+        for (int i = 0; i < indexes.length; i++)
+        {
+            indexes[i] = candidates.get(i);
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Gets the number of token types.
+     *
+     * @return Number of token expressions
+     */
+    public int getTypeCount()
+    {
+        return ids.length;
+    }
+
+    /**
+     * Gets the expression ID of a token type.
+     *
+     * @param type Token type reported to a TokenHandler
+     * @return Expression ID
+     */
+    public String getId(int type)
+    {
+        return ids[type];
+    }
+
+    /**
+     * Splits the input into tokens. Consecutive characters at which no expression matches are reported as a single
+     * token of type UNMATCHED. Empty matches never produce a token.
+     *
+     * @param input Input to tokenize
+     * @param handler Handler receiving the tokens
+     * @return Number of tokens reported, not counting unmatched runs
+     */
+    public int tokenize(CharSequence input, TokenHandler handler)
+    {
+        Matcher[] matchers = new Matcher[patterns.length];
+        int length = input.length();
+        int position = 0;
+        int unmatchedStart = -1;
+        int count = 0;
+
+        while (position < length)
+        {
+            char c = input.charAt(position);
+            int[] candidates = c < ASCII_SIZE ? asciiCandidates[c] : nonAsciiCandidates;
+            int bestType = UNMATCHED;
+            int bestEnd = position;
+
+            for (int type : candidates)
+            {
+                Matcher matcher = matchers[type];
+
+                if (matcher == null)
+                {
+                    matcher = patterns[type].matcher(input);
+                    matcher.useTransparentBounds(true); //lookbehind may see text before the token
+                    matcher.useAnchoringBounds(false); //start and end anchors only match at the input boundaries
+                    matchers[type] = matcher;
+                }
+
+                matcher.region(position, length);
+
+                if (matcher.lookingAt() && matcher.end() > bestEnd)
+                {
+                    bestType = type;
+                    bestEnd = matcher.end();
+                }
+            }
+
+            if (bestType == UNMATCHED)
+            {
+                if (unmatchedStart < 0)
+                {
+                    unmatchedStart = position;
+                }
+
+                position += Character.isHighSurrogate(c) && position + 1 < length &&
+                    Character.isLowSurrogate(input.charAt(position + 1)) ? 2 : 1;
+                continue;
+            }
+
+            if (unmatchedStart >= 0)
+            {
+                handler.token(UNMATCHED, unmatchedStart, position);
+                unmatchedStart = -1;
+            }
+
+            handler.token(bestType, position, bestEnd);
+            position = bestEnd;
+            count++;
+        }
+
+        if (unmatchedStart >= 0)
+        {
+            handler.token(UNMATCHED, unmatchedStart, length);
+        }
+
+        return count;
+    }
+}
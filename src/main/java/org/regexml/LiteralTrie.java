@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Prefix trie built from the literal alternatives of an operator="or" group. The trie is rendered as a factored
+ * regular expression in which every alternative sharing a prefix shares its branch, so the regular expression engine
+ * only follows the branches that agree with the input instead of trying each alternative in turn.
+ * <p>
+ * An alternation in java.util.regex prefers earlier alternatives, so the rendered expression keeps that order. Only
+ * alternatives that start with the same character are merged and, because two of those can never be tried at the
+ * same position in a different relative order, merging them is safe. The exception is a literal that ends where
+ * others continue; if it sits between two alternatives of the same branch, that node falls back to a plain
+ * alternation of its remaining suffixes. Characters are compared exactly, so the trie must not be used where case is
+ * ignored.
+ */
+final class LiteralTrie
+{
+    private final Node root = new Node();
+
+    /**
+     * Adds an alternative. Alternatives must be added in document order.
+     *
+     * @param literal Literal text of the alternative
+     */
+    public void add(String literal)
+    {
+        Node node = root;
+        node.suffixes.add(literal);
+
+        for (int i = 0; i < literal.length();)
+        {
+            int codePoint = literal.codePointAt(i);
+            i += Character.charCount(codePoint);
+
+            Node child = node.children.get(codePoint);
+
+            if (child == null)
+            {
+                child = new Node();
+                node.children.put(codePoint, child);
+            }
+            else if (node.terminal && node.childIndex(codePoint) < node.terminalIndex)
+            {
+                node.ordered = false; //this alternative would move ahead of a shorter one declared before it
+            }
+
+            node = child;
+            node.suffixes.add(literal.substring(i));
+        }
+
+        if (!node.terminal)
+        {
+            node.terminal = true;
+            node.terminalIndex = node.children.size();
+        }
+    }
+
+    /**
+     * Renders the trie as the content of the group, which may contain a top-level alternation.
+     *
+     * @return Regular expression matching the alternatives in their original order of preference
+     */
+    public String toRegEx()
+    {
+        return alternation(root);
+    }
+
+    /**
+     * Renders the alternatives below a node as a sequence without top-level alternation.
+     *
+     * @param node Trie node
+     * @return Regular expression, empty if the node only terminates alternatives
+     */
+    private String sequence(Node node)
+    {
+        if (node.children.isEmpty())
+        {
+            return "";
+        }
+
+        if (node.ordered && !node.terminal && node.children.size() == 1)
+        {
+            Map.Entry<Integer, Node> entry = node.children.entrySet().iterator().next();
+            return quote(entry.getKey()) + sequence(entry.getValue());
+        }
+
+        String characterClass = characterClass(node);
+
+        if (characterClass != null)
+        {
+            return characterClass;
+        }
+
+        String alternation = alternation(node);
+
+        if (!node.ordered || !node.terminal)
+        {
+            return "(?:" + alternation + ")";
+        }
+
+        if (node.terminalIndex == 0 || node.terminalIndex == node.children.size())
+        {
+            String quantifier = node.terminalIndex == 0 ? "??" : "?"; //lazy tries the shorter alternative first
+
+            if (node.children.size() == 1 && RegExSyntax.isSingleAtom(alternation))
+            {
+                return alternation + quantifier;
+            }
+
+            return "(?:" + alternation + ")" + quantifier;
+        }
+
+        return "(?:" + alternation + ")";
+    }
+
+    /**
+     * Renders the alternatives below a node as an alternation.
+     *
+     * @param node Trie node
+     * @return Regular expression that may contain a top-level alternation
+     */
+    private String alternation(Node node)
+    {
+        List<String> branches = new ArrayList<String>();
+
+        if (node.ordered)
+        {
+            for (Map.Entry<Integer, Node> entry : node.children.entrySet())
+            {
+                branches.add(quote(entry.getKey()) + sequence(entry.getValue()));
+            }
+
+            if (node.terminal && node.terminalIndex > 0 && node.terminalIndex < branches.size())
+            {
+                branches.add(node.terminalIndex, ""); //empty alternative keeps the shorter literal's position
+            }
+        }
+        else
+        {
+            for (String suffix : new LinkedHashSet<String>(node.suffixes))
+            {
+                branches.add(RegExSyntax.quoteLiteral(suffix));
+            }
+        }
+
+        StringBuilder regEx = new StringBuilder();
+
+        for (int i = 0; i < branches.size(); i++)
+        {
+            if (i > 0)
+            {
+                regEx.append("|");
+            }
+
+            regEx.append(branches.get(i));
+        }
+
+        return regEx.toString();
+    }
+
+    /**
+     * Renders a node whose alternatives are all single characters as a character class.
+     *
+     * @param node Trie node
+     * @return Character class or null if the node has other alternatives
+     */
+    private String characterClass(Node node)
+    {
+        if (!node.ordered || node.terminal || node.children.size() < 2)
+        {
+            return null;
+        }
+
+        StringBuilder characterClass = new StringBuilder("[");
+
+        for (Map.Entry<Integer, Node> entry : node.children.entrySet())
+        {
+            if (!entry.getValue().children.isEmpty() || Character.isSupplementaryCodePoint(entry.getKey()))
+            {
+                return null;
+            }
+
+            characterClass.append(RegExSyntax.quoteClassCharacter((char) entry.getKey().intValue()));
+        }
+
+        return characterClass.append("]").toString();
+    }
+
+    /**
+     * Escapes a single character.
+     *
+     * @param codePoint Unicode code point
+     * @return Expression matching only the character
+     */
+    private static String quote(int codePoint)
+    {
+        return RegExSyntax.quoteLiteral(new String(Character.toChars(codePoint)));
+    }
+
+    /**
+     * Node of the trie, reached by the characters of a common prefix.
+     */
+    private static final class Node
+    {
+        private final Map<Integer, Node> children = new LinkedHashMap<Integer, Node>();
+        private final List<String> suffixes = new ArrayList<String>();
+        private boolean terminal;
+        private int terminalIndex;
+        private boolean ordered = true;
+
+        /**
+         * Gets the position of a child in first-seen order.
+         *
+         * @param codePoint Character leading to the child
+         * @return Position of the child
+         */
+        private int childIndex(int codePoint)
+        {
+            int index = 0;
+
+            for (Integer key : children.keySet())
+            {
+                if (key == codePoint)
+                {
+                    return index;
+                }
+
+                index++;
+            }
+
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded cache of match results keyed by input string. The cache is split into independently locked segments
+ * so that concurrent lookups of different inputs rarely contend. Each segment evicts its least recently used entries
+ * once it exceeds its share of the entry limit or of the memory limit.
+ */
+public class MatchCache
+{
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private Segment[] segments;
+    private int maxEntries;
+    private long maxBytes;
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong missCount = new AtomicLong();
+    private AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Constructs a new match cache bounded by entry count.
+     *
+     * @param maxEntries Maximum number of cached inputs
+     */
+    public MatchCache(int maxEntries)
+    {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new match cache bounded by entry count and estimated memory.
+     *
+     * @param maxEntries Maximum number of cached inputs
+     * @param maxBytes Maximum estimated number of bytes retained by cached inputs and results
+     */
+    public MatchCache(int maxEntries, long maxBytes)
+    {
+        if (maxEntries < 1 || maxBytes < 1)
+        {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        int segmentCount = Math.min(DEFAULT_SEGMENTS, Integer.highestOneBit(maxEntries));
+        segments = new Segment[segmentCount];
+
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment(maxEntries / segmentCount, maxBytes / segmentCount);
+        }
+    }
+
+    /**
+     * Looks up the cached result for the given input.
+     *
+     * @param input Input string
+     * @return Cached entry or null if the input is not cached
+     */
+    Entry get(String input)
+    {
+        Entry entry = segmentFor(input).get(input);
+
+        if (entry == null)
+        {
+            missCount.incrementAndGet();
+        }
+        else
+        {
+            hitCount.incrementAndGet();
+        }
+
+        return entry;
+    }
+
+    /**
+     * Stores the result for the given input.
+     *
+     * @param input Input string
+     * @param match Match result or null if the input did not match
+     */
+    void put(String input, ExpressionMatch match)
+    {
+        segmentFor(input).put(input, new Entry(match, estimateSize(input, match)));
+    }
+
+    /**
+     * Removes all cached results. Counters are not reset.
+     */
+    public void clear()
+    {
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Gets the number of inputs currently cached.
+     *
+     * @return Number of cached inputs
+     */
+    public int size()
+    {
+        int size = 0;
+
+        for (Segment segment : segments)
+        {
+            size += segment.size();
+        }
+
+        return size;
+    }
+
+    /**
+     * Gets the maximum number of cached inputs.
+     *
+     * @return Maximum number of cached inputs
+     */
+    public int getMaxEntries()
+    {
+        return maxEntries;
+    }
+
+    /**
+     * Gets the maximum estimated number of bytes retained by the cache.
+     *
+     * @return Maximum estimated size in bytes
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Gets the number of lookups answered from the cache.
+     *
+     * @return Hit count
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of lookups that were not answered from the cache.
+     *
+     * @return Miss count
+     */
+    public long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of entries evicted to stay within the cache limits.
+     *
+     * @return Eviction count
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    /**
+     * Selects the segment responsible for the given input.
+     *
+     * @param input Input string
+     * @return Cache segment
+     */
+    private Segment segmentFor(String input)
+    {
+        int hash = input.hashCode();
+        hash ^= (hash >>> 16);
+
+        return segments[hash & (segments.length - 1)];
+    }
+
+    /**
+     * Estimates the number of bytes retained by a cache entry.
+     *
+     * @param input Input string
+     * @param match Match result or null
+     * @return Estimated size in bytes
+     */
+    private static int estimateSize(String input, ExpressionMatch match)
+    {
+        int size = 64 + 40 + input.length() * 2; //map entry, cache entry and string
+
+        if (match != null)
+        {
+            size += match.estimateSize();
+        }
+
+        return size;
+    }
+
+    /**
+     * Cached result for a single input.
+     */
+    static class Entry
+    {
+        private ExpressionMatch match;
+        private int size;
+
+        /**
+         * Constructs a new cache entry.
+         *
+         * @param match Match result or null if the input did not match
+         * @param size Estimated size of the entry in bytes
+         */
+        Entry(ExpressionMatch match, int size)
+        {
+            this.match = match;
+            this.size = size;
+        }
+
+        /**
+         * Gets the cached match result.
+         *
+         * @return Match result or null if the input did not match
+         */
+        ExpressionMatch getMatch()
+        {
+            return match;
+        }
+    }
+
+    /**
+     * Independently locked portion of the cache holding entries in least recently used order.
+     */
+    private class Segment
+    {
+        private LinkedHashMap<String, Entry> map = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        private int maxEntries;
+        private long maxBytes;
+        private long bytes;
+
+        /**
+         * Constructs a new cache segment.
+         *
+         * @param maxEntries Maximum number of entries in this segment
+         * @param maxBytes Maximum estimated size of this segment in bytes
+         */
+        Segment(int maxEntries, long maxBytes)
+        {
+            this.maxEntries = Math.max(1, maxEntries);
+            this.maxBytes = Math.max(1, maxBytes);
+        }
+
+        /**
+         * Looks up the entry for the given input and marks it as most recently used.
+         *
+         * @param input Input string
+         * @return Cached entry or null
+         */
+        synchronized Entry get(String input)
+        {
+            return map.get(input);
+        }
+
+        /**
+         * Stores an entry and evicts least recently used entries until the segment is within its limits.
+         *
+         * @param input Input string
+         * @param entry Cache entry
+         */
+        synchronized void put(String input, Entry entry)
+        {
+            Entry previous = map.put(input, entry);
+
+            if (previous != null)
+            {
+                bytes -= previous.size;
+            }
+
+            bytes += entry.size;
+
+            for (Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+                 it.hasNext() && (map.size() > maxEntries || bytes > maxBytes);)
+            {
+                Entry eldest = it.next().getValue();
+
+                if (eldest == entry)
+                {
+                    break; //never evict the entry just added, even if it alone exceeds the memory limit
+                }
+
+                it.remove();
+                bytes -= eldest.size;
+                evictionCount.incrementAndGet();
+            }
+        }
+
+        /**
+         * Removes all entries from this segment.
+         */
+        synchronized void clear()
+        {
+            map.clear();
+            bytes = 0;
+        }
+
+        /**
+         * Gets the number of entries in this segment.
+         *
+         * @return Number of entries
+         */
+        synchronized int size()
+        {
+            return map.size();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Process-wide pool of compiled patterns keyed by regular expression string and flags. Expressions that generate the
+ * same regular expression, whether in the same factory or in different ones, share a single immutable Pattern. The
+ * pool only holds weak references, so a pattern is discarded once no expression uses it.
+ */
+public final class PatternPool
+{
+    private static final ConcurrentMap<Key, PatternReference> pool = new ConcurrentHashMap<Key, PatternReference>();
+    private static final ReferenceQueue<Pattern> queue = new ReferenceQueue<Pattern>();
+    private static final AtomicLong hitCount = new AtomicLong();
+    private static final AtomicLong missCount = new AtomicLong();
+    private static final AtomicLong savedBytes = new AtomicLong();
+
+    /**
+     * Prevents instantiation.
+     */
+    private PatternPool()
+    {
+    }
+
+    /**
+     * Returns a pooled pattern for the given regular expression and flags, compiling it if necessary.
+     *
+     * @param regEx Regular expression string
+     * @param flags Match flags
+     * @return Compiled pattern
+     */
+    public static Pattern compile(String regEx, int flags)
+    {
+        expungeStaleEntries();
+
+        Key key = new Key(regEx, flags);
+        Pattern compiled = null;
+
+        while (true)
+        {
+            PatternReference reference = pool.get(key);
+            Pattern pattern = reference == null ? null : reference.get();
+
+            if (pattern != null)
+            {
+                if (compiled == null)
+                {
+                    hitCount.incrementAndGet();
+
+                    if (reference.markShared())
+                    {
+                        savedBytes.addAndGet(estimateSize(regEx)); //counted once, while the pattern stays pooled
+                    }
+                }
+
+                return pattern; //if another thread pooled the same pattern first, its instance wins
+            }
+
+            if (compiled == null)
+            {
+                missCount.incrementAndGet();
+                compiled = Pattern.compile(regEx, flags);
+            }
+
+            PatternReference newReference = new PatternReference(key, compiled);
+
+            if (reference == null ? pool.putIfAbsent(key, newReference) == null :
+                pool.replace(key, reference, newReference))
+            {
+                return compiled;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of requests answered with an already compiled pattern.
+     *
+     * @return Hit count
+     */
+    public static long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of requests that compiled a new pattern.
+     *
+     * @return Miss count
+     */
+    public static long getMissCount()
+    {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the estimated number of bytes of heap saved by sharing patterns: the size of each pooled pattern that has
+     * been requested more than once, counted once per pattern and dropped when the pattern is reclaimed.
+     *
+     * @return Estimated bytes saved
+     */
+    public static long getSavedBytes()
+    {
+        return savedBytes.get();
+    }
+
+    /**
+     * Gets the number of distinct patterns currently pooled, including ones not yet reclaimed by the garbage collector.
+     *
+     * @return Number of pooled patterns
+     */
+    public static int size()
+    {
+        expungeStaleEntries();
+
+        return pool.size();
+    }
+
+    /**
+     * Estimates the heap retained by a compiled pattern. The estimate is a coarse linear function of the regular
+     * expression length, since java.util.regex allocates roughly one node per construct.
+     *
+     * @param regEx Regular expression string
+     * @return Estimated size in bytes
+     */
+    public static long estimateSize(String regEx)
+    {
+        return 160 + 48L * regEx.length();
+    }
+
+    /**
+     * Removes entries whose patterns have been reclaimed.
+     */
+    private static void expungeStaleEntries()
+    {
+        Reference<? extends Pattern> reference;
+
+        while ((reference = queue.poll()) != null)
+        {
+            PatternReference patternReference = (PatternReference) reference;
+            pool.remove(patternReference.key, reference);
+
+            if (patternReference.isShared())
+            {
+                savedBytes.addAndGet(-estimateSize(patternReference.key.regEx));
+            }
+        }
+    }
+
+    /**
+     * Pool key combining a regular expression string and its flags.
+     */
+    private static class Key
+    {
+        private String regEx;
+        private int flags;
+
+        /**
+         * Constructs a new key.
+         *
+         * @param regEx Regular expression string
+         * @param flags Match flags
+         */
+        Key(String regEx, int flags)
+        {
+            this.regEx = regEx;
+            this.flags = flags;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+
+            Key other = (Key) o;
+
+            return flags == other.flags && regEx.equals(other.regEx);
+        }
+
+        public int hashCode()
+        {
+            return regEx.hashCode() * 31 + flags;
+        }
+    }
+
+    /**
+     * Weak reference to a pooled pattern that remembers its key so the entry can be removed once it is reclaimed.
+     */
+    private static class PatternReference extends WeakReference<Pattern>
+    {
+        private Key key;
+        private AtomicBoolean shared = new AtomicBoolean();
+
+        /**
+         * Constructs a new pattern reference.
+         *
+         * @param key Pool key
+         * @param pattern Compiled pattern
+         */
+        PatternReference(Key key, Pattern pattern)
+        {
+            super(pattern, queue);
+            this.key = key;
+        }
+
+        /**
+         * Records that the pattern has been handed out more than once.
+         *
+         * @return True if this is the first time the pattern is shared
+         */
+        boolean markShared()
+        {
+            return shared.compareAndSet(false, true);
+        }
+
+        /**
+         * Indicates whether or not the pattern has been handed out more than once.
+         *
+         * @return True if the pattern is shared
+         */
+        boolean isShared()
+        {
+            return shared.get();
+        }
+    }
+}
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+
+/**
+ * Memory-bounded store of compiled patterns for very large rule sets. The store keeps every expression's source (its
+ * regular expression string and flags) in dense arrays, but keeps compiled patterns only while their estimated total
+ * size fits within a heap budget. Patterns that are evicted are recompiled on their next use.
+ * <p>
+ * Eviction is frequency aware: each expression has a use counter that is halved periodically so that old popularity
+ * fades. When the budget is full, the least frequently used of a random sample of resident patterns becomes the
+ * eviction candidate, and a newly compiled pattern is only admitted if it has been used more often than that candidate.
+ * This keeps hot expressions compiled even when a scan touches many cold ones.
+ */
+public class PatternStore
+{
+    private static final int SAMPLE_SIZE = 8;
+    private static final int MAX_FREQUENCY = 15;
+
+    private long budgetBytes;
+    private long usedBytes;
+    private int size;
+    private String[] regExStrings = new String[16];
+    private int[] flags = new int[16];
+    private volatile AtomicReferenceArray<Pattern> patterns = new AtomicReferenceArray<Pattern>(16);
+    private volatile AtomicIntegerArray frequencies = new AtomicIntegerArray(16);
+    private int[] residents = new int[16];
+    private int[] residentIndex = new int[16];
+    private int residentCount;
+    private AtomicInteger accessesUntilAging = new AtomicInteger();
+    private Random random = new Random();
+    private AtomicLong hitCount = new AtomicLong();
+    private AtomicLong compileCount = new AtomicLong();
+    private AtomicLong evictionCount = new AtomicLong();
+    private AtomicLong rejectionCount = new AtomicLong();
+
+    /**
+     * Constructs a new pattern store.
+     *
+     * @param budgetBytes Estimated heap available for compiled patterns
+     */
+    public PatternStore(long budgetBytes)
+    {
+        if (budgetBytes < 1)
+        {
+            throw new IllegalArgumentException("Budget must be positive: " + budgetBytes);
+        }
+
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Adds the source of an expression to the store.
+     *
+     * @param regExString Regular expression string
+     * @param flags Match flags
+     * @return Slot identifying the expression within this store
+     */
+    synchronized int add(String regExString, int flags)
+    {
+        if (size == regExStrings.length)
+        {
+            grow();
+        }
+
+        regExStrings[size] = regExString;
+        this.flags[size] = flags;
+        residentIndex[size] = -1;
+        accessesUntilAging.set(size * 10 + 10);
+
+        return size++;
+    }
+
+    /**
+     * Gets the compiled pattern for an expression, compiling it if it is not resident.
+     *
+     * @param slot Slot returned when the expression was added
+     * @return Compiled pattern
+     */
+    Pattern get(int slot)
+    {
+        recordAccess(slot);
+
+        Pattern pattern = patterns.get(slot);
+
+        if (pattern != null)
+        {
+            hitCount.incrementAndGet();
+            return pattern;
+        }
+
+        String regExString;
+        int patternFlags;
+
+        synchronized (this)
+        {
+            regExString = regExStrings[slot];
+            patternFlags = flags[slot];
+        }
+
+        compileCount.incrementAndGet();
+        pattern = PatternPool.compile(regExString, patternFlags);
+        admit(slot, pattern);
+
+        return pattern;
+    }
+
+    /**
+     * Gets the estimated heap available for compiled patterns.
+     *
+     * @return Budget in bytes
+     */
+    public long getBudgetBytes()
+    {
+        return budgetBytes;
+    }
+
+    /**
+     * Gets the estimated heap used by resident compiled patterns.
+     *
+     * @return Used bytes
+     */
+    public synchronized long getUsedBytes()
+    {
+        return usedBytes;
+    }
+
+    /**
+     * Gets the number of expressions in the store.
+     *
+     * @return Number of expressions
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    /**
+     * Gets the number of expressions whose patterns are currently compiled and resident.
+     *
+     * @return Number of resident patterns
+     */
+    public synchronized int getResidentCount()
+    {
+        return residentCount;
+    }
+
+    /**
+     * Gets the number of requests answered with a resident pattern.
+     *
+     * @return Hit count
+     */
+    public long getHitCount()
+    {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of times a pattern was compiled because it was not resident, including first compilations.
+     *
+     * @return Compile count
+     */
+    public long getCompileCount()
+    {
+        return compileCount.get();
+    }
+
+    /**
+     * Gets the number of resident patterns evicted to stay within the budget.
+     *
+     * @return Eviction count
+     */
+    public long getEvictionCount()
+    {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gets the number of compiled patterns that were not retained because resident patterns were used more often.
+     *
+     * @return Rejection count
+     */
+    public long getRejectionCount()
+    {
+        return rejectionCount.get();
+    }
+
+    /**
+     * Increments the use counter of an expression and periodically halves all counters.
+     *
+     * @param slot Expression slot
+     */
+    private void recordAccess(int slot)
+    {
+        AtomicIntegerArray frequencies = this.frequencies;
+        int frequency = frequencies.get(slot);
+
+        if (frequency < MAX_FREQUENCY)
+        {
+            frequencies.compareAndSet(slot, frequency, frequency + 1); //losing a race only loses an approximate count
+        }
+
+        if (accessesUntilAging.decrementAndGet() == 0)
+        {
+            for (int i = 0; i < frequencies.length(); i++)
+            {
+                frequencies.set(i, frequencies.get(i) >> 1);
+            }
+
+            accessesUntilAging.set(frequencies.length() * 10);
+        }
+    }
+
+    /**
+     * Retains a newly compiled pattern if it fits in the budget, evicting less frequently used patterns as needed.
+     *
+     * @param slot Expression slot
+     * @param pattern Compiled pattern
+     */
+    private synchronized void admit(int slot, Pattern pattern)
+    {
+        if (residentIndex[slot] >= 0)
+        {
+            return; //another thread compiled and admitted the same pattern
+        }
+
+        long patternBytes = PatternPool.estimateSize(regExStrings[slot]);
+
+        if (patternBytes > budgetBytes)
+        {
+            rejectionCount.incrementAndGet();
+            return;
+        }
+
+        while (usedBytes + patternBytes > budgetBytes)
+        {
+            int victim = sampleVictim();
+
+            if (frequencies.get(victim) > frequencies.get(slot))
+            {
+                rejectionCount.incrementAndGet();
+                return;
+            }
+
+            evict(victim);
+        }
+
+        patterns.set(slot, pattern);
+        usedBytes += patternBytes;
+        residentIndex[slot] = residentCount;
+        residents[residentCount++] = slot;
+    }
+
+    /**
+     * Selects the least frequently used pattern among a random sample of resident patterns.
+     *
+     * @return Slot of eviction candidate
+     */
+    private int sampleVictim()
+    {
+        int victim = residents[random.nextInt(residentCount)];
+
+        for (int i = 1; i < SAMPLE_SIZE && i < residentCount; i++)
+        {
+            int candidate = residents[random.nextInt(residentCount)];
+
+            if (frequencies.get(candidate) < frequencies.get(victim))
+            {
+                victim = candidate;
+            }
+        }
+
+        return victim;
+    }
+
+    /**
+     * Discards a resident pattern.
+     *
+     * @param slot Expression slot
+     */
+    private void evict(int slot)
+    {
+        int index = residentIndex[slot];
+        int last = residents[--residentCount];
+
+        residents[index] = last;
+        residentIndex[last] = index;
+        residentIndex[slot] = -1;
+
+        patterns.set(slot, null);
+        usedBytes -= PatternPool.estimateSize(regExStrings[slot]);
+        evictionCount.incrementAndGet();
+    }
+
+    /**
+     * Doubles the capacity of the slot arrays.
+     */
+    private void grow()
+    {
+        int capacity = regExStrings.length * 2;
+        String[] newRegExStrings = new String[capacity];
+        int[] newFlags = new int[capacity];
+        int[] newResidents = new int[capacity];
+        int[] newResidentIndex = new int[capacity];
+        AtomicReferenceArray<Pattern> newPatterns = new AtomicReferenceArray<Pattern>(capacity);
+        AtomicIntegerArray newFrequencies = new AtomicIntegerArray(capacity);
+
+        System.arraycopy(regExStrings, 0, newRegExStrings, 0, size);
+        System.arraycopy(flags, 0, newFlags, 0, size);
+        System.arraycopy(residents, 0, newResidents, 0, residentCount);
+        System.arraycopy(residentIndex, 0, newResidentIndex, 0, size);
+
+        for (int i = 0; i < size; i++)
+        {
+            newPatterns.set(i, patterns.get(i));
+            newFrequencies.set(i, frequencies.get(i));
+        }
+
+        regExStrings = newRegExStrings;
+        flags = newFlags;
+        residents = newResidents;
+        residentIndex = newResidentIndex;
+        patterns = newPatterns;
+        frequencies = newFrequencies;
+    }
+}
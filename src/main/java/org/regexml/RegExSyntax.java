@@ -0,0 +1,391 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Helper methods for working with the regular expression text found in equals and except attributes.
+ */
+public final class RegExSyntax
+{
+    private static final Pattern AUTO_ESCAPE_PATTERN = Pattern.compile("[\\$\\(\\)\\*\\+\\?\\^\\{\\|]");
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    /**
+     * Prevents instantiation.
+     */
+    private RegExSyntax()
+    {
+    }
+
+    /**
+     * Escapes the following characters: $()*+?^{|
+     *
+     * @param text Text containing characters to escape
+     * @return Escaped text
+     */
+    public static String escape(String text)
+    {
+        return AUTO_ESCAPE_PATTERN.matcher(text).replaceAll("\\\\$0");
+    }
+
+    /**
+     * Indicates whether or not the given expression represents a character class.
+     *
+     * @param expression Expression to evaluate
+     * @return True if expression is a character class
+     */
+    public static boolean isCharacterClass(String expression)
+    {
+        return (expression.startsWith("[") && expression.endsWith("]")) || expression.equals(".") ||
+            expression.equalsIgnoreCase("\\d") || expression.equalsIgnoreCase("\\s") ||
+            expression.equalsIgnoreCase("\\w") || expression.equalsIgnoreCase("\\b");
+    }
+
+    /**
+     * Decodes an expression that matches only a fixed string.
+     *
+     * @param expression Expression to decode
+     * @return Literal text matched by the expression or null if the expression contains unescaped metacharacters or
+     * escape sequences other than escaped punctuation
+     */
+    public static String literalValue(String expression)
+    {
+        StringBuilder literal = new StringBuilder(expression.length());
+
+        for (int i = 0; i < expression.length(); i++)
+        {
+            char c = expression.charAt(i);
+
+            if (c == '\\')
+            {
+                if (++i == expression.length() || Character.isLetterOrDigit(expression.charAt(i)))
+                {
+                    return null; //trailing backslash or a construct such as \d, \Q or a back reference
+                }
+
+                literal.append(expression.charAt(i));
+            }
+            else if (META_CHARACTERS.indexOf(c) >= 0)
+            {
+                return null;
+            }
+            else
+            {
+                literal.append(c);
+            }
+        }
+
+        return literal.toString();
+    }
+
+    /**
+     * Escapes a literal so that it matches only itself.
+     *
+     * @param literal Literal text
+     * @return Expression matching the literal
+     */
+    public static String quoteLiteral(String literal)
+    {
+        StringBuilder expression = new StringBuilder(literal.length() + 8);
+
+        for (int i = 0; i < literal.length(); i++)
+        {
+            char c = literal.charAt(i);
+
+            if (META_CHARACTERS.indexOf(c) >= 0)
+            {
+                expression.append('\\');
+            }
+
+            expression.append(c);
+        }
+
+        return expression.toString();
+    }
+
+    /**
+     * Escapes a character for use inside a character class.
+     *
+     * @param c Character
+     * @return Class member matching only the character
+     */
+    public static String quoteClassCharacter(char c)
+    {
+        if (Character.isLetterOrDigit(c) || c > 127)
+        {
+            return String.valueOf(c);
+        }
+
+        return "\\" + c;
+    }
+
+    /**
+     * Indicates whether or not an expression is a single atom that a quantifier can follow without grouping: a single
+     * character, an escape sequence or a character class.
+     *
+     * @param expression Expression to evaluate
+     * @return True if the expression is a single atom
+     */
+    public static boolean isSingleAtom(String expression)
+    {
+        if (expression.length() == 1)
+        {
+            return META_CHARACTERS.indexOf(expression.charAt(0)) < 0 || expression.equals(".");
+        }
+
+        if (expression.length() == 2 && expression.charAt(0) == '\\')
+        {
+            return true;
+        }
+
+        return expression.startsWith("[") && classEnd(expression, 0) == expression.length() - 1;
+    }
+
+    /**
+     * Indicates whether or not an expression contains an alternation operator outside of any group or class.
+     *
+     * @param expression Expression to evaluate
+     * @return True if the expression has a top level alternation
+     */
+    public static boolean hasTopLevelAlternation(String expression)
+    {
+        int depth = 0;
+
+        for (int i = 0; i < expression.length(); i++)
+        {
+            char c = expression.charAt(i);
+
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == '[')
+            {
+                i = classEnd(expression, i);
+
+                if (i < 0)
+                {
+                    return true; //unbalanced, assume the worst
+                }
+            }
+            else if (c == '(')
+            {
+                depth++;
+            }
+            else if (c == ')')
+            {
+                depth--;
+            }
+            else if (c == '|' && depth == 0)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Splits an expression at the alternation operators outside of any group or class.
+     *
+     * @param expression Expression to split
+     * @return Alternatives in order, or the expression itself if it has no top level alternation
+     */
+    public static List<String> splitTopLevelAlternatives(String expression)
+    {
+        List<String> alternatives = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+
+        for (int i = 0; i < expression.length(); i++)
+        {
+            char c = expression.charAt(i);
+
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == '[')
+            {
+                i = classEnd(expression, i);
+
+                if (i < 0)
+                {
+                    break; //unbalanced, leave the rest as one alternative
+                }
+            }
+            else if (c == '(')
+            {
+                depth++;
+            }
+            else if (c == ')')
+            {
+                depth--;
+            }
+            else if (c == '|' && depth == 0)
+            {
+                alternatives.add(expression.substring(start, i));
+                start = i + 1;
+            }
+        }
+
+        alternatives.add(expression.substring(start));
+
+        return alternatives;
+    }
+
+    /**
+     * Indicates whether or not an expression contains an inline flag toggle such as (?i) or (?-s), whose effect lasts
+     * until the end of the enclosing group.
+     *
+     * @param expression Expression to evaluate
+     * @return True if the expression contains a flag toggle
+     */
+    public static boolean hasFlagToggle(String expression)
+    {
+        for (int i = 0; i < expression.length(); i++)
+        {
+            char c = expression.charAt(i);
+
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == '[')
+            {
+                i = classEnd(expression, i);
+
+                if (i < 0)
+                {
+                    return true; //unbalanced, assume the worst
+                }
+            }
+            else if (c == '(' && expression.startsWith("?", i + 1))
+            {
+                int j = i + 2;
+
+                while (j < expression.length() && "idmsuxU-".indexOf(expression.charAt(j)) >= 0)
+                {
+                    j++;
+                }
+
+                if (j > i + 2 && j < expression.length() && expression.charAt(j) == ')')
+                {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Counts the capturing groups opened in an expression, including named groups.
+     *
+     * @param expression Expression to evaluate
+     * @return Number of capturing groups
+     */
+    public static int countCapturingGroups(CharSequence expression)
+    {
+        String text = expression.toString();
+        int count = 0;
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = text.charAt(i);
+
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == '[')
+            {
+                i = classEnd(text, i);
+
+                if (i < 0)
+                {
+                    break;
+                }
+            }
+            else if (c == '(')
+            {
+                if (!text.startsWith("?", i + 1))
+                {
+                    count++;
+                }
+                else if (text.startsWith("?<", i + 1) && i + 3 < text.length() &&
+                    Character.isLetter(text.charAt(i + 3)))
+                {
+                    count++; //named group, as opposed to a lookbehind
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Finds the closing bracket of a character class, taking nested classes and escapes into account.
+     *
+     * @param expression Expression containing the class
+     * @param start Index of the opening bracket
+     * @return Index of the closing bracket or -1 if the class is not closed
+     */
+    private static int classEnd(String expression, int start)
+    {
+        int depth = 0;
+
+        for (int i = start; i < expression.length(); i++)
+        {
+            char c = expression.charAt(i);
+
+            if (c == '\\')
+            {
+                i++;
+            }
+            else if (c == '[')
+            {
+                depth++;
+
+                if (expression.startsWith("^", i + 1))
+                {
+                    i++;
+                }
+
+                if (expression.startsWith("]", i + 1))
+                {
+                    i++; //a leading ] is a literal
+                }
+            }
+            else if (c == ']' && --depth == 0)
+            {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
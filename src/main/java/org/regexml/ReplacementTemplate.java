@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.MatchResult;
+
+/**
+ * Parsed replacement text used by the replace and redact operations of an Expression. A template refers to the
+ * expression's capture groups, numbered in document order of the capture="true" elements, as $n or ${n}; group 0 is
+ * the whole match and a backslash quotes the next character. Captured text is copied straight from the input to the
+ * output without creating strings. Templates are immutable and may be shared between threads.
+ */
+public final class ReplacementTemplate
+{
+    private static final int LITERAL = -1;
+
+    private String[] literals;
+    private int[] groups;
+    private char mask;
+    private boolean masking;
+
+    /**
+     * Constructs a new template from its parts.
+     *
+     * @param literals Literal text of each part, or null for group references
+     * @param groups Group number of each part, or LITERAL for literal text
+     */
+    private ReplacementTemplate(String[] literals, int[] groups)
+    {
+        this.literals = literals;
+        this.groups = groups;
+    }
+
+    /**
+     * Parses replacement text.
+     *
+     * @param template Replacement text containing $n or ${n} group references
+     * @return Parsed template
+     * @throws IllegalArgumentException Indicates a malformed group reference or a trailing backslash
+     */
+    public static ReplacementTemplate parse(String template) throws IllegalArgumentException
+    {
+        List<String> literals = new ArrayList<String>();
+        List<Integer> groups = new ArrayList<Integer>();
+        StringBuilder literal = new StringBuilder();
+
+        for (int i = 0; i < template.length(); i++)
+        {
+            char c = template.charAt(i);
+
+            if (c == '\\')
+            {
+                if (++i == template.length())
+                {
+                    throw new IllegalArgumentException("Trailing backslash in replacement: " + template);
+                }
+
+                literal.append(template.charAt(i));
+            }
+            else if (c == '$')
+            {
+                int group;
+
+                if (template.startsWith("{", i + 1))
+                {
+                    int close = template.indexOf('}', i + 2);
+
+                    if (close < 0)
+                    {
+                        throw new IllegalArgumentException("Unclosed group reference in replacement: " + template);
+                    }
+
+                    group = parseGroup(template, template.substring(i + 2, close));
+                    i = close;
+                }
+                else if (i + 1 < template.length())
+                {
+                    group = parseGroup(template, template.substring(i + 1, i + 2));
+                    i++;
+                }
+                else
+                {
+                    throw new IllegalArgumentException("Missing group number in replacement: " + template);
+                }
+
+                if (literal.length() > 0)
+                {
+                    literals.add(literal.toString());
+                    groups.add(LITERAL);
+                    literal.setLength(0);
+                }
+
+                literals.add(null);
+                groups.add(group);
+            }
+            else
+            {
+                literal.append(c);
+            }
+        }
+
+        if (literal.length() > 0)
+        {
+            literals.add(literal.toString());
+            groups.add(LITERAL);
+        }
+
+        int[] groupArray = new int[groups.size()];
+
+        for (int i = 0; i < groupArray.length; i++)
+        {
+            groupArray[i] = groups.get(i);
+        }
+
+        return new ReplacementTemplate(literals.toArray(new String[literals.size()]), groupArray);
+    }
+
+    /**
+     * Parses the group number of a group reference.
+     *
+     * @param template Replacement text, for error messages
+     * @param number Text of the group number
+     * @return Group number
+     * @throws IllegalArgumentException Indicates that the text is not a group number
+     */
+    private static int parseGroup(String template, String number) throws IllegalArgumentException
+    {
+        for (int i = 0; i < number.length(); i++)
+        {
+            if (!Character.isDigit(number.charAt(i)))
+            {
+                throw new IllegalArgumentException("Invalid group reference '" + number + "' in replacement: " +
+                    template);
+            }
+        }
+
+        if (number.length() == 0)
+        {
+            throw new IllegalArgumentException("Missing group number in replacement: " + template);
+        }
+
+        return Integer.parseInt(number);
+    }
+
+    /**
+     * Creates a template that replaces every character of a match with a mask character, keeping the length of the
+     * input.
+     *
+     * @param mask Mask character
+     * @return Masking template
+     */
+    public static ReplacementTemplate mask(char mask)
+    {
+        ReplacementTemplate template = new ReplacementTemplate(new String[0], new int[0]);
+        template.mask = mask;
+        template.masking = true;
+
+        return template;
+    }
+
+    /**
+     * Gets the highest group number referred to by this template.
+     *
+     * @return Highest group number or 0 if the template only refers to the whole match
+     */
+    public int getMaxGroup()
+    {
+        int max = 0;
+
+        for (int group : groups)
+        {
+            max = Math.max(max, group);
+        }
+
+        return max;
+    }
+
+    /**
+     * Writes the replacement for a match.
+     *
+     * @param output Destination of the replacement
+     * @param input Input that was matched
+     * @param match Match being replaced
+     * @throws IOException Indicates that the output could not be written
+     */
+    public void appendTo(Appendable output, CharSequence input, MatchResult match) throws IOException
+    {
+        if (masking)
+        {
+            for (int i = match.start(); i < match.end(); i++)
+            {
+                output.append(mask);
+            }
+
+            return;
+        }
+
+        for (int i = 0; i < groups.length; i++)
+        {
+            if (groups[i] == LITERAL)
+            {
+                output.append(literals[i]);
+            }
+            else if (match.start(groups[i]) >= 0) //groups that did not participate in the match are left out
+            {
+                output.append(input, match.start(groups[i]), match.end(groups[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,708 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.RegExSyntax;
+import org.regexml.resource.FileSystemResource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Stress tests expressions for catastrophic backtracking. For every repeated element (max greater than one) in an
+ * expression's XML tree, the analyzer builds inputs that reach the element, repeat a sample of it and end with a
+ * near-miss character, then measures how matching time grows as the number of repetitions doubles. Nested quantifiers
+ * and overlapping operator="or" alternatives show up as polynomial or exponential growth.
+ */
+public class BacktrackingAnalyzer
+{
+    private static final String ELEMENT_EXPRESSION = "expression";
+    private static final String ELEMENT_GROUP = "group";
+    private static final String ELEMENT_MATCH = "match";
+    private static final String ELEMENT_FRAGMENT = "fragment";
+    private static final String ELEMENT_REF = "ref";
+    private static final String SAMPLE_CHARACTERS = "a0Az_-.:/@ \t!#%&=,;~'\"<>[]\\^$*+?(){}|\n";
+    private static final String[] SUFFIXES = {"!", "\u0000", " ", "\n", "a", "0"};
+    private static final int[] PUMP_COUNTS = {16, 32, 64, 128, 256, 512, 1024, 2048};
+    private static final int SCREENING_PUMPS = 64;
+    private static final int MEASUREMENT_ROUNDS = 3;
+    private static final double POLYNOMIAL_EXPONENT = 1.5;
+    private static final long TIMEOUT = BacktrackingReport.TIMEOUT;
+    private static final long STACK_OVERFLOW = BacktrackingReport.STACK_OVERFLOW;
+
+    private long budgetNanos;
+
+    /**
+     * Constructs an analyzer that allows each measurement one second.
+     */
+    public BacktrackingAnalyzer()
+    {
+        this(1000000000L);
+    }
+
+    /**
+     * Constructs an analyzer.
+     *
+     * @param budgetNanos Time allowed for a single match before it is abandoned as exponential
+     */
+    public BacktrackingAnalyzer(long budgetNanos)
+    {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Analyzes every expression in a factory. Templated expressions are skipped, since their patterns are not complete
+     * until parameter values are substituted.
+     *
+     * @param expressionFactory Factory created from the expressions file
+     * @param root Root element of the same expressions file
+     * @return Reports in document order
+     */
+    public List<BacktrackingReport> analyze(ExpressionFactory expressionFactory, ExpressionNode root)
+    {
+        boolean autoEscape = !"false".equals(root.getAttribute("autoEscape"));
+        List<BacktrackingReport> reports = new ArrayList<BacktrackingReport>();
+        inlineFragments(root);
+
+        for (ExpressionNode node : root.getChildren())
+        {
+            if (node.getName().equals(ELEMENT_EXPRESSION) &&
+                !expressionFactory.getTemplateIds().contains(node.getAttribute("id")))
+            {
+                reports.add(analyze(expressionFactory.getExpression(node.getAttribute("id")), node, autoEscape));
+            }
+        }
+
+        return reports;
+    }
+
+    /**
+     * Gives every ref element the children of the fragment it names, so that the fragment's repeated elements are
+     * analyzed in the context of each reference. Fragments are defined before they are referenced, so fragments are
+     * resolved in document order.
+     *
+     * @param root Root element of an expressions file
+     */
+    private static void inlineFragments(ExpressionNode root)
+    {
+        Map<String, ExpressionNode> fragments = new HashMap<String, ExpressionNode>();
+
+        for (ExpressionNode node : root.getChildren())
+        {
+            inlineRefs(node, fragments);
+
+            if (node.getName().equals(ELEMENT_FRAGMENT))
+            {
+                fragments.put(node.getAttribute("name"), node);
+            }
+        }
+    }
+
+    /**
+     * Gives the ref elements below an element the children of the fragments they name.
+     *
+     * @param node Element to resolve
+     * @param fragments Fragments defined so far, by name
+     */
+    private static void inlineRefs(ExpressionNode node, Map<String, ExpressionNode> fragments)
+    {
+        for (ExpressionNode child : node.getChildren())
+        {
+            if (!child.getName().equals(ELEMENT_REF))
+            {
+                inlineRefs(child, fragments);
+            }
+            else if (child.getChildren().isEmpty() && fragments.containsKey(child.getAttribute("fragment")))
+            {
+                for (ExpressionNode fragmentChild : fragments.get(child.getAttribute("fragment")).getChildren())
+                {
+                    child.addChild(fragmentChild); //already resolved, since fragments are resolved in document order
+                }
+            }
+        }
+    }
+
+    /**
+     * Analyzes a single expression.
+     *
+     * @param expression Compiled expression
+     * @param expressionNode Expression element from which the expression was compiled
+     * @param autoEscape Value of the autoEscape attribute of the expressions file
+     * @return Report for the worst input found
+     */
+    public BacktrackingReport analyze(Expression expression, ExpressionNode expressionNode, boolean autoEscape)
+    {
+        Pattern pattern = expression.getPattern();
+        List<Attack> attacks = new ArrayList<Attack>();
+        collectAttacks(expressionNode, "", "expression[@id='" + expression.getId() + "']", autoEscape,
+            expression.getFlags(), attacks);
+
+        Attack worst = null;
+        long worstNanos = -1;
+
+        for (Attack attack : attacks)
+        {
+            for (String suffix : SUFFIXES)
+            {
+                Attack candidate = new Attack(attack.path, attack.prefix, attack.pump, suffix);
+                long elapsed = time(pattern, candidate.input(SCREENING_PUMPS));
+
+                if (elapsed == TIMEOUT)
+                {
+                    return measure(expression.getId(), pattern, candidate);
+                }
+
+                if (elapsed > worstNanos)
+                {
+                    worst = candidate;
+                    worstNanos = elapsed;
+                }
+            }
+        }
+
+        if (worst == null)
+        {
+            return new BacktrackingReport(expression.getId(), Complexity.LINEAR, 1, null, "", "", "", new int[0],
+                new long[0]);
+        }
+
+        return measure(expression.getId(), pattern, worst);
+    }
+
+    /**
+     * Measures growth of matching time for an attack and classifies it.
+     *
+     * @param id ID of expression
+     * @param pattern Compiled pattern
+     * @param attack Attack to measure
+     * @return Analysis report
+     */
+    private BacktrackingReport measure(String id, Pattern pattern, Attack attack)
+    {
+        long[] elapsedNanos = new long[PUMP_COUNTS.length];
+        int measured = 0;
+
+        while (measured < PUMP_COUNTS.length)
+        {
+            elapsedNanos[measured] = time(pattern, attack.input(PUMP_COUNTS[measured]));
+
+            if (elapsedNanos[measured++] < 0)
+            {
+                break;
+            }
+        }
+
+        // repeat the successful measurements and keep the fastest, since the first round also triggers JIT compilation
+        for (int round = 1; round < MEASUREMENT_ROUNDS; round++)
+        {
+            for (int i = 0; i < measured && elapsedNanos[i] >= 0; i++)
+            {
+                long elapsed = time(pattern, attack.input(PUMP_COUNTS[i]));
+
+                if (elapsed >= 0)
+                {
+                    elapsedNanos[i] = Math.min(elapsedNanos[i], elapsed);
+                }
+            }
+        }
+
+        int[] pumpCounts = new int[measured];
+        long[] times = new long[measured];
+        System.arraycopy(PUMP_COUNTS, 0, pumpCounts, 0, measured);
+        System.arraycopy(elapsedNanos, 0, times, 0, measured);
+
+        Complexity complexity;
+        double exponent;
+        int last = times[measured - 1] == STACK_OVERFLOW ? measured - 2 : measured - 1;
+
+        if (last >= 0 && times[last] == TIMEOUT)
+        {
+            exponent = Double.POSITIVE_INFINITY;
+            boolean quickTimeout = pumpCounts[last] <= SCREENING_PUMPS;
+            boolean accelerating = last >= 2 && times[last - 1] > 16 * Math.max(1, times[last - 2]);
+            complexity = quickTimeout || accelerating ? Complexity.EXPONENTIAL : Complexity.POLYNOMIAL;
+        }
+        else if (last >= 1)
+        {
+            exponent = fitExponent(pumpCounts, times, Math.max(0, last - 3), last);
+            complexity = exponent < POLYNOMIAL_EXPONENT ? Complexity.LINEAR : Complexity.POLYNOMIAL;
+        }
+        else
+        {
+            exponent = Double.NaN; //overflowed the stack before growth could be measured
+            complexity = Complexity.LINEAR;
+        }
+
+        return new BacktrackingReport(id, complexity, exponent, attack.path, attack.prefix, attack.pump, attack.suffix,
+            pumpCounts, times);
+    }
+
+    /**
+     * Fits a power law to the measured times by least squares on a log-log scale. Only the largest inputs are used,
+     * where timer noise matters least.
+     *
+     * @param pumpCounts Pump repetitions measured
+     * @param times Matching time for each pump count
+     * @param first Index of the first measurement to fit
+     * @param last Index of the last measurement to fit
+     * @return Exponent of the fitted power law
+     */
+    private static double fitExponent(int[] pumpCounts, long[] times, int first, int last)
+    {
+        int n = last - first + 1;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXY = 0;
+        double sumXX = 0;
+
+        for (int i = first; i <= last; i++)
+        {
+            double x = Math.log(pumpCounts[i]);
+            double y = Math.log(Math.max(1, times[i]));
+
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+
+        return Math.max(0, (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX));
+    }
+
+    /**
+     * Times a single search, repeating fast searches so that the clock resolution does not dominate.
+     *
+     * @param pattern Compiled pattern
+     * @param input Input to search
+     * @return Average nanoseconds per search, TIMEOUT if the time budget ran out or STACK_OVERFLOW if matching
+     * overflowed the stack
+     */
+    private long time(Pattern pattern, String input)
+    {
+        long deadline = System.nanoTime() + budgetNanos;
+        long startTime = System.nanoTime();
+        int runs = 0;
+
+        try
+        {
+            do
+            {
+                pattern.matcher(new DeadlineCharSequence(input, deadline)).find();
+                runs++;
+            }
+            while (System.nanoTime() - startTime < 1000000 && runs < 1000);
+        }
+        catch (BudgetExceededException e)
+        {
+            return TIMEOUT;
+        }
+        catch (StackOverflowError e)
+        {
+            return STACK_OVERFLOW; //java.util.regex recurses per repetition of groups and alternations
+        }
+
+        return (System.nanoTime() - startTime) / runs;
+    }
+
+    /**
+     * Collects attacks for every repeated element below the given expression or group element.
+     *
+     * @param node Expression, group or ref element
+     * @param prefix Input leading up to the element's content
+     * @param path Location of the element
+     * @param autoEscape Indicates whether or not equals and except values are escaped
+     * @param flags Match flags of the expression
+     * @param attacks Collected attacks
+     */
+    private void collectAttacks(ExpressionNode node, String prefix, String path, boolean autoEscape, int flags,
+                                List<Attack> attacks)
+    {
+        boolean or = "or".equals(node.getAttribute("operator"));
+        StringBuilder running = new StringBuilder(prefix);
+        int groupIndex = 0;
+        int matchIndex = 0;
+        int refIndex = 0;
+
+        for (ExpressionNode child : node.getChildren())
+        {
+            String childPath;
+
+            if (child.getName().equals(ELEMENT_GROUP))
+            {
+                childPath = path + "/group[" + (++groupIndex) + "]";
+            }
+            else if (child.getName().equals(ELEMENT_MATCH))
+            {
+                childPath = path + "/match[" + (++matchIndex) + "]";
+            }
+            else if (child.getName().equals(ELEMENT_REF))
+            {
+                childPath = path + "/ref[" + (++refIndex) + "]";
+            }
+            else
+            {
+                continue;
+            }
+
+            String childPrefix = or ? prefix : running.toString();
+
+            if (isRepeated(child))
+            {
+                for (String pump : pumps(child, autoEscape, flags))
+                {
+                    if (pump.length() > 0)
+                    {
+                        attacks.add(new Attack(childPath, childPrefix, pump, ""));
+                    }
+                }
+            }
+
+            if (child.getName().equals(ELEMENT_GROUP) || child.getName().equals(ELEMENT_REF))
+            {
+                collectAttacks(child, childPrefix, childPath, autoEscape, flags, attacks);
+            }
+
+            if (!or)
+            {
+                repeat(running, sample(child, autoEscape, flags), minimum(child));
+            }
+        }
+    }
+
+    /**
+     * Builds the candidate pumps for a repeated element: one sample of the element and, for operator="or" groups, one
+     * sample per alternative.
+     *
+     * @param node Repeated element
+     * @param autoEscape Indicates whether or not equals and except values are escaped
+     * @param flags Match flags of the expression
+     * @return Distinct pumps
+     */
+    private Set<String> pumps(ExpressionNode node, boolean autoEscape, int flags)
+    {
+        Set<String> pumps = new LinkedHashSet<String>();
+        pumps.add(sample(node, autoEscape, flags));
+
+        if ("or".equals(node.getAttribute("operator")))
+        {
+            for (ExpressionNode child : node.getChildren())
+            {
+                String sample = sample(child, autoEscape, flags);
+
+                pumps.add(sample);
+                pumps.add(sample + sample);
+            }
+        }
+
+        return pumps;
+    }
+
+    /**
+     * Builds an input matching a single repetition of an element.
+     *
+     * @param node Element
+     * @param autoEscape Indicates whether or not equals and except values are escaped
+     * @param flags Match flags of the expression
+     * @return Sample input (empty for zero-width elements)
+     */
+    private String sample(ExpressionNode node, boolean autoEscape, int flags)
+    {
+        if (!"none".equals(node.getAttribute("lookahead", "none")) ||
+            !"none".equals(node.getAttribute("lookbehind", "none")))
+        {
+            return "";
+        }
+
+        if (node.getName().equals(ELEMENT_MATCH))
+        {
+            return sampleMatch(node, autoEscape, flags);
+        }
+
+        if (!node.getName().equals(ELEMENT_GROUP) && !node.getName().equals(ELEMENT_REF))
+        {
+            return "";
+        }
+
+        StringBuilder sample = new StringBuilder();
+
+        for (ExpressionNode child : node.getChildren())
+        {
+            repeat(sample, sample(child, autoEscape, flags), Math.max(1, minimum(child)));
+
+            if ("or".equals(node.getAttribute("operator")) && sample.length() > 0)
+            {
+                break;
+            }
+        }
+
+        return sample.toString();
+    }
+
+    /**
+     * Builds an input matching a single repetition of a match element.
+     *
+     * @param node Match element
+     * @param autoEscape Indicates whether or not equals and except values are escaped
+     * @param flags Match flags of the expression
+     * @return Sample input
+     */
+    private String sampleMatch(ExpressionNode node, boolean autoEscape, int flags)
+    {
+        String equals = node.getAttribute("equals");
+        String except = node.getAttribute("except");
+
+        if (equals != null && autoEscape)
+        {
+            equals = RegExSyntax.escape(equals);
+        }
+
+        if (except != null && autoEscape)
+        {
+            except = RegExSyntax.escape(except);
+        }
+
+        if (equals != null)
+        {
+            String literal = RegExSyntax.literalValue(equals);
+
+            if (literal != null)
+            {
+                return literal;
+            }
+        }
+
+        Pattern equalsPattern = equals == null ? null : compile(equals, flags);
+        Pattern exceptPattern = null;
+
+        if (except != null)
+        {
+            exceptPattern = compile(RegExSyntax.isCharacterClass(except) ? except : "[" + except + "]", flags);
+        }
+
+        for (int i = 0; i < SAMPLE_CHARACTERS.length(); i++)
+        {
+            String candidate = SAMPLE_CHARACTERS.substring(i, i + 1);
+
+            if ((equalsPattern == null || equalsPattern.matcher(candidate).matches()) &&
+                (exceptPattern == null || !exceptPattern.matcher(candidate).matches()))
+            {
+                return candidate;
+            }
+        }
+
+        return "";
+    }
+
+    /**
+     * Compiles an attribute value, tolerating values that are only valid in context.
+     *
+     * @param regEx Regular expression
+     * @param flags Match flags
+     * @return Compiled pattern or a pattern that never matches
+     */
+    private static Pattern compile(String regEx, int flags)
+    {
+        try
+        {
+            return Pattern.compile(regEx, flags);
+        }
+        catch (PatternSyntaxException e)
+        {
+            return Pattern.compile("(?!)");
+        }
+    }
+
+    /**
+     * Indicates whether or not an element may repeat more than once.
+     *
+     * @param node Element
+     * @return True if the element's max attribute is * or greater than one
+     */
+    private static boolean isRepeated(ExpressionNode node)
+    {
+        String max = node.getAttribute("max", "1");
+
+        return max.equals("*") || Integer.parseInt(max) > 1;
+    }
+
+    /**
+     * Gets the minimum number of repetitions of an element.
+     *
+     * @param node Element
+     * @return Value of the min attribute
+     */
+    private static int minimum(ExpressionNode node)
+    {
+        return Integer.parseInt(node.getAttribute("min", "1"));
+    }
+
+    /**
+     * Appends text a number of times.
+     *
+     * @param builder Builder to append to
+     * @param text Text to append
+     * @param count Number of repetitions
+     */
+    private static void repeat(StringBuilder builder, String text, int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            builder.append(text);
+        }
+    }
+
+    /**
+     * Analyzes every expression in the given files and prints one line per expression. Templated expressions are
+     * listed as skipped. The exit status is 2 if any expression shows exponential growth.
+     *
+     * @param args Paths of expressions files
+     * @throws Exception Indicates that a file could not be read
+     */
+    public static void main(String[] args) throws Exception
+    {
+        BacktrackingAnalyzer analyzer = new BacktrackingAnalyzer();
+        boolean exponential = false;
+
+        for (String fileName : args)
+        {
+            FileSystemResource resource = new FileSystemResource(fileName);
+            ExpressionNode root = new ExpressionTreeReader().read(resource);
+            ExpressionFactory expressionFactory = new ExpressionFactory(resource);
+
+            for (BacktrackingReport report : analyzer.analyze(expressionFactory, root))
+            {
+                System.out.println(fileName + ": " + report);
+                exponential |= report.getComplexity() == Complexity.EXPONENTIAL;
+            }
+
+            for (String id : expressionFactory.getTemplateIds())
+            {
+                System.out.println(fileName + ": " + id + " skipped (templated)");
+            }
+        }
+
+        System.exit(exponential ? 2 : 0);
+    }
+
+    /**
+     * Adversarial input of the form prefix + pump &times; n + suffix.
+     */
+    private static class Attack
+    {
+        private String path;
+        private String prefix;
+        private String pump;
+        private String suffix;
+
+        /**
+         * Constructs a new attack.
+         *
+         * @param path Location of the repeated element
+         * @param prefix Input leading up to the repeated element
+         * @param pump Input repeated to grow the input
+         * @param suffix Input causing the match to fail
+         */
+        Attack(String path, String prefix, String pump, String suffix)
+        {
+            this.path = path;
+            this.prefix = prefix;
+            this.pump = pump;
+            this.suffix = suffix;
+        }
+
+        /**
+         * Builds the input for the given number of pump repetitions.
+         *
+         * @param pumps Number of pump repetitions
+         * @return Adversarial input
+         */
+        String input(int pumps)
+        {
+            StringBuilder input = new StringBuilder(prefix);
+            repeat(input, pump, pumps);
+
+            return input.append(suffix).toString();
+        }
+    }
+
+    /**
+     * Character sequence that aborts matching once a deadline has passed.
+     */
+    private static class DeadlineCharSequence implements CharSequence
+    {
+        private String text;
+        private long deadline;
+        private int reads;
+
+        /**
+         * Constructs a new deadline character sequence.
+         *
+         * @param text Text to expose
+         * @param deadline Value of System.nanoTime() after which reads fail
+         */
+        DeadlineCharSequence(String text, long deadline)
+        {
+            this.text = text;
+            this.deadline = deadline;
+        }
+
+        public char charAt(int index)
+        {
+            if ((++reads & 0xFFF) == 0 && System.nanoTime() > deadline)
+            {
+                throw new BudgetExceededException();
+            }
+
+            return text.charAt(index);
+        }
+
+        public int length()
+        {
+            return text.length();
+        }
+
+        public CharSequence subSequence(int start, int end)
+        {
+            return new DeadlineCharSequence(text.substring(start, end), deadline);
+        }
+
+        public String toString()
+        {
+            return text;
+        }
+    }
+
+    /**
+     * Thrown when a match exceeds the analyzer's time budget.
+     */
+    private static class BudgetExceededException extends RuntimeException
+    {
+    }
+}
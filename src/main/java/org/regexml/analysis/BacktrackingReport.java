@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+/**
+ * Result of stress testing a single expression with adversarial inputs. The worst input found has the form
+ * <i>prefix</i> + <i>pump</i> &times; n + <i>suffix</i>, where the prefix leads up to a repeated element, the pump is
+ * repeated to grow the input and the suffix makes the overall match fail so that every alternative is explored.
+ */
+public class BacktrackingReport
+{
+    /**
+     * Elapsed time recorded when a match exceeded the analyzer's time budget.
+     */
+    public static final long TIMEOUT = -1;
+
+    /**
+     * Elapsed time recorded when a match overflowed the thread's stack.
+     */
+    public static final long STACK_OVERFLOW = -2;
+
+    private String id;
+    private Complexity complexity;
+    private double exponent;
+    private String path;
+    private String prefix;
+    private String pump;
+    private String suffix;
+    private int[] pumpCounts;
+    private long[] elapsedNanos;
+
+    /**
+     * Constructs a new report.
+     *
+     * @param id ID of expression
+     * @param complexity Observed growth of matching time
+     * @param exponent Observed power of input length by which matching time grows (infinite if the time budget ran
+     * out)
+     * @param path Location of the repeated element in the expressions file
+     * @param prefix Input leading up to the repeated element
+     * @param pump Input repeated to grow the input
+     * @param suffix Input causing the match to fail
+     * @param pumpCounts Pump repetitions measured
+     * @param elapsedNanos Matching time for each pump count, TIMEOUT or STACK_OVERFLOW
+     */
+    public BacktrackingReport(String id, Complexity complexity, double exponent, String path, String prefix,
+                              String pump, String suffix, int[] pumpCounts, long[] elapsedNanos)
+    {
+        this.id = id;
+        this.complexity = complexity;
+        this.exponent = exponent;
+        this.path = path;
+        this.prefix = prefix;
+        this.pump = pump;
+        this.suffix = suffix;
+        this.pumpCounts = pumpCounts;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the ID of the analyzed expression.
+     *
+     * @return Expression ID
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets the observed growth of matching time with input length.
+     *
+     * @return Complexity class
+     */
+    public Complexity getComplexity()
+    {
+        return complexity;
+    }
+
+    /**
+     * Gets the observed power of input length by which matching time grows.
+     *
+     * @return Growth exponent (infinite if the time budget ran out)
+     */
+    public double getExponent()
+    {
+        return exponent;
+    }
+
+    /**
+     * Indicates whether or not matching the worst input overflowed the stack. Such expressions can crash the calling
+     * thread on long inputs regardless of their time complexity.
+     *
+     * @return True if a stack overflow was observed
+     */
+    public boolean isStackOverflow()
+    {
+        return elapsedNanos.length > 0 && elapsedNanos[elapsedNanos.length - 1] == STACK_OVERFLOW;
+    }
+
+    /**
+     * Gets the location of the repeated element that produced the worst input.
+     *
+     * @return Element path, or null if the expression has no repeated elements
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Builds the worst input found with the given number of pump repetitions.
+     *
+     * @param pumps Number of pump repetitions
+     * @return Adversarial input
+     */
+    public String getAttackInput(int pumps)
+    {
+        StringBuilder input = new StringBuilder(prefix.length() + pump.length() * pumps + suffix.length());
+        input.append(prefix);
+
+        for (int i = 0; i < pumps; i++)
+        {
+            input.append(pump);
+        }
+
+        return input.append(suffix).toString();
+    }
+
+    /**
+     * Gets the pump repetitions measured.
+     *
+     * @return Pump counts
+     */
+    public int[] getPumpCounts()
+    {
+        return pumpCounts.clone();
+    }
+
+    /**
+     * Gets the matching time measured for each pump count.
+     *
+     * @return Elapsed nanoseconds, TIMEOUT where the time budget ran out or STACK_OVERFLOW where matching
+     * overflowed the stack
+     */
+    public long[] getElapsedNanos()
+    {
+        return elapsedNanos.clone();
+    }
+
+    /**
+     * Gets a one line summary of this report.
+     *
+     * @return Report summary
+     */
+    public String toString()
+    {
+        StringBuilder summary = new StringBuilder();
+        summary.append(id).append(": ").append(complexity);
+
+        if (!Double.isInfinite(exponent) && !Double.isNaN(exponent))
+        {
+            summary.append(String.format(" (n^%.1f)", exponent));
+        }
+
+        if (path != null)
+        {
+            summary.append(" at ").append(path);
+        }
+
+        for (int i = 0; i < pumpCounts.length; i++)
+        {
+            summary.append(i == 0 ? " [" : ", ").append(pumpCounts[i]).append(": ");
+
+            if (elapsedNanos[i] == TIMEOUT)
+            {
+                summary.append("timeout");
+            }
+            else if (elapsedNanos[i] == STACK_OVERFLOW)
+            {
+                summary.append("stack overflow");
+            }
+            else
+            {
+                summary.append(elapsedNanos[i] / 1000).append("us");
+            }
+        }
+
+        return summary.append(pumpCounts.length > 0 ? "]" : "").toString();
+    }
+}
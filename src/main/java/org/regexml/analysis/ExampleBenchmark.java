@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.FactoryOptions;
+import org.regexml.resource.FileSystemResource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Measures how fast each expression matches the example inputs declared with example elements and checks that every
+ * example is matched or rejected as declared. Rule authors can run it before shipping a rules file to see what each
+ * expression costs; it exits with status 1 if an example behaves differently than declared.
+ */
+public class ExampleBenchmark
+{
+    private static final int WARM_UP_ITERATIONS = 10000;
+
+    private long durationNanos;
+
+    /**
+     * Constructs a benchmark that measures each expression for 100 milliseconds.
+     */
+    public ExampleBenchmark()
+    {
+        this(100000000L);
+    }
+
+    /**
+     * Constructs a benchmark.
+     *
+     * @param durationNanos Minimum measuring time per expression
+     */
+    public ExampleBenchmark(long durationNanos)
+    {
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Benchmarks every expression in a factory.
+     *
+     * @param expressionFactory Factory created from the expressions file
+     * @return Reports sorted by expression ID
+     */
+    public List<ExampleReport> run(ExpressionFactory expressionFactory)
+    {
+        List<ExampleReport> reports = new ArrayList<ExampleReport>();
+
+        for (String id : new TreeSet<String>(expressionFactory.getExpressionIds()))
+        {
+            reports.add(run(expressionFactory.getExpression(id)));
+        }
+
+        return reports;
+    }
+
+    /**
+     * Benchmarks a single expression. The expression is warmed up on its examples before it is measured.
+     *
+     * @param expression Expression to benchmark
+     * @return Report for the expression
+     */
+    public ExampleReport run(Expression expression)
+    {
+        List<String> matching = expression.getMatchingExamples();
+        List<String> nonMatching = expression.getNonMatchingExamples();
+        List<String> unexpectedMatches = new ArrayList<String>();
+        List<String> unexpectedMisses = new ArrayList<String>();
+
+        for (String example : matching)
+        {
+            if (expression.findUncached(example) == null)
+            {
+                unexpectedMisses.add(example);
+            }
+        }
+
+        for (String example : nonMatching)
+        {
+            if (expression.findUncached(example) != null)
+            {
+                unexpectedMatches.add(example);
+            }
+        }
+
+        int exampleCount = matching.size() + nonMatching.size();
+
+        if (exampleCount == 0)
+        {
+            return new ExampleReport(expression.getId(), 0, unexpectedMatches, unexpectedMisses, 0);
+        }
+
+        for (int i = 0; i < WARM_UP_ITERATIONS / exampleCount + 1; i++)
+        {
+            matchAll(expression, matching, nonMatching);
+        }
+
+        long matches = 0;
+        long startTime = System.nanoTime();
+        long elapsed;
+
+        do
+        {
+            matchAll(expression, matching, nonMatching);
+            matches += exampleCount;
+            elapsed = System.nanoTime() - startTime;
+        }
+        while (elapsed < durationNanos);
+
+        return new ExampleReport(expression.getId(), exampleCount, unexpectedMatches, unexpectedMisses,
+            (double) elapsed / matches);
+    }
+
+    /**
+     * Matches the expression against every example once.
+     *
+     * @param expression Expression to match
+     * @param matching Examples the expression should match
+     * @param nonMatching Examples the expression should not match
+     */
+    private static void matchAll(Expression expression, List<String> matching, List<String> nonMatching)
+    {
+        for (String example : matching)
+        {
+            expression.findUncached(example);
+        }
+
+        for (String example : nonMatching)
+        {
+            expression.findUncached(example);
+        }
+    }
+
+    /**
+     * Benchmarks the expressions files named on the command line and prints one line per expression.
+     *
+     * @param args Paths of expressions files
+     * @throws Exception Indicates that a file could not be loaded
+     */
+    public static void main(String[] args) throws Exception
+    {
+        ExampleBenchmark benchmark = new ExampleBenchmark();
+        boolean failed = false;
+
+        for (String fileName : args)
+        {
+            FactoryOptions options = new FactoryOptions();
+            options.setValidate(true);
+
+            for (ExampleReport report : benchmark.run(new ExpressionFactory(new FileSystemResource(fileName), options)))
+            {
+                System.out.println(fileName + ": " + report);
+                failed |= !report.isPassed();
+            }
+        }
+
+        System.exit(failed ? 1 : 0);
+    }
+}
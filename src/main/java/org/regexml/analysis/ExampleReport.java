@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of benchmarking a single expression against the examples declared in its expressions file.
+ */
+public class ExampleReport
+{
+    private String id;
+    private int exampleCount;
+    private List<String> unexpectedMatches;
+    private List<String> unexpectedMisses;
+    private double nanosPerMatch;
+
+    /**
+     * Constructs a new report.
+     *
+     * @param id ID of expression
+     * @param exampleCount Number of examples
+     * @param unexpectedMatches Examples declared with matches="false" that the expression matched
+     * @param unexpectedMisses Examples declared with matches="true" that the expression did not match
+     * @param nanosPerMatch Mean time of one match over all examples, in nanoseconds
+     */
+    public ExampleReport(String id, int exampleCount, List<String> unexpectedMatches, List<String> unexpectedMisses,
+                         double nanosPerMatch)
+    {
+        this.id = id;
+        this.exampleCount = exampleCount;
+        this.unexpectedMatches = Collections.unmodifiableList(unexpectedMatches);
+        this.unexpectedMisses = Collections.unmodifiableList(unexpectedMisses);
+        this.nanosPerMatch = nanosPerMatch;
+    }
+
+    /**
+     * Gets the ID of the benchmarked expression.
+     *
+     * @return Expression ID
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets the number of examples.
+     *
+     * @return Number of examples
+     */
+    public int getExampleCount()
+    {
+        return exampleCount;
+    }
+
+    /**
+     * Gets the examples declared with matches="false" that the expression matched.
+     *
+     * @return Unexpectedly matched examples
+     */
+    public List<String> getUnexpectedMatches()
+    {
+        return unexpectedMatches;
+    }
+
+    /**
+     * Gets the examples declared with matches="true" that the expression did not match.
+     *
+     * @return Unexpectedly missed examples
+     */
+    public List<String> getUnexpectedMisses()
+    {
+        return unexpectedMisses;
+    }
+
+    /**
+     * Indicates whether or not every example behaved as declared.
+     *
+     * @return True if no example was matched or missed unexpectedly
+     */
+    public boolean isPassed()
+    {
+        return unexpectedMatches.isEmpty() && unexpectedMisses.isEmpty();
+    }
+
+    /**
+     * Gets the mean time of one match over all examples.
+     *
+     * @return Time in nanoseconds
+     */
+    public double getNanosPerMatch()
+    {
+        return nanosPerMatch;
+    }
+
+    /**
+     * Gets the number of example matches per second.
+     *
+     * @return Throughput
+     */
+    public double getMatchesPerSecond()
+    {
+        return nanosPerMatch > 0 ? 1e9 / nanosPerMatch : 0;
+    }
+
+    /**
+     * Describes the report in one line.
+     *
+     * @return Report summary
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder summary = new StringBuilder(id).append(": ");
+
+        if (exampleCount == 0)
+        {
+            return summary.append("no examples").toString();
+        }
+
+        summary.append(exampleCount).append(" examples, ");
+        summary.append(String.format("%.0f ns/match, %.0f matches/s", nanosPerMatch, getMatchesPerSecond()));
+
+        for (String example : unexpectedMisses)
+        {
+            summary.append(", did not match \"").append(example).append("\"");
+        }
+
+        for (String example : unexpectedMatches)
+        {
+            summary.append(", matched \"").append(example).append("\"");
+        }
+
+        return summary.toString();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Element of a regexml expressions file, retaining its attributes and child elements.
+ */
+public class ExpressionNode
+{
+    private String name;
+    private Map<String, String> attributes = new HashMap<String, String>();
+    private List<ExpressionNode> children = new ArrayList<ExpressionNode>();
+
+    /**
+     * Constructs a new node.
+     *
+     * @param name Local name of the element
+     */
+    public ExpressionNode(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Gets the local name of the element.
+     *
+     * @return Element name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Gets the value of an attribute.
+     *
+     * @param name Attribute name
+     * @return Attribute value or null if the attribute is not present
+     */
+    public String getAttribute(String name)
+    {
+        return attributes.get(name);
+    }
+
+    /**
+     * Gets the value of an attribute, falling back to a default value.
+     *
+     * @param name Attribute name
+     * @param defaultValue Value returned if the attribute is not present
+     * @return Attribute value
+     */
+    public String getAttribute(String name, String defaultValue)
+    {
+        String value = attributes.get(name);
+
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Sets the value of an attribute.
+     *
+     * @param name Attribute name
+     * @param value Attribute value
+     */
+    public void setAttribute(String name, String value)
+    {
+        attributes.put(name, value);
+    }
+
+    /**
+     * Gets the child elements in document order.
+     *
+     * @return Unmodifiable list of child elements
+     */
+    public List<ExpressionNode> getChildren()
+    {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Appends a child element.
+     *
+     * @param child Child element
+     */
+    public void addChild(ExpressionNode child)
+    {
+        children.add(child);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+import org.regexml.resource.Resource;
+import org.regexml.resource.ResourceInput;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Stack;
+
+/**
+ * Reads a regexml expressions file into a tree of expression nodes.
+ */
+public class ExpressionTreeReader
+{
+    private XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    /**
+     * Reads the given expressions file.
+     *
+     * @param resource Resource referencing the file containing expressions in XML
+     * @return Root regexml element whose children are the expression elements
+     * @throws XMLStreamException Indicates that the file could not be parsed
+     */
+    public ExpressionNode read(Resource resource) throws XMLStreamException
+    {
+        ResourceInput input = new ResourceInput(resource);
+        XMLEventReader xmlEventReader = input.createEventReader(inputFactory);
+        Stack<ExpressionNode> nodeStack = new Stack<ExpressionNode>();
+        ExpressionNode root = null;
+
+        try
+        {
+            while (xmlEventReader.hasNext())
+            {
+                XMLEvent xmlEvent = xmlEventReader.nextEvent();
+
+                if (xmlEvent.isStartElement())
+                {
+                    StartElement se = xmlEvent.asStartElement();
+                    ExpressionNode node = new ExpressionNode(se.getName().getLocalPart());
+
+                    for (Iterator<Attribute> it = se.getAttributes(); it.hasNext();)
+                    {
+                        Attribute a = it.next();
+                        node.setAttribute(a.getName().getLocalPart(), a.getValue());
+                    }
+
+                    if (nodeStack.isEmpty())
+                    {
+                        root = node;
+                    }
+                    else
+                    {
+                        nodeStack.peek().addChild(node);
+                    }
+
+                    nodeStack.push(node);
+                }
+                else if (xmlEvent.isEndElement())
+                {
+                    nodeStack.pop();
+                }
+            }
+        }
+        finally
+        {
+            xmlEventReader.close();
+
+            try
+            {
+                input.close();
+            }
+            catch (IOException e)
+            {
+                //the tree has been read or parsing already failed
+            }
+        }
+
+        return root;
+    }
+}
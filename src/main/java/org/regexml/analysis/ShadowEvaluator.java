@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.ExpressionMatch;
+import org.regexml.exception.ExpressionNotFoundException;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs calls against an active expressions file and mirrors a sample of them to a candidate file, to find out before
+ * promoting the candidate whether it changes results or latency. Mirrored calls run on a small pool of daemon threads
+ * with a bounded queue; a sampled call that finds the queue full is dropped, so the caller only ever pays for the
+ * active match, a counter increment and, when sampled, a queue offer. Instances are thread safe.
+ */
+public class ShadowEvaluator
+{
+    private ExpressionFactory active;
+    private ExpressionFactory candidate;
+    private double sampleRate;
+    private int maxMismatchSamples;
+    private ThreadPoolExecutor executor;
+    private ConcurrentMap<String, ShadowStats> stats = new ConcurrentHashMap<String, ShadowStats>();
+    private AtomicLong callCount = new AtomicLong();
+    private AtomicLong sampledCount = new AtomicLong();
+    private AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Constructs a new shadow evaluator.
+     *
+     * @param active Factory whose results are returned to callers
+     * @param candidate Factory that mirrored calls are compared against
+     * @param options Sampling and executor settings
+     */
+    public ShadowEvaluator(ExpressionFactory active, ExpressionFactory candidate, ShadowOptions options)
+    {
+        if (options.getSampleRate() < 0 || options.getSampleRate() > 1)
+        {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1");
+        }
+
+        this.active = active;
+        this.candidate = candidate;
+        this.sampleRate = options.getSampleRate();
+        this.maxMismatchSamples = options.getMaxMismatchSamples();
+
+        executor = new ThreadPoolExecutor(options.getThreads(), options.getThreads(), 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(options.getQueueCapacity()), new ThreadFactory()
+        {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "regexml-shadow");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY); //yield the CPU to the threads serving the active file
+
+                return thread;
+            }
+        }, new RejectedExecutionHandler()
+        {
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor)
+            {
+                droppedCount.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Finds the first match of an active expression and, if the call is sampled, queues the same call against the
+     * candidate.
+     *
+     * @param id ID of expression
+     * @param input Input to search
+     * @return Match result of the active expression or null if it does not match
+     * @throws ExpressionNotFoundException Indicates that the active file has no expression with the ID
+     */
+    public ExpressionMatch find(String id, String input) throws ExpressionNotFoundException
+    {
+        Expression expression = active.getExpression(id);
+
+        if (!isSampled())
+        {
+            return expression.find(input);
+        }
+
+        long startTime = System.nanoTime();
+        ExpressionMatch match = expression.find(input);
+        long activeNanos = System.nanoTime() - startTime;
+
+        sampledCount.incrementAndGet();
+        executor.execute(new Comparison(id, input, match, activeNanos));
+
+        return match;
+    }
+
+    /**
+     * Decides whether or not the current call is mirrored. The call counter is scrambled into a uniformly distributed
+     * value, which samples like a random number generator without one being shared between threads, and without
+     * locking onto every n-th call of periodic traffic as a plain interval would.
+     *
+     * @return True if the call is mirrored
+     */
+    private boolean isSampled()
+    {
+        if (sampleRate == 0)
+        {
+            return false;
+        }
+
+        long z = callCount.incrementAndGet() * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+
+        return (z >>> 11) * 0x1.0p-53 < sampleRate;
+    }
+
+    /**
+     * Gets the statistics of every expression that has been mirrored.
+     *
+     * @return Unmodifiable view of the statistics by expression ID
+     */
+    public Map<String, ShadowStats> getStats()
+    {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Gets the statistics of a single expression.
+     *
+     * @param id ID of expression
+     * @return Statistics or null if no call to the expression has been mirrored
+     */
+    public ShadowStats getStats(String id)
+    {
+        return stats.get(id);
+    }
+
+    /**
+     * Gets the number of calls made through this evaluator.
+     *
+     * @return Call count
+     */
+    public long getCallCount()
+    {
+        return callCount.get();
+    }
+
+    /**
+     * Gets the number of calls selected for mirroring, including dropped ones.
+     *
+     * @return Sampled count
+     */
+    public long getSampledCount()
+    {
+        return sampledCount.get();
+    }
+
+    /**
+     * Gets the number of sampled calls dropped because the shadow queue was full.
+     *
+     * @return Dropped count
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+    /**
+     * Stops mirroring and waits for queued comparisons to complete.
+     *
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if all comparisons completed within the timeout
+     * @throws InterruptedException Indicates that the calling thread was interrupted while waiting
+     */
+    public boolean close(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        executor.shutdown();
+
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Gets the statistics of an expression, creating them on first use.
+     *
+     * @param id ID of expression
+     * @return Statistics
+     */
+    private ShadowStats statsFor(String id)
+    {
+        ShadowStats expressionStats = stats.get(id);
+
+        if (expressionStats == null)
+        {
+            ShadowStats newStats = new ShadowStats(id, maxMismatchSamples);
+            expressionStats = stats.putIfAbsent(id, newStats);
+
+            if (expressionStats == null)
+            {
+                expressionStats = newStats;
+            }
+        }
+
+        return expressionStats;
+    }
+
+    /**
+     * Indicates whether or not two match results are equal, comparing the offsets of the match and of every group.
+     *
+     * @param a First result or null
+     * @param b Second result or null
+     * @return True if both are null or both cover the same text with the same groups
+     */
+    private static boolean sameResult(ExpressionMatch a, ExpressionMatch b)
+    {
+        if (a == null || b == null)
+        {
+            return a == b;
+        }
+
+        if (a.groupCount() != b.groupCount())
+        {
+            return false;
+        }
+
+        for (int group = 0; group <= a.groupCount(); group++)
+        {
+            if (a.start(group) != b.start(group) || a.end(group) != b.end(group))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Mirrored call that runs the candidate expression and records how its result and latency compare.
+     */
+    private class Comparison implements Runnable
+    {
+        private String id;
+        private String input;
+        private ExpressionMatch activeMatch;
+        private long activeNanos;
+
+        /**
+         * Constructs a new comparison.
+         *
+         * @param id ID of expression
+         * @param input Input of the call
+         * @param activeMatch Result of the active expression
+         * @param activeNanos Latency of the active expression
+         */
+        Comparison(String id, String input, ExpressionMatch activeMatch, long activeNanos)
+        {
+            this.id = id;
+            this.input = input;
+            this.activeMatch = activeMatch;
+            this.activeNanos = activeNanos;
+        }
+
+        /**
+         * Runs the candidate expression and records the comparison.
+         */
+        public void run()
+        {
+            ShadowStats expressionStats = statsFor(id);
+
+            try
+            {
+                Expression expression = candidate.getExpression(id);
+
+                long startTime = System.nanoTime();
+                ExpressionMatch candidateMatch = expression.find(input);
+                long candidateNanos = System.nanoTime() - startTime;
+
+                expressionStats.recordComparison(input, !sameResult(activeMatch, candidateMatch), activeNanos,
+                    candidateNanos);
+            }
+            catch (RuntimeException e)
+            {
+                expressionStats.recordError(); //a broken candidate must not affect the active file
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+/**
+ * Options controlling how a ShadowEvaluator mirrors calls to a candidate expressions file.
+ */
+public class ShadowOptions
+{
+    private double sampleRate = 0.01;
+    private int threads = 1;
+    private int queueCapacity = 1024;
+    private int maxMismatchSamples = 16;
+
+    /**
+     * Gets the fraction of calls mirrored to the candidate.
+     *
+     * @return Sample rate between 0 and 1
+     */
+    public double getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    /**
+     * Sets the fraction of calls mirrored to the candidate.
+     *
+     * @param sampleRate Sample rate between 0 and 1
+     */
+    public void setSampleRate(double sampleRate)
+    {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Gets the number of threads that run mirrored calls.
+     *
+     * @return Number of shadow threads
+     */
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads that run mirrored calls.
+     *
+     * @param threads Number of shadow threads
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+    }
+
+    /**
+     * Gets the maximum number of mirrored calls waiting for a shadow thread.
+     *
+     * @return Queue capacity
+     */
+    public int getQueueCapacity()
+    {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of mirrored calls waiting for a shadow thread. A sampled call that finds the queue full
+     * is dropped and counted rather than waiting, so the candidate never holds up the caller.
+     *
+     * @param queueCapacity Queue capacity
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the number of mismatching inputs kept per expression.
+     *
+     * @return Maximum number of mismatch samples
+     */
+    public int getMaxMismatchSamples()
+    {
+        return maxMismatchSamples;
+    }
+
+    /**
+     * Sets the number of mismatching inputs kept per expression. The first mismatches are kept so that differences
+     * can be reproduced.
+     *
+     * @param maxMismatchSamples Maximum number of mismatch samples
+     */
+    public void setMaxMismatchSamples(int maxMismatchSamples)
+    {
+        this.maxMismatchSamples = maxMismatchSamples;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.analysis;
+
+import org.regexml.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Differences in results and latency between the active and the candidate version of a single expression.
+ */
+public class ShadowStats
+{
+    private String id;
+    private int maxMismatchSamples;
+    private AtomicLong comparisonCount = new AtomicLong();
+    private AtomicLong mismatchCount = new AtomicLong();
+    private AtomicLong errorCount = new AtomicLong();
+    private LatencyHistogram activeLatency = new LatencyHistogram();
+    private LatencyHistogram candidateLatency = new LatencyHistogram();
+    private List<String> mismatchSamples = new ArrayList<String>();
+
+    /**
+     * Constructs new statistics for an expression.
+     *
+     * @param id ID of expression
+     * @param maxMismatchSamples Maximum number of mismatching inputs kept
+     */
+    public ShadowStats(String id, int maxMismatchSamples)
+    {
+        this.id = id;
+        this.maxMismatchSamples = maxMismatchSamples;
+    }
+
+    /**
+     * Gets the ID of the expression.
+     *
+     * @return Expression ID
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets the number of mirrored calls whose results were compared.
+     *
+     * @return Comparison count
+     */
+    public long getComparisonCount()
+    {
+        return comparisonCount.get();
+    }
+
+    /**
+     * Gets the number of mirrored calls where the candidate found a different match, or none where the active
+     * expression found one, or the reverse.
+     *
+     * @return Mismatch count
+     */
+    public long getMismatchCount()
+    {
+        return mismatchCount.get();
+    }
+
+    /**
+     * Gets the number of mirrored calls the candidate could not answer, for example because it lacks the expression.
+     *
+     * @return Error count
+     */
+    public long getErrorCount()
+    {
+        return errorCount.get();
+    }
+
+    /**
+     * Gets the fraction of compared calls whose results differed.
+     *
+     * @return Mismatch rate between 0 and 1
+     */
+    public double getMismatchRate()
+    {
+        long comparisons = comparisonCount.get();
+
+        return comparisons == 0 ? 0 : (double) mismatchCount.get() / comparisons;
+    }
+
+    /**
+     * Gets the latency of the active expression for the mirrored calls, in nanoseconds.
+     *
+     * @return Latency histogram
+     */
+    public LatencyHistogram getActiveLatency()
+    {
+        return activeLatency;
+    }
+
+    /**
+     * Gets the latency of the candidate expression for the mirrored calls, in nanoseconds.
+     *
+     * @return Latency histogram
+     */
+    public LatencyHistogram getCandidateLatency()
+    {
+        return candidateLatency;
+    }
+
+    /**
+     * Gets the first inputs whose results differed.
+     *
+     * @return Copy of the mismatch samples
+     */
+    public synchronized List<String> getMismatchSamples()
+    {
+        return Collections.unmodifiableList(new ArrayList<String>(mismatchSamples));
+    }
+
+    /**
+     * Records a completed comparison.
+     *
+     * @param input Input of the mirrored call
+     * @param mismatch Indicates whether or not the results differed
+     * @param activeNanos Latency of the active expression
+     * @param candidateNanos Latency of the candidate expression
+     */
+    void recordComparison(String input, boolean mismatch, long activeNanos, long candidateNanos)
+    {
+        comparisonCount.incrementAndGet();
+        activeLatency.record(activeNanos);
+        candidateLatency.record(candidateNanos);
+
+        if (mismatch)
+        {
+            mismatchCount.incrementAndGet();
+
+            synchronized (this)
+            {
+                if (mismatchSamples.size() < maxMismatchSamples)
+                {
+                    mismatchSamples.add(input);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a mirrored call the candidate could not answer.
+     */
+    void recordError()
+    {
+        errorCount.incrementAndGet();
+    }
+}
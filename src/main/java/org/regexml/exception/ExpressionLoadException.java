@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.exception;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exception indicating that a set of expressions files could not be loaded, because some files failed to load or
+ * several files define the same expression ID.
+ */
+public class ExpressionLoadException extends RuntimeException
+{
+    private List<String> problems;
+
+    /**
+     * Constructs a new expression load exception.
+     *
+     * @param message Error message
+     * @param problems Description of every failed file and conflicting ID
+     * @param e First exception thrown while loading a file, or null
+     */
+    public ExpressionLoadException(String message, List<String> problems, Throwable e)
+    {
+        super(message, e);
+        this.problems = Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Gets the description of every failed file and conflicting ID.
+     *
+     * @return Problem descriptions
+     */
+    public List<String> getProblems()
+    {
+        return problems;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Default metrics implementation that keeps per-expression statistics in memory. Invocation and match counts are
+ * recorded for every call while latency is sampled once every <i>sampleInterval</i> calls on each thread.
+ */
+public class DefaultExpressionMetrics implements ExpressionMetrics
+{
+    private ConcurrentMap<String, ExpressionStats> statsMap = new ConcurrentHashMap<String, ExpressionStats>();
+    private volatile int sampleInterval;
+    private ThreadLocal<int[]> sampleCounter = new ThreadLocal<int[]>()
+    {
+        protected int[] initialValue()
+        {
+            return new int[1];
+        }
+    };
+
+    /**
+     * Constructs a metrics object that times every invocation.
+     */
+    public DefaultExpressionMetrics()
+    {
+        this(1);
+    }
+
+    /**
+     * Constructs a metrics object that times one in every <i>sampleInterval</i> invocations.
+     *
+     * @param sampleInterval Number of invocations per timed invocation (0 disables timing)
+     */
+    public DefaultExpressionMetrics(int sampleInterval)
+    {
+        setSampleInterval(sampleInterval);
+    }
+
+    /**
+     * Gets the number of invocations per timed invocation.
+     *
+     * @return Sample interval (0 indicates timing is disabled)
+     */
+    public int getSampleInterval()
+    {
+        return sampleInterval;
+    }
+
+    /**
+     * Sets the number of invocations per timed invocation.
+     *
+     * @param sampleInterval Sample interval (0 disables timing)
+     */
+    public void setSampleInterval(int sampleInterval)
+    {
+        if (sampleInterval < 0)
+        {
+            throw new IllegalArgumentException("Sample interval must not be negative: " + sampleInterval);
+        }
+
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Indicates whether or not the next invocation on the current thread should be timed.
+     *
+     * @return True if the next invocation should be timed
+     */
+    public boolean sample()
+    {
+        int interval = sampleInterval;
+
+        if (interval <= 1)
+        {
+            return interval == 1;
+        }
+
+        int[] counter = sampleCounter.get();
+
+        if (++counter[0] >= interval)
+        {
+            counter[0] = 0;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Records a single invocation of an expression.
+     *
+     * @param id ID of expression
+     * @param matched Indicates whether or not the expression matched
+     * @param elapsedNanos Elapsed matching time in nanoseconds or -1 if the invocation was not sampled
+     */
+    public void recordInvocation(String id, boolean matched, long elapsedNanos)
+    {
+        ExpressionStats stats = statsMap.get(id);
+
+        if (stats == null)
+        {
+            ExpressionStats newStats = new ExpressionStats(id);
+            stats = statsMap.putIfAbsent(id, newStats);
+
+            if (stats == null)
+            {
+                stats = newStats;
+            }
+        }
+
+        stats.record(matched, elapsedNanos);
+    }
+
+    /**
+     * Gets the statistics for the given expression. Only invocations create statistics, so querying an expression
+     * that was never invoked, or an unknown ID, does not add an entry.
+     *
+     * @param id ID of expression
+     * @return Expression statistics, empty if the expression has not been invoked
+     */
+    public ExpressionStats getStats(String id)
+    {
+        ExpressionStats stats = statsMap.get(id);
+
+        return stats == null ? new ExpressionStats(id) : stats;
+    }
+
+    /**
+     * Gets the statistics for all expressions invoked so far.
+     *
+     * @return Expression statistics
+     */
+    public Collection<ExpressionStats> getAllStats()
+    {
+        return Collections.unmodifiableCollection(statsMap.values());
+    }
+
+    /**
+     * Clears the statistics of all expressions.
+     */
+    public void reset()
+    {
+        for (ExpressionStats stats : statsMap.values())
+        {
+            stats.reset();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.metrics;
+
+/**
+ * Receives timing events from the expression loading pipeline and from slow matches. Implementations may forward
+ * these events to a profiler, for example as Java Flight Recorder events on JVMs that provide the jdk.jfr API, so that
+ * startup cost and tail latency can be correlated with GC and thread activity. Callbacks are made on the thread that
+ * loads the factory or performs the match and must therefore return quickly.
+ */
+public interface ExpressionEventListener
+{
+    /**
+     * Called after an expressions file has been validated against the regexml schema.
+     *
+     * @param resourceName Name of the expressions file
+     * @param elapsedNanos Validation time in nanoseconds
+     */
+    public void documentValidated(String resourceName, long elapsedNanos);
+
+    /**
+     * Called after a single expression's regular expression has been compiled.
+     *
+     * @param id ID of expression
+     * @param regExLength Length of the generated regular expression string
+     * @param elapsedNanos Compilation time in nanoseconds
+     */
+    public void expressionCompiled(String id, int regExLength, long elapsedNanos);
+
+    /**
+     * Called after an expressions file has been parsed and all of its expressions compiled.
+     *
+     * @param resourceName Name of the expressions file
+     * @param expressionCount Number of expressions in the file
+     * @param elapsedNanos Parsing time in nanoseconds, including compilation
+     */
+    public void documentParsed(String resourceName, int expressionCount, long elapsedNanos);
+
+    /**
+     * Called after an expression factory has been fully constructed.
+     *
+     * @param resourceName Name of the expressions file
+     * @param expressionCount Number of expressions in the factory
+     * @param elapsedNanos Construction time in nanoseconds, including validation and parsing
+     */
+    public void factoryLoaded(String resourceName, int expressionCount, long elapsedNanos);
+
+    /**
+     * Called after a match took longer than the configured threshold.
+     *
+     * @param id ID of expression
+     * @param inputLength Length of the input
+     * @param elapsedNanos Matching time in nanoseconds
+     */
+    public void slowMatch(String id, int inputLength, long elapsedNanos);
+}
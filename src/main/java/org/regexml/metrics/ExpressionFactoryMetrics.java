@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.metrics;
+
+import org.regexml.ExpressionFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Exposes the metrics of an expression factory through JMX. Installing an instance attaches its metrics to every
+ * expression in the factory.
+ */
+public class ExpressionFactoryMetrics implements ExpressionFactoryMetricsMBean
+{
+    private static final String DOMAIN = "org.regexml";
+
+    private ExpressionFactory expressionFactory;
+    private DefaultExpressionMetrics metrics;
+
+    /**
+     * Constructs a new factory metrics object and attaches the given metrics to every expression in the factory.
+     *
+     * @param expressionFactory Expression factory to instrument
+     * @param metrics Metrics recorded by the factory's expressions
+     */
+    public ExpressionFactoryMetrics(ExpressionFactory expressionFactory, DefaultExpressionMetrics metrics)
+    {
+        this.expressionFactory = expressionFactory;
+        this.metrics = metrics;
+
+        expressionFactory.setMetrics(metrics);
+    }
+
+    /**
+     * Registers this object with the platform MBean server.
+     *
+     * @param name Name distinguishing this factory from others in the same JVM
+     * @return Object name under which this object was registered
+     * @throws JMException Indicates that registration failed
+     */
+    public ObjectName register(String name) throws JMException
+    {
+        return register(ManagementFactory.getPlatformMBeanServer(), name);
+    }
+
+    /**
+     * Registers this object with the given MBean server.
+     *
+     * @param server MBean server
+     * @param name Name distinguishing this factory from others in the same MBean server
+     * @return Object name under which this object was registered
+     * @throws JMException Indicates that registration failed
+     */
+    public ObjectName register(MBeanServer server, String name) throws JMException
+    {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=ExpressionFactory,name=" + ObjectName.quote(name));
+        server.registerMBean(this, objectName);
+
+        return objectName;
+    }
+
+    /**
+     * Gets the metrics recorded by the factory's expressions.
+     *
+     * @return Expression metrics
+     */
+    public DefaultExpressionMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Gets the IDs of all expressions in the factory.
+     *
+     * @return Expression IDs in alphabetical order
+     */
+    public String[] getExpressionIds()
+    {
+        Set<String> ids = new TreeSet<String>(expressionFactory.getExpressionIds());
+
+        return ids.toArray(new String[ids.size()]);
+    }
+
+    /**
+     * Gets the number of invocations per timed invocation.
+     *
+     * @return Sample interval (0 indicates timing is disabled)
+     */
+    public int getSampleInterval()
+    {
+        return metrics.getSampleInterval();
+    }
+
+    /**
+     * Sets the number of invocations per timed invocation.
+     *
+     * @param sampleInterval Sample interval (0 disables timing)
+     */
+    public void setSampleInterval(int sampleInterval)
+    {
+        metrics.setSampleInterval(sampleInterval);
+    }
+
+    /**
+     * Gets the number of times the given expression was invoked.
+     *
+     * @param id ID of expression
+     * @return Invocation count
+     */
+    public long getInvocationCount(String id)
+    {
+        return metrics.getStats(id).getInvocationCount();
+    }
+
+    /**
+     * Gets the number of invocations of the given expression that matched.
+     *
+     * @param id ID of expression
+     * @return Match count
+     */
+    public long getMatchCount(String id)
+    {
+        return metrics.getStats(id).getMatchCount();
+    }
+
+    /**
+     * Gets the mean sampled matching time of the given expression.
+     *
+     * @param id ID of expression
+     * @return Mean latency in nanoseconds
+     */
+    public double getMeanLatency(String id)
+    {
+        return metrics.getStats(id).getLatency().getMean();
+    }
+
+    /**
+     * Gets an upper bound for the given percentile of sampled matching times of the given expression.
+     *
+     * @param id ID of expression
+     * @param percentile Percentile between 0 and 100
+     * @return Latency in nanoseconds
+     */
+    public long getLatencyPercentile(String id, double percentile)
+    {
+        return metrics.getStats(id).getLatency().getPercentile(percentile);
+    }
+
+    /**
+     * Gets a one line summary of the given expression's metrics.
+     *
+     * @param id ID of expression
+     * @return Metrics summary
+     */
+    public String getSummary(String id)
+    {
+        ExpressionStats stats = metrics.getStats(id);
+        LatencyHistogram latency = stats.getLatency();
+
+        return id + ": invocations=" + stats.getInvocationCount() + ", matches=" + stats.getMatchCount() +
+            ", sampled=" + latency.getCount() + ", p50=" + latency.getPercentile(50) + "ns, p99=" +
+            latency.getPercentile(99) + "ns, max=" + latency.getMax() + "ns";
+    }
+
+    /**
+     * Clears the metrics of all expressions.
+     */
+    public void reset()
+    {
+        metrics.reset();
+    }
+}
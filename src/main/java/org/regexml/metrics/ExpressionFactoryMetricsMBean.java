@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.metrics;
+
+/**
+ * JMX management interface exposing the metrics of every expression in an expression factory.
+ */
+public interface ExpressionFactoryMetricsMBean
+{
+    /**
+     * Gets the IDs of all expressions in the factory.
+     *
+     * @return Expression IDs in alphabetical order
+     */
+    public String[] getExpressionIds();
+
+    /**
+     * Gets the number of invocations per timed invocation.
+     *
+     * @return Sample interval (0 indicates timing is disabled)
+     */
+    public int getSampleInterval();
+
+    /**
+     * Sets the number of invocations per timed invocation.
+     *
+     * @param sampleInterval Sample interval (0 disables timing)
+     */
+    public void setSampleInterval(int sampleInterval);
+
+    /**
+     * Gets the number of times the given expression was invoked.
+     *
+     * @param id ID of expression
+     * @return Invocation count
+     */
+    public long getInvocationCount(String id);
+
+    /**
+     * Gets the number of invocations of the given expression that matched.
+     *
+     * @param id ID of expression
+     * @return Match count
+     */
+    public long getMatchCount(String id);
+
+    /**
+     * Gets the mean sampled matching time of the given expression.
+     *
+     * @param id ID of expression
+     * @return Mean latency in nanoseconds
+     */
+    public double getMeanLatency(String id);
+
+    /**
+     * Gets an upper bound for the given percentile of sampled matching times of the given expression.
+     *
+     * @param id ID of expression
+     * @param percentile Percentile between 0 and 100
+     * @return Latency in nanoseconds
+     */
+    public long getLatencyPercentile(String id, double percentile);
+
+    /**
+     * Gets a one line summary of the given expression's metrics.
+     *
+     * @param id ID of expression
+     * @return Metrics summary
+     */
+    public String getSummary(String id);
+
+    /**
+     * Clears the metrics of all expressions.
+     */
+    public void reset();
+}
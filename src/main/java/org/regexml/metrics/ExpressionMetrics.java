@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.metrics;
+
+/**
+ * Service provider interface for recording expression matching metrics. Implementations must be thread safe since a
+ * single instance is typically shared by every expression in a factory.
+ */
+public interface ExpressionMetrics
+{
+    /**
+     * Indicates whether or not the next invocation should be timed. Returning false for most invocations keeps the
+     * cost of reading the clock off the matching path.
+     *
+     * @return True if the next invocation should be timed
+     */
+    public boolean sample();
+
+    /**
+     * Records a single invocation of an expression.
+     *
+     * @param id ID of expression
+     * @param matched Indicates whether or not the expression matched
+     * @param elapsedNanos Elapsed matching time in nanoseconds or -1 if the invocation was not sampled
+     */
+    public void recordInvocation(String id, boolean matched, long elapsedNanos);
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Invocation counts and sampled latencies for a single expression.
+ */
+public class ExpressionStats
+{
+    private String id;
+    private AtomicLong invocationCount = new AtomicLong();
+    private AtomicLong matchCount = new AtomicLong();
+    private LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * Constructs a new statistics object.
+     *
+     * @param id ID of expression
+     */
+    public ExpressionStats(String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * Gets the ID of the expression these statistics describe.
+     *
+     * @return Expression ID
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets the number of times the expression was invoked.
+     *
+     * @return Invocation count
+     */
+    public long getInvocationCount()
+    {
+        return invocationCount.get();
+    }
+
+    /**
+     * Gets the number of invocations that matched.
+     *
+     * @return Match count
+     */
+    public long getMatchCount()
+    {
+        return matchCount.get();
+    }
+
+    /**
+     * Gets the histogram of sampled matching times in nanoseconds.
+     *
+     * @return Latency histogram
+     */
+    public LatencyHistogram getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * Records a single invocation.
+     *
+     * @param matched Indicates whether or not the expression matched
+     * @param elapsedNanos Elapsed matching time in nanoseconds or -1 if the invocation was not sampled
+     */
+    void record(boolean matched, long elapsedNanos)
+    {
+        invocationCount.incrementAndGet();
+
+        if (matched)
+        {
+            matchCount.incrementAndGet();
+        }
+
+        if (elapsedNanos >= 0)
+        {
+            latency.record(elapsedNanos);
+        }
+    }
+
+    /**
+     * Clears all counters and the latency histogram.
+     */
+    void reset()
+    {
+        invocationCount.set(0);
+        matchCount.set(0);
+        latency.reset();
+    }
+}
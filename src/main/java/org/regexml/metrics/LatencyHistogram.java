@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with logarithmic buckets. Each power of two is divided into a fixed number of linear
+ * sub-buckets, so recorded values keep a relative precision of about 12% regardless of magnitude while the whole
+ * histogram needs only a few kilobytes.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private AtomicLong totalCount = new AtomicLong();
+    private AtomicLong totalValue = new AtomicLong();
+    private AtomicLong maxValue = new AtomicLong();
+
+    /**
+     * Records a single value.
+     *
+     * @param value Value to record (negative values are recorded as zero)
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+        {
+            value = 0;
+        }
+
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+
+        long max = maxValue.get();
+
+        while (value > max && !maxValue.compareAndSet(max, value))
+        {
+            max = maxValue.get();
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return Number of values
+     */
+    public long getCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return Maximum value or 0 if no values were recorded
+     */
+    public long getMax()
+    {
+        return maxValue.get();
+    }
+
+    /**
+     * Gets the mean of all recorded values.
+     *
+     * @return Mean value or 0 if no values were recorded
+     */
+    public double getMean()
+    {
+        long count = totalCount.get();
+
+        return count == 0 ? 0 : (double) totalValue.get() / count;
+    }
+
+    /**
+     * Gets an upper bound for the given percentile of recorded values.
+     *
+     * @param percentile Percentile between 0 and 100
+     * @return Upper bound of the bucket containing the percentile or 0 if no values were recorded
+     */
+    public long getPercentile(double percentile)
+    {
+        long count = totalCount.get();
+
+        if (count == 0)
+        {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts.get(i);
+
+            if (seen >= target)
+            {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently with a reset may be partially retained.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts.set(i, 0);
+        }
+
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    /**
+     * Computes the bucket for the given value.
+     *
+     * @param value Non-negative value
+     * @return Bucket index
+     */
+    private static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> exponent) - SUB_BUCKETS;
+
+        return (exponent + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Computes the largest value that falls into the given bucket.
+     *
+     * @param index Bucket index
+     * @return Upper bound of bucket
+     */
+    private static long bucketUpperBound(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS - 1;
+        long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((subBucket + 1) << exponent) - 1;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.pipeline;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.ExpressionMatch;
+import org.regexml.exception.ExpressionNotFoundException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+
+/**
+ * Finds every match of a set of expressions in one large document by splitting the document into segments and
+ * scanning each segment for each expression as a separate task on an executor. Idle threads take the next pending
+ * task from the executor's queue, so an expensive expression or segment does not hold up the rest of the work.
+ * <p>
+ * The results are the same as scanning the whole document with Matcher.find() one expression at a time. A segment
+ * scan reports the matches that start inside the segment; the matcher sees the text around the segment, so
+ * lookarounds, word boundaries and anchors behave as they would on the whole document, and a match that reaches past
+ * the end of the segment is completed. Where a match of one segment overlaps the next, the next segment is rescanned
+ * from the end of that match until its results line up with the sequential ones. Expressions using \G are not
+ * supported, since \G matches at the start of every segment.
+ * <p>
+ * The matcher does not own the executor.
+ */
+public class DocumentMatcher
+{
+    private Expression[] expressions;
+    private ExecutorService executor;
+    private int segmentSize = 64 * 1024;
+    private int overlap = 1024;
+
+    /**
+     * Constructs a new document matcher.
+     *
+     * @param factory Factory holding the expressions
+     * @param ids IDs of the expressions to find in each document
+     * @param executor Executor running the segment scans, whose thread count sets the parallelism
+     * @throws ExpressionNotFoundException Indicates that a requested expression was not found
+     */
+    public DocumentMatcher(ExpressionFactory factory, String[] ids, ExecutorService executor)
+        throws ExpressionNotFoundException
+    {
+        this.expressions = new Expression[ids.length];
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            expressions[i] = factory.getExpression(ids[i]);
+        }
+
+        this.executor = executor;
+    }
+
+    /**
+     * Sets the number of characters in each segment. Smaller segments spread the work of a few expressions over more
+     * threads at the cost of more tasks and boundary checks.
+     *
+     * @param segmentSize Segment size in characters
+     */
+    public void setSegmentSize(int segmentSize)
+    {
+        this.segmentSize = Math.max(1, segmentSize);
+    }
+
+    /**
+     * Sets the number of characters past the end of a segment that a segment scan reads before checking whether a
+     * match could continue further. The scan keeps going until the outcome is known, so this only needs to cover
+     * typical match lengths.
+     *
+     * @param overlap Overlap in characters
+     */
+    public void setOverlap(int overlap)
+    {
+        this.overlap = Math.max(1, overlap);
+    }
+
+    /**
+     * Finds every match of the expressions in a document.
+     *
+     * @param document Document to search
+     * @return Matches of each expression in document order, keyed by expression ID in the order given when the matcher
+     * was constructed
+     * @throws InterruptedException Indicates that the thread was interrupted while waiting for the scans
+     */
+    public Map<String, List<ExpressionMatch>> findAll(CharSequence document) throws InterruptedException
+    {
+        final String text = document.toString();
+        int segmentCount = Math.max(1, (int) (((long) text.length() + segmentSize - 1) / segmentSize));
+        List<Callable<List<int[]>>> tasks = new ArrayList<Callable<List<int[]>>>(expressions.length * segmentCount);
+
+        for (final Expression expression : expressions)
+        {
+            for (int segment = 0; segment < segmentCount; segment++)
+            {
+                final int start = getSegmentStart(segment, text.length());
+                final int end = getSegmentStart(segment + 1, text.length());
+
+                tasks.add(new Callable<List<int[]>>()
+                {
+                    public List<int[]> call()
+                    {
+                        return scan(createMatcher(expression, text), text.length(), start, end, null);
+                    }
+                });
+            }
+        }
+
+        List<Future<List<int[]>>> futures = executor.invokeAll(tasks);
+        Map<String, List<ExpressionMatch>> results = new LinkedHashMap<String, List<ExpressionMatch>>();
+
+        for (int i = 0; i < expressions.length; i++)
+        {
+            List<int[]> offsets = merge(expressions[i], text, futures.subList(i * segmentCount,
+                (i + 1) * segmentCount));
+            List<ExpressionMatch> matches = new ArrayList<ExpressionMatch>(offsets.size());
+
+            for (int[] match : offsets)
+            {
+                matches.add(new ExpressionMatch(text, match));
+            }
+
+            results.put(expressions[i].getId(), Collections.unmodifiableList(matches));
+        }
+
+        return results;
+    }
+
+    /**
+     * Gets the index at which a segment starts, where the segment after the last one starts at the end of the
+     * document.
+     *
+     * @param segment Segment number
+     * @param length Length of the document
+     * @return Start index
+     */
+    private int getSegmentStart(int segment, int length)
+    {
+        return (int) Math.min(length, (long) segment * segmentSize);
+    }
+
+    /**
+     * Joins the segment results of an expression, repairing the segments whose start is covered by a match of the
+     * preceding segment.
+     *
+     * @param expression Expression
+     * @param text Document
+     * @param futures Results of the segment scans in document order
+     * @return Offsets of every match in document order
+     * @throws InterruptedException Indicates that the thread was interrupted while waiting for a scan
+     */
+    private List<int[]> merge(Expression expression, String text, List<Future<List<int[]>>> futures)
+        throws InterruptedException
+    {
+        List<int[]> merged = new ArrayList<int[]>();
+        Matcher matcher = null;
+        int next = 0;
+
+        for (int segment = 0; segment < futures.size(); segment++)
+        {
+            List<int[]> matches = getResult(futures.get(segment));
+            int start = getSegmentStart(segment, text.length());
+            int end = getSegmentStart(segment + 1, text.length());
+
+            if (next <= start)
+            {
+                merged.addAll(matches);
+            }
+            else if (next < end || end == text.length())
+            {
+                if (matcher == null)
+                {
+                    matcher = createMatcher(expression, text);
+                }
+
+                merged.addAll(scan(matcher, text.length(), next, end, matches));
+            }
+
+            if (!merged.isEmpty())
+            {
+                int[] last = merged.get(merged.size() - 1);
+                next = last[1] == last[0] ? last[1] + 1 : last[1]; //same rule as Matcher.find() after an empty match
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * Creates a matcher that sees the whole document while searching a region of it.
+     *
+     * @param expression Expression
+     * @param text Document
+     * @return Matcher
+     */
+    private static Matcher createMatcher(Expression expression, String text)
+    {
+        Matcher matcher = expression.getPattern().matcher(text);
+        matcher.useTransparentBounds(true);
+        matcher.useAnchoringBounds(false);
+
+        return matcher;
+    }
+
+    /**
+     * Finds the matches starting between two indexes. The search region covers the overlap past the end index and is
+     * widened whenever the matcher reports that more input could have changed the outcome. When known matches are
+     * given, the scan stops at the first match also found among them and takes the rest from the known matches, since
+     * the searches continue identically from there.
+     *
+     * @param matcher Matcher over the document
+     * @param length Length of the document
+     * @param from Index at which the search starts
+     * @param to Index before which matches must start, unless it is the end of the document
+     * @param known Matches found by an earlier scan of the same segment, in document order, or null
+     * @return Offsets of each match
+     */
+    private List<int[]> scan(Matcher matcher, int length, int from, int to, List<int[]> known)
+    {
+        List<int[]> matches = new ArrayList<int[]>();
+        int position = from;
+        int limit = to == length ? length : (int) Math.min(length, (long) to + overlap);
+
+        while (position <= length)
+        {
+            boolean found;
+
+            while (true)
+            {
+                matcher.region(position, limit);
+                found = matcher.find();
+
+                if (limit == length || !matcher.hitEnd())
+                {
+                    break;
+                }
+
+                limit = (int) Math.min(length, limit + Math.max((long) overlap, (long) limit - position));
+            }
+
+            if (!found || (matcher.start() >= to && to < length))
+            {
+                break;
+            }
+
+            if (known != null)
+            {
+                int index = indexOf(known, matcher.start(), matcher.end());
+
+                if (index >= 0)
+                {
+                    matches.addAll(known.subList(index, known.size()));
+                    break;
+                }
+            }
+
+            int[] offsets = new int[(matcher.groupCount() + 1) * 2];
+
+            for (int i = 0; i <= matcher.groupCount(); i++)
+            {
+                offsets[i * 2] = matcher.start(i);
+                offsets[i * 2 + 1] = matcher.end(i);
+            }
+
+            matches.add(offsets);
+            position = matcher.end() == matcher.start() ? matcher.end() + 1 : matcher.end();
+        }
+
+        return matches;
+    }
+
+    /**
+     * Finds a match with the given bounds among matches sorted by start index.
+     *
+     * @param matches Matches in document order
+     * @param start Start index of the match
+     * @param end End index of the match
+     * @return Index of the match in the list or -1 if it is not present
+     */
+    private static int indexOf(List<int[]> matches, int start, int end)
+    {
+        int low = 0;
+        int high = matches.size() - 1;
+
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int[] match = matches.get(middle);
+
+            if (match[0] < start)
+            {
+                low = middle + 1;
+            }
+            else if (match[0] > start)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return match[1] == end ? middle : -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Gets the result of a scan, rethrowing an error raised by the scan in the calling thread.
+     *
+     * @param future Pending scan
+     * @return Offsets of each match
+     * @throws InterruptedException Indicates that the thread was interrupted while waiting for the scan
+     */
+    private static List<int[]> getResult(Future<List<int[]>> future) throws InterruptedException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+
+            throw new IllegalStateException("Segment scan failed", cause);
+        }
+    }
+}
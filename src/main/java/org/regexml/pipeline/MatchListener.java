@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.pipeline;
+
+import org.regexml.ExpressionMatch;
+
+import java.util.Map;
+
+/**
+ * Receives the results of a MatchProcessor. In ordered mode the methods are called by one thread at a time in
+ * submission order; in unordered mode they may be called concurrently by the processor's worker threads.
+ */
+public interface MatchListener
+{
+    /**
+     * Called with the result of matching one input.
+     *
+     * @param sequence Position of the input in submission order, starting at 0
+     * @param input Input that was matched
+     * @param matches Matches keyed by expression ID, containing only the expressions that matched
+     */
+    void onResult(long sequence, CharSequence input, Map<String, ExpressionMatch> matches);
+
+    /**
+     * Called instead of onResult() when matching an input failed, and after onResult() if it threw an exception.
+     *
+     * @param sequence Position of the input in submission order, starting at 0
+     * @param input Input that was matched
+     * @param error Exception or error thrown while matching
+     */
+    void onError(long sequence, CharSequence input, Throwable error);
+
+    /**
+     * Called once after the processor is closed and every submitted input has been reported.
+     */
+    void onComplete();
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.pipeline;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.ExpressionMatch;
+import org.regexml.exception.ExpressionNotFoundException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches a stream of inputs against a set of expressions on an executor and reports the results to a listener.
+ * Inputs are grouped into batches that are matched in parallel. Producers are held back by a bounded number of
+ * pending inputs: submit() waits and offer() gives up while the limit is reached, so a high-rate producer cannot
+ * flood a slow rule set or listener.
+ * <p>
+ * The processor does not own the executor; closing the processor waits for outstanding results but leaves the executor
+ * running.
+ */
+public class MatchProcessor
+{
+    private Expression[] expressions;
+    private Executor executor;
+    private MatchListener listener;
+    private int maxPending;
+    private int batchSize;
+    private boolean ordered;
+    private Semaphore permits;
+    private final Object batchLock = new Object();
+    private List<CharSequence> batch;
+    private long nextSequence;
+    private final Object emitLock = new Object();
+    private Map<Long, Batch> completed = new HashMap<Long, Batch>();
+    private long nextEmitSequence;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new processor.
+     *
+     * @param factory Factory holding the expressions
+     * @param ids IDs of the expressions each input is matched against
+     * @param executor Executor running the match tasks, whose thread count sets the parallelism
+     * @param options Batching and ordering options
+     * @param listener Listener receiving the results
+     * @throws ExpressionNotFoundException Indicates that a requested expression was not found
+     */
+    public MatchProcessor(ExpressionFactory factory, String[] ids, Executor executor, ProcessorOptions options,
+        MatchListener listener) throws ExpressionNotFoundException
+    {
+        this.expressions = new Expression[ids.length];
+
+        for (int i = 0; i < ids.length; i++)
+        {
+            expressions[i] = factory.getExpression(ids[i]);
+        }
+
+        this.executor = executor;
+        this.listener = listener;
+        this.maxPending = Math.max(1, options.getMaxPending());
+        this.batchSize = Math.max(1, Math.min(options.getBatchSize(), maxPending));
+        this.ordered = options.isOrdered();
+        this.permits = new Semaphore(maxPending);
+        this.batch = new ArrayList<CharSequence>(batchSize);
+    }
+
+    /**
+     * Submits an input, waiting while the maximum number of inputs is pending.
+     *
+     * @param input Input to match
+     * @throws InterruptedException Indicates that the thread was interrupted while waiting
+     * @throws IllegalStateException Indicates that the processor is closed
+     */
+    public void submit(CharSequence input) throws InterruptedException, IllegalStateException
+    {
+        checkOpen();
+        permits.acquire();
+        enqueue(input);
+    }
+
+    /**
+     * Submits an input if it can be accepted within the given time.
+     *
+     * @param input Input to match
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if the input was accepted, false if the maximum number of inputs remained pending
+     * @throws InterruptedException Indicates that the thread was interrupted while waiting
+     * @throws IllegalStateException Indicates that the processor is closed
+     */
+    public boolean offer(CharSequence input, long timeout, TimeUnit unit)
+        throws InterruptedException, IllegalStateException
+    {
+        checkOpen();
+
+        if (!permits.tryAcquire(timeout, unit))
+        {
+            return false;
+        }
+
+        enqueue(input);
+
+        return true;
+    }
+
+    /**
+     * Dispatches the current partial batch, if any, without waiting for it to fill up.
+     */
+    public void flush()
+    {
+        synchronized (batchLock)
+        {
+            dispatch();
+        }
+    }
+
+    /**
+     * Gets the number of submitted inputs whose results have not been reported yet.
+     *
+     * @return Number of pending inputs
+     */
+    public int getPendingCount()
+    {
+        return maxPending - permits.availablePermits();
+    }
+
+    /**
+     * Stops accepting inputs, waits until every submitted input has been reported and notifies the listener.
+     *
+     * @throws InterruptedException Indicates that the thread was interrupted while waiting
+     */
+    public void close() throws InterruptedException
+    {
+        synchronized (batchLock)
+        {
+            if (closed)
+            {
+                return;
+            }
+
+            closed = true;
+            dispatch();
+        }
+
+        permits.acquire(maxPending);
+        permits.release(maxPending);
+        listener.onComplete();
+    }
+
+    /**
+     * Verifies that the processor accepts inputs.
+     *
+     * @throws IllegalStateException Indicates that the processor is closed
+     */
+    private void checkOpen() throws IllegalStateException
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("Match processor is closed");
+        }
+    }
+
+    /**
+     * Adds an input to the current batch, dispatching the batch when it is full. The caller holds a permit for the
+     * input.
+     *
+     * @param input Input to match
+     */
+    private void enqueue(CharSequence input)
+    {
+        synchronized (batchLock)
+        {
+            if (closed)
+            {
+                permits.release();
+                throw new IllegalStateException("Match processor is closed");
+            }
+
+            batch.add(input);
+
+            if (batch.size() >= batchSize)
+            {
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Hands the current batch to the executor. The caller holds the batch lock.
+     */
+    private void dispatch()
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        final Batch dispatched = new Batch(nextSequence, batch);
+        nextSequence += batch.size();
+        batch = new ArrayList<CharSequence>(batchSize);
+
+        try
+        {
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        dispatched.match(expressions);
+                    }
+                    finally
+                    {
+                        complete(dispatched); //otherwise the batch's permits and sequence numbers would be lost
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            dispatched.fail(e);
+            complete(dispatched);
+        }
+    }
+
+    /**
+     * Reports the results of a matched batch and releases its permits.
+     *
+     * @param matched Matched batch
+     */
+    private void complete(Batch matched)
+    {
+        if (!ordered)
+        {
+            try
+            {
+                matched.report(listener);
+            }
+            finally
+            {
+                permits.release(matched.size());
+            }
+
+            return;
+        }
+
+        synchronized (emitLock)
+        {
+            completed.put(matched.getSequence(), matched);
+
+            for (Batch next = completed.remove(nextEmitSequence); next != null;
+                next = completed.remove(nextEmitSequence))
+            {
+                try
+                {
+                    next.report(listener);
+                }
+                finally
+                {
+                    nextEmitSequence += next.size(); //later batches must not wait on a batch that failed to report
+                    permits.release(next.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Inputs matched together by one task, along with their results.
+     */
+    private static class Batch
+    {
+        private long sequence;
+        private List<CharSequence> inputs;
+        private List<Map<String, ExpressionMatch>> results;
+        private Throwable[] errors;
+
+        /**
+         * Constructs a new batch.
+         *
+         * @param sequence Sequence number of the first input
+         * @param inputs Inputs in submission order
+         */
+        public Batch(long sequence, List<CharSequence> inputs)
+        {
+            this.sequence = sequence;
+            this.inputs = inputs;
+            this.results = new ArrayList<Map<String, ExpressionMatch>>(inputs.size());
+            this.errors = new Throwable[inputs.size()];
+        }
+
+        /**
+         * Gets the sequence number of the first input.
+         *
+         * @return Sequence number
+         */
+        public long getSequence()
+        {
+            return sequence;
+        }
+
+        /**
+         * Gets the number of inputs.
+         *
+         * @return Number of inputs
+         */
+        public int size()
+        {
+            return inputs.size();
+        }
+
+        /**
+         * Matches every input against the expressions. An exception or error, such as a StackOverflowError on a long
+         * input, is recorded for the input that caused it and the remaining inputs are still matched.
+         *
+         * @param expressions Expressions to match
+         */
+        public void match(Expression[] expressions)
+        {
+            for (int i = 0; i < inputs.size(); i++)
+            {
+                Map<String, ExpressionMatch> matches = new HashMap<String, ExpressionMatch>();
+
+                try
+                {
+                    for (Expression expression : expressions)
+                    {
+                        ExpressionMatch match = expression.find(inputs.get(i));
+
+                        if (match != null)
+                        {
+                            matches.put(expression.getId(), match);
+                        }
+                    }
+                }
+                catch (Throwable e)
+                {
+                    errors[i] = e;
+                }
+
+                results.add(matches);
+            }
+        }
+
+        /**
+         * Marks every input as failed.
+         *
+         * @param error Error to report for each input
+         */
+        public void fail(RuntimeException error)
+        {
+            for (int i = 0; i < inputs.size(); i++)
+            {
+                errors[i] = error;
+                results.add(null);
+            }
+        }
+
+        /**
+         * Reports the results to a listener in submission order. A listener exception affects only the input being
+         * reported: an exception from onResult() is passed to onError() for the same input, and an exception from
+         * onError() is dropped, since there is nowhere left to report it.
+         *
+         * @param listener Listener receiving the results
+         */
+        public void report(MatchListener listener)
+        {
+            for (int i = 0; i < inputs.size(); i++)
+            {
+                Throwable error = errors[i];
+
+                if (error == null)
+                {
+                    try
+                    {
+                        listener.onResult(sequence + i, inputs.get(i), results.get(i));
+                    }
+                    catch (RuntimeException e)
+                    {
+                        error = e;
+                    }
+                }
+
+                if (error != null)
+                {
+                    try
+                    {
+                        listener.onError(sequence + i, inputs.get(i), error);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        //the listener cannot take the error either
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.pipeline;
+
+/**
+ * Options controlling how a MatchProcessor batches inputs and reports results.
+ */
+public class ProcessorOptions
+{
+    private int maxPending = 1024;
+    private int batchSize = 64;
+    private boolean ordered = true;
+
+    /**
+     * Gets the maximum number of submitted inputs whose results have not been reported yet.
+     *
+     * @return Maximum number of pending inputs
+     */
+    public int getMaxPending()
+    {
+        return maxPending;
+    }
+
+    /**
+     * Sets the maximum number of submitted inputs whose results have not been reported yet. Once this many inputs are
+     * pending, submitting another one waits until a result has been reported, so a fast producer is held back by the
+     * slowest of the expressions, the executor and the listener.
+     *
+     * @param maxPending Maximum number of pending inputs
+     */
+    public void setMaxPending(int maxPending)
+    {
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Gets the number of inputs matched together by one task.
+     *
+     * @return Batch size
+     */
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of inputs matched together by one task. Larger batches reduce task overhead for short inputs;
+     * a partial batch is dispatched by flush() or close().
+     *
+     * @param batchSize Batch size
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Indicates whether or not results are reported in submission order.
+     *
+     * @return True indicates ordered results
+     */
+    public boolean isOrdered()
+    {
+        return ordered;
+    }
+
+    /**
+     * Sets whether or not results are reported in submission order. Unordered results are reported as soon as their
+     * batch completes, from the worker thread that matched it.
+     *
+     * @param ordered True indicates ordered results
+     */
+    public void setOrdered(boolean ordered)
+    {
+        this.ordered = ordered;
+    }
+}
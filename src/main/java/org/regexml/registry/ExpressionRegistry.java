@@ -0,0 +1,555 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.registry;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.ExpressionTemplate;
+import org.regexml.FactoryOptions;
+import org.regexml.PatternPool;
+import org.regexml.exception.ExpressionNotFoundException;
+import org.regexml.exception.TenantLimitExceededException;
+import org.regexml.metrics.ExpressionEventListener;
+import org.regexml.resource.Resource;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the expressions files of many tenants in one process. Each tenant is a namespace with its own factory, so
+ * identical IDs in different tenants do not collide, while identical regular expressions share one compiled pattern
+ * through the PatternPool. Lookups are two hash map reads regardless of the number of tenants.
+ * <p/>
+ * Every file is checked against the registry's limits once it has been parsed, before its patterns are compiled.
+ * Tenants that have not been used for the idle timeout can be unloaded with evictIdle(); they stay registered and are
+ * loaded again on their next lookup. Instances are thread safe.
+ */
+public class ExpressionRegistry
+{
+    /**
+     * Separates the tenant from the expression ID in a qualified ID.
+     */
+    public static final char NAMESPACE_SEPARATOR = ':';
+
+    private TenantLimits limits;
+    private ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<String, Tenant>();
+    private Map<String, Integer> patternReferences = new HashMap<String, Integer>();
+
+    /**
+     * Constructs a new registry with default limits.
+     */
+    public ExpressionRegistry()
+    {
+        this(new TenantLimits());
+    }
+
+    /**
+     * Constructs a new registry.
+     *
+     * @param limits Limits enforced on every tenant
+     */
+    public ExpressionRegistry(TenantLimits limits)
+    {
+        this.limits = limits;
+    }
+
+    /**
+     * Registers a tenant with default load options, replacing any previous registration.
+     *
+     * @param tenant Tenant name, which must not contain the namespace separator
+     * @param resource Tenant's expressions file
+     * @throws TenantLimitExceededException Indicates that the file exceeds a limit; a previous registration is kept
+     */
+    public void register(String tenant, Resource resource) throws TenantLimitExceededException
+    {
+        register(tenant, resource, new FactoryOptions());
+    }
+
+    /**
+     * Registers a tenant, replacing any previous registration. The file is loaded and checked immediately.
+     *
+     * @param tenant Tenant name, which must not contain the namespace separator
+     * @param resource Tenant's expressions file
+     * @param options Options used whenever the file is loaded
+     * @throws TenantLimitExceededException Indicates that the file exceeds a limit; a previous registration is kept
+     */
+    public void register(String tenant, Resource resource, FactoryOptions options) throws TenantLimitExceededException
+    {
+        if (tenant.indexOf(NAMESPACE_SEPARATOR) >= 0)
+        {
+            throw new IllegalArgumentException("Tenant name must not contain '" + NAMESPACE_SEPARATOR + "': " + tenant);
+        }
+
+        Tenant newTenant = new Tenant(tenant, resource, options);
+        newTenant.load();
+
+        Tenant previous = tenants.put(tenant, newTenant);
+
+        if (previous != null)
+        {
+            previous.unload();
+        }
+    }
+
+    /**
+     * Removes a tenant.
+     *
+     * @param tenant Tenant name
+     * @return True if the tenant was registered
+     */
+    public boolean unregister(String tenant)
+    {
+        Tenant previous = tenants.remove(tenant);
+
+        if (previous != null)
+        {
+            previous.unload();
+        }
+
+        return previous != null;
+    }
+
+    /**
+     * Retrieves an expression of a tenant, loading the tenant if it was unloaded.
+     *
+     * @param tenant Tenant name
+     * @param id ID of expression
+     * @return Expression
+     * @throws ExpressionNotFoundException Indicates that the tenant or the expression was not found
+     * @throws TenantLimitExceededException Indicates that the tenant's file changed and now exceeds a limit
+     */
+    public Expression getExpression(String tenant, String id)
+        throws ExpressionNotFoundException, TenantLimitExceededException
+    {
+        return getTenant(tenant).getFactory().getExpression(id);
+    }
+
+    /**
+     * Retrieves an expression by qualified ID, such as "tenant:id".
+     *
+     * @param qualifiedId Tenant name and expression ID joined by the namespace separator
+     * @return Expression
+     * @throws ExpressionNotFoundException Indicates that the tenant or the expression was not found
+     * @throws TenantLimitExceededException Indicates that the tenant's file changed and now exceeds a limit
+     */
+    public Expression getExpression(String qualifiedId)
+        throws ExpressionNotFoundException, TenantLimitExceededException
+    {
+        int separator = qualifiedId.indexOf(NAMESPACE_SEPARATOR);
+
+        if (separator < 0)
+        {
+            throw new ExpressionNotFoundException("Expression ID is not qualified with a tenant: " + qualifiedId);
+        }
+
+        return getExpression(qualifiedId.substring(0, separator), qualifiedId.substring(separator + 1));
+    }
+
+    /**
+     * Retrieves an expression template of a tenant, loading the tenant if it was unloaded.
+     *
+     * @param tenant Tenant name
+     * @param id ID of expression
+     * @return Expression template
+     * @throws ExpressionNotFoundException Indicates that the tenant or the template was not found
+     * @throws TenantLimitExceededException Indicates that the tenant's file changed and now exceeds a limit
+     */
+    public ExpressionTemplate getTemplate(String tenant, String id)
+        throws ExpressionNotFoundException, TenantLimitExceededException
+    {
+        return getTenant(tenant).getFactory().getTemplate(id);
+    }
+
+    /**
+     * Unloads every tenant that has not been looked up within the idle timeout.
+     *
+     * @return Number of tenants unloaded
+     */
+    public int evictIdle()
+    {
+        long cutoff = System.currentTimeMillis() - limits.getIdleTimeoutMillis();
+        int count = 0;
+
+        for (Tenant tenant : tenants.values())
+        {
+            if (tenant.lastAccessMillis < cutoff && tenant.unload())
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the names of all registered tenants, loaded or not.
+     *
+     * @return Unmodifiable view of the tenant names
+     */
+    public Set<String> getTenants()
+    {
+        return Collections.unmodifiableSet(tenants.keySet());
+    }
+
+    /**
+     * Gets the number of tenants whose expressions are loaded.
+     *
+     * @return Number of loaded tenants
+     */
+    public int getLoadedCount()
+    {
+        int count = 0;
+
+        for (Tenant tenant : tenants.values())
+        {
+            if (tenant.factory != null)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Gets the resources used by a tenant.
+     *
+     * @param tenant Tenant name
+     * @return Usage snapshot
+     * @throws ExpressionNotFoundException Indicates that the tenant was not found
+     */
+    public TenantUsage getUsage(String tenant) throws ExpressionNotFoundException
+    {
+        Tenant registered = tenants.get(tenant);
+
+        if (registered == null)
+        {
+            throw new ExpressionNotFoundException("Tenant not found: " + tenant);
+        }
+
+        return registered.getUsage();
+    }
+
+    /**
+     * Gets the limits enforced on every tenant.
+     *
+     * @return Tenant limits
+     */
+    public TenantLimits getLimits()
+    {
+        return limits;
+    }
+
+    /**
+     * Looks up a registered tenant and records the access.
+     *
+     * @param tenant Tenant name
+     * @return Tenant
+     * @throws ExpressionNotFoundException Indicates that the tenant was not found
+     */
+    private Tenant getTenant(String tenant) throws ExpressionNotFoundException
+    {
+        Tenant registered = tenants.get(tenant);
+
+        if (registered == null)
+        {
+            throw new ExpressionNotFoundException("Tenant not found: " + tenant);
+        }
+
+        registered.lastAccessMillis = System.currentTimeMillis();
+
+        return registered;
+    }
+
+    /**
+     * Builds the key under which a pattern's references are counted.
+     *
+     * @param regExString Regular expression string
+     * @param flags Match flags
+     * @return Pattern key
+     */
+    private static String patternKey(String regExString, int flags)
+    {
+        return flags + ":" + regExString;
+    }
+
+    /**
+     * Copies load options, switching on lazy compilation and switching off warm-up, so that loading for the limit
+     * check only parses and translates the file.
+     *
+     * @param options Tenant's load options
+     * @return Options for the limit check
+     */
+    private static FactoryOptions deferCompilation(FactoryOptions options)
+    {
+        FactoryOptions deferred = new FactoryOptions();
+        deferred.setValidate(options.isValidate());
+        deferred.setCompileLazily(true);
+        deferred.setOptimize(options.isOptimize());
+        deferred.setPrefilter(options.isPrefilter());
+        deferred.setTemplateCacheSize(options.getTemplateCacheSize());
+        deferred.setPatternBudgetBytes(options.getPatternBudgetBytes());
+        deferred.setEventListener(options.getEventListener());
+        deferred.setSlowMatchThresholdNanos(options.getSlowMatchThresholdNanos());
+
+        return deferred;
+    }
+
+    /**
+     * Counts a reference from a loaded tenant to each of its patterns.
+     *
+     * @param keys Pattern keys of the tenant
+     */
+    private void addReferences(Set<String> keys)
+    {
+        synchronized (patternReferences)
+        {
+            for (String key : keys)
+            {
+                Integer references = patternReferences.get(key);
+                patternReferences.put(key, references == null ? 1 : references + 1);
+            }
+        }
+    }
+
+    /**
+     * Removes a reference from an unloaded tenant to each of its patterns.
+     *
+     * @param keys Pattern keys of the tenant
+     */
+    private void removeReferences(Set<String> keys)
+    {
+        synchronized (patternReferences)
+        {
+            for (String key : keys)
+            {
+                int references = patternReferences.get(key);
+
+                if (references == 1)
+                {
+                    patternReferences.remove(key);
+                }
+                else
+                {
+                    patternReferences.put(key, references - 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registered tenant, whose factory is loaded on demand.
+     */
+    private class Tenant
+    {
+        private String name;
+        private Resource resource;
+        private FactoryOptions options;
+        private volatile ExpressionFactory factory;
+        private volatile long lastAccessMillis = System.currentTimeMillis();
+        private Set<String> patternKeys = Collections.emptySet();
+        private int expressionCount;
+        private long regExLength;
+        private long estimatedBytes;
+
+        /**
+         * Constructs a new tenant.
+         *
+         * @param name Tenant name
+         * @param resource Tenant's expressions file
+         * @param options Options used whenever the file is loaded
+         */
+        Tenant(String name, Resource resource, FactoryOptions options)
+        {
+            this.name = name;
+            this.resource = resource;
+            this.options = options;
+        }
+
+        /**
+         * Gets the tenant's factory, loading it if necessary.
+         *
+         * @return Expression factory
+         * @throws TenantLimitExceededException Indicates that the file exceeds a limit
+         */
+        ExpressionFactory getFactory() throws TenantLimitExceededException
+        {
+            ExpressionFactory loaded = factory;
+
+            return loaded != null ? loaded : load();
+        }
+
+        /**
+         * Loads the tenant's file and checks it against the limits, unless another thread already loaded it. The file
+         * is loaded with lazy compilation and without warm-up, so a file over the limits is rejected before any of its
+         * patterns is compiled; patterns are compiled and warmed up as the tenant's options ask once the limits pass.
+         *
+         * @return Expression factory
+         * @throws TenantLimitExceededException Indicates that the file exceeds a limit
+         */
+        synchronized ExpressionFactory load() throws TenantLimitExceededException
+        {
+            if (factory != null)
+            {
+                return factory;
+            }
+
+            ExpressionFactory loaded = new ExpressionFactory(resource, deferCompilation(options));
+            Set<String> keys = new HashSet<String>();
+            int count = 0;
+            long length = 0;
+            long bytes = 0;
+
+            for (String id : loaded.getExpressionIds())
+            {
+                Expression expression = loaded.getExpression(id);
+                length += checkLength(id, expression.getRegExString());
+                count++;
+
+                if (keys.add(patternKey(expression.getRegExString(), expression.getFlags())))
+                {
+                    bytes += PatternPool.estimateSize(expression.getRegExString());
+                }
+            }
+
+            for (String id : loaded.getTemplateIds())
+            {
+                length += checkLength(id, loaded.getTemplate(id).getRegExString());
+                count++;
+            }
+
+            if (count > limits.getMaxExpressions())
+            {
+                throw new TenantLimitExceededException("Tenant " + name + " has " + count +
+                    " expressions, limit is " + limits.getMaxExpressions());
+            }
+
+            if (bytes > limits.getMaxEstimatedBytes())
+            {
+                throw new TenantLimitExceededException("Tenant " + name + " needs an estimated " + bytes +
+                    " bytes for its patterns, limit is " + limits.getMaxEstimatedBytes());
+            }
+
+            if (!options.isCompileLazily() && options.getPatternBudgetBytes() <= 0)
+            {
+                ExpressionEventListener eventListener = options.getEventListener();
+
+                for (String id : loaded.getExpressionIds())
+                {
+                    Expression expression = loaded.getExpression(id);
+                    long startTime = System.nanoTime();
+                    expression.getPattern();
+
+                    if (eventListener != null)
+                    {
+                        eventListener.expressionCompiled(id, expression.getRegExString().length(),
+                            System.nanoTime() - startTime);
+                    }
+                }
+            }
+
+            if (options.getWarmUpIterations() > 0)
+            {
+                loaded.warmUp(options.getWarmUpIterations());
+            }
+
+            addReferences(keys);
+            patternKeys = keys;
+            expressionCount = count;
+            regExLength = length;
+            estimatedBytes = bytes;
+            factory = loaded;
+
+            return loaded;
+        }
+
+        /**
+         * Checks the length of a translated expression against the limit.
+         *
+         * @param id ID of expression
+         * @param regExString Translated expression
+         * @return Length of the expression
+         * @throws TenantLimitExceededException Indicates that the expression is too long
+         */
+        private int checkLength(String id, String regExString) throws TenantLimitExceededException
+        {
+            if (regExString.length() > limits.getMaxRegExLength())
+            {
+                throw new TenantLimitExceededException("Expression " + id + " of tenant " + name + " has " +
+                    regExString.length() + " characters, limit is " + limits.getMaxRegExLength());
+            }
+
+            return regExString.length();
+        }
+
+        /**
+         * Releases the tenant's factory so that its patterns can be reclaimed once no other tenant uses them.
+         *
+         * @return True if the tenant was loaded
+         */
+        synchronized boolean unload()
+        {
+            if (factory == null)
+            {
+                return false;
+            }
+
+            factory = null;
+            removeReferences(patternKeys);
+            patternKeys = Collections.emptySet();
+            expressionCount = 0;
+            regExLength = 0;
+            estimatedBytes = 0;
+
+            return true;
+        }
+
+        /**
+         * Takes a snapshot of the tenant's resource usage.
+         *
+         * @return Usage snapshot
+         */
+        synchronized TenantUsage getUsage()
+        {
+            long sharedBytes = 0;
+
+            synchronized (patternReferences)
+            {
+                for (String key : patternKeys)
+                {
+                    if (patternReferences.get(key) > 1)
+                    {
+                        sharedBytes += PatternPool.estimateSize(key.substring(key.indexOf(':') + 1));
+                    }
+                }
+            }
+
+            return new TenantUsage(name, factory != null, expressionCount, regExLength, estimatedBytes, sharedBytes,
+                lastAccessMillis);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.registry;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionTemplate;
+import org.regexml.exception.ExpressionNotFoundException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expressions and templates merged from several files by an ExpressionSetLoader. Instances are immutable and thread
+ * safe.
+ */
+public class ExpressionSet
+{
+    private Map<String, Expression> expressions;
+    private Map<String, ExpressionTemplate> templates;
+    private Map<String, String> resourceNames;
+    private List<IdConflict> conflicts;
+
+    /**
+     * Constructs a new expression set.
+     *
+     * @param expressions Expressions by ID
+     * @param templates Expression templates by ID
+     * @param resourceNames Name of the defining file by expression or template ID
+     * @param conflicts IDs defined by more than one file
+     */
+    ExpressionSet(Map<String, Expression> expressions, Map<String, ExpressionTemplate> templates,
+                  Map<String, String> resourceNames, List<IdConflict> conflicts)
+    {
+        this.expressions = expressions;
+        this.templates = templates;
+        this.resourceNames = resourceNames;
+        this.conflicts = Collections.unmodifiableList(conflicts);
+    }
+
+    /**
+     * Retrieves an expression based on the given ID.
+     *
+     * @param id ID of expression
+     * @return Expression
+     * @throws ExpressionNotFoundException Indicates that the requested expression was not found
+     */
+    public Expression getExpression(String id) throws ExpressionNotFoundException
+    {
+        Expression expression = expressions.get(id);
+
+        if (expression == null)
+        {
+            throw new ExpressionNotFoundException("Expression not found: " + id);
+        }
+
+        return expression;
+    }
+
+    /**
+     * Retrieves an expression template based on the given ID.
+     *
+     * @param id ID of expression
+     * @return Expression template
+     * @throws ExpressionNotFoundException Indicates that the requested template was not found
+     */
+    public ExpressionTemplate getTemplate(String id) throws ExpressionNotFoundException
+    {
+        ExpressionTemplate template = templates.get(id);
+
+        if (template == null)
+        {
+            throw new ExpressionNotFoundException("Expression template not found: " + id);
+        }
+
+        return template;
+    }
+
+    /**
+     * Gets the IDs of all expressions in the set.
+     *
+     * @return Unmodifiable set of expression IDs
+     */
+    public Set<String> getExpressionIds()
+    {
+        return Collections.unmodifiableSet(expressions.keySet());
+    }
+
+    /**
+     * Gets the IDs of all expression templates in the set.
+     *
+     * @return Unmodifiable set of template IDs
+     */
+    public Set<String> getTemplateIds()
+    {
+        return Collections.unmodifiableSet(templates.keySet());
+    }
+
+    /**
+     * Gets the name of the file that defines an expression or template.
+     *
+     * @param id ID of expression
+     * @return Resource name or null if the ID is not in the set
+     */
+    public String getResourceName(String id)
+    {
+        return resourceNames.get(id);
+    }
+
+    /**
+     * Gets the IDs that were defined by more than one file. Empty unless the loader was told to keep the first
+     * definition rather than fail.
+     *
+     * @return Unmodifiable list of conflicts in load order
+     */
+    public List<IdConflict> getConflicts()
+    {
+        return conflicts;
+    }
+}
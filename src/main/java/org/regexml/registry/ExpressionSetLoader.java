@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.registry;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.ExpressionTemplate;
+import org.regexml.FactoryOptions;
+import org.regexml.exception.ExpressionLoadException;
+import org.regexml.resource.Resource;
+import org.regexml.resource.ResourceSet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads many expressions files concurrently and merges them into one ExpressionSet. Each file is parsed, validated
+ * and compiled by its own ExpressionFactory on an executor thread, so load time falls with the number of cores until
+ * the largest file dominates. The results are merged in resource order, which makes the outcome of duplicate IDs
+ * independent of thread timing.
+ */
+public class ExpressionSetLoader
+{
+    private FactoryOptions options;
+    private ExecutorService executor;
+    private boolean failOnConflict = true;
+
+    /**
+     * Constructs a new loader that creates a thread per core for each load.
+     *
+     * @param options Options used to load every file
+     */
+    public ExpressionSetLoader(FactoryOptions options)
+    {
+        this(options, null);
+    }
+
+    /**
+     * Constructs a new loader.
+     *
+     * @param options Options used to load every file
+     * @param executor Executor that loads the files, or null to create a thread per core for each load
+     */
+    public ExpressionSetLoader(FactoryOptions options, ExecutorService executor)
+    {
+        this.options = options;
+        this.executor = executor;
+    }
+
+    /**
+     * Indicates whether or not loading fails when several files define the same ID.
+     *
+     * @return True if duplicate IDs fail the load
+     */
+    public boolean isFailOnConflict()
+    {
+        return failOnConflict;
+    }
+
+    /**
+     * Sets whether or not loading fails when several files define the same ID. If not, the first definition in
+     * resource order is kept and the others are reported by ExpressionSet.getConflicts().
+     *
+     * @param failOnConflict True if duplicate IDs fail the load
+     */
+    public void setFailOnConflict(boolean failOnConflict)
+    {
+        this.failOnConflict = failOnConflict;
+    }
+
+    /**
+     * Loads all files of the given resource sets.
+     *
+     * @param resourceSets Resource sets, in order of precedence
+     * @return Merged expressions
+     * @throws ExpressionLoadException Indicates that a file failed to load or, if conflicts fail the load, that an ID
+     * is defined more than once
+     */
+    public ExpressionSet load(ResourceSet... resourceSets) throws ExpressionLoadException
+    {
+        List<Resource> resources = new ArrayList<Resource>();
+
+        for (ResourceSet resourceSet : resourceSets)
+        {
+            resources.addAll(resourceSet.getResources());
+        }
+
+        return load(resources);
+    }
+
+    /**
+     * Loads the given files.
+     *
+     * @param resources Files, in order of precedence
+     * @return Merged expressions
+     * @throws ExpressionLoadException Indicates that a file failed to load or, if conflicts fail the load, that an ID
+     * is defined more than once
+     */
+    public ExpressionSet load(List<Resource> resources) throws ExpressionLoadException
+    {
+        ExecutorService loadExecutor = executor;
+
+        if (loadExecutor == null)
+        {
+            int threads = Math.max(1, Math.min(resources.size(), Runtime.getRuntime().availableProcessors()));
+            loadExecutor = Executors.newFixedThreadPool(threads);
+        }
+
+        try
+        {
+            List<Future<ExpressionFactory>> futures = new ArrayList<Future<ExpressionFactory>>(resources.size());
+
+            for (final Resource resource : resources)
+            {
+                futures.add(loadExecutor.submit(new Callable<ExpressionFactory>()
+                {
+                    public ExpressionFactory call()
+                    {
+                        return new ExpressionFactory(resource, options);
+                    }
+                }));
+            }
+
+            return merge(resources, futures);
+        }
+        finally
+        {
+            if (loadExecutor != executor)
+            {
+                loadExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Waits for every file to load and merges the factories in resource order.
+     *
+     * @param resources Files being loaded
+     * @param futures Pending factory for each file
+     * @return Merged expressions
+     * @throws ExpressionLoadException Indicates that a file failed to load or that IDs conflict
+     */
+    private ExpressionSet merge(List<Resource> resources, List<Future<ExpressionFactory>> futures)
+        throws ExpressionLoadException
+    {
+        Map<String, Expression> expressions = new HashMap<String, Expression>();
+        Map<String, ExpressionTemplate> templates = new HashMap<String, ExpressionTemplate>();
+        Map<String, String> resourceNames = new HashMap<String, String>();
+        List<IdConflict> conflicts = new ArrayList<IdConflict>();
+        List<String> problems = new ArrayList<String>();
+        Throwable firstFailure = null;
+
+        for (int i = 0; i < resources.size(); i++)
+        {
+            String resourceName = resources.get(i).getName();
+            ExpressionFactory factory;
+
+            try
+            {
+                factory = getUninterruptibly(futures.get(i));
+            }
+            catch (ExecutionException e)
+            {
+                problems.add("Cannot load " + resourceName + ": " + e.getCause());
+                firstFailure = firstFailure == null ? e.getCause() : firstFailure;
+                continue;
+            }
+
+            for (String id : factory.getExpressionIds())
+            {
+                if (claim(id, resourceName, resourceNames, conflicts))
+                {
+                    expressions.put(id, factory.getExpression(id));
+                }
+            }
+
+            for (String id : factory.getTemplateIds())
+            {
+                if (claim(id, resourceName, resourceNames, conflicts))
+                {
+                    templates.put(id, factory.getTemplate(id));
+                }
+            }
+        }
+
+        if (failOnConflict)
+        {
+            for (IdConflict conflict : conflicts)
+            {
+                problems.add(conflict.toString());
+            }
+        }
+
+        if (!problems.isEmpty())
+        {
+            throw new ExpressionLoadException(problems.size() + " problem(s) loading " + resources.size() +
+                " file(s): " + problems.get(0), problems, firstFailure);
+        }
+
+        return new ExpressionSet(expressions, templates, resourceNames, conflicts);
+    }
+
+    /**
+     * Records the file that defines an ID, unless an earlier file already defines it.
+     *
+     * @param id Expression ID
+     * @param resourceName Name of the file being merged
+     * @param resourceNames Defining file by ID
+     * @param conflicts Conflicts found so far
+     * @return True if the file being merged is the first to define the ID
+     */
+    private static boolean claim(String id, String resourceName, Map<String, String> resourceNames,
+                                 List<IdConflict> conflicts)
+    {
+        String keptResource = resourceNames.get(id);
+
+        if (keptResource != null)
+        {
+            conflicts.add(new IdConflict(id, keptResource, resourceName));
+            return false;
+        }
+
+        resourceNames.put(id, resourceName);
+
+        return true;
+    }
+
+    /**
+     * Waits for a load to complete, deferring an interrupt until it does so that no file is skipped.
+     *
+     * @param future Pending factory
+     * @return Loaded factory
+     * @throws ExecutionException Indicates that the file failed to load
+     */
+    private static ExpressionFactory getUninterruptibly(Future<ExpressionFactory> future) throws ExecutionException
+    {
+        boolean interrupted = false;
+
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    return future.get();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        finally
+        {
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.registry;
+
+/**
+ * Expression ID defined by more than one file of a loaded set.
+ */
+public class IdConflict
+{
+    private String id;
+    private String keptResource;
+    private String ignoredResource;
+
+    /**
+     * Constructs a new conflict.
+     *
+     * @param id Duplicate expression ID
+     * @param keptResource Name of the file whose definition is used
+     * @param ignoredResource Name of the file whose definition is ignored
+     */
+    public IdConflict(String id, String keptResource, String ignoredResource)
+    {
+        this.id = id;
+        this.keptResource = keptResource;
+        this.ignoredResource = ignoredResource;
+    }
+
+    /**
+     * Gets the duplicate expression ID.
+     *
+     * @return Expression ID
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets the name of the file whose definition is used, which is the first one in load order.
+     *
+     * @return Resource name
+     */
+    public String getKeptResource()
+    {
+        return keptResource;
+    }
+
+    /**
+     * Gets the name of the file whose definition is ignored.
+     *
+     * @return Resource name
+     */
+    public String getIgnoredResource()
+    {
+        return ignoredResource;
+    }
+
+    /**
+     * Describes the conflict.
+     *
+     * @return Description naming the ID and both files
+     */
+    public String toString()
+    {
+        return "Expression " + id + " is defined in " + keptResource + " and " + ignoredResource;
+    }
+}
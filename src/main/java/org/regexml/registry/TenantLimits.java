@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.registry;
+
+/**
+ * Limits that an ExpressionRegistry enforces on every tenant, and the idle time after which a tenant is unloaded.
+ * <p/>
+ * The limits are checked after the tenant's file has been parsed and translated but before any pattern is compiled,
+ * so a tenant over the limits costs no compilation time or pattern memory. Parsing itself is not bounded, so files
+ * from untrusted sources should also be limited in size before they are registered.
+ */
+public class TenantLimits
+{
+    private int maxExpressions = 10000;
+    private int maxRegExLength = 65536;
+    private long maxEstimatedBytes = 64L * 1024 * 1024;
+    private long idleTimeoutMillis = 30L * 60 * 1000;
+
+    /**
+     * Gets the maximum number of expressions and templates per tenant.
+     *
+     * @return Maximum number of expressions
+     */
+    public int getMaxExpressions()
+    {
+        return maxExpressions;
+    }
+
+    /**
+     * Sets the maximum number of expressions and templates per tenant.
+     *
+     * @param maxExpressions Maximum number of expressions
+     */
+    public void setMaxExpressions(int maxExpressions)
+    {
+        this.maxExpressions = maxExpressions;
+    }
+
+    /**
+     * Gets the maximum length of a single translated regular expression.
+     *
+     * @return Maximum number of characters
+     */
+    public int getMaxRegExLength()
+    {
+        return maxRegExLength;
+    }
+
+    /**
+     * Sets the maximum length of a single translated regular expression. Long expressions are the ones most likely
+     * to be expensive to compile and to match.
+     *
+     * @param maxRegExLength Maximum number of characters
+     */
+    public void setMaxRegExLength(int maxRegExLength)
+    {
+        this.maxRegExLength = maxRegExLength;
+    }
+
+    /**
+     * Gets the maximum estimated heap retained by a tenant's compiled patterns.
+     *
+     * @return Maximum estimated size in bytes
+     */
+    public long getMaxEstimatedBytes()
+    {
+        return maxEstimatedBytes;
+    }
+
+    /**
+     * Sets the maximum estimated heap retained by a tenant's compiled patterns. Patterns shared with other tenants
+     * count in full, so a tenant stays within its limit when the other tenants are unloaded.
+     *
+     * @param maxEstimatedBytes Maximum estimated size in bytes
+     */
+    public void setMaxEstimatedBytes(long maxEstimatedBytes)
+    {
+        this.maxEstimatedBytes = maxEstimatedBytes;
+    }
+
+    /**
+     * Gets the time without lookups after which evictIdle() unloads a tenant.
+     *
+     * @return Idle timeout in milliseconds
+     */
+    public long getIdleTimeoutMillis()
+    {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * Sets the time without lookups after which evictIdle() unloads a tenant. An unloaded tenant stays registered
+     * and is loaded again from its resource on the next lookup.
+     *
+     * @param idleTimeoutMillis Idle timeout in milliseconds
+     */
+    public void setIdleTimeoutMillis(long idleTimeoutMillis)
+    {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.registry;
+
+/**
+ * Snapshot of the resources used by one tenant of an ExpressionRegistry.
+ */
+public class TenantUsage
+{
+    private String tenant;
+    private boolean loaded;
+    private int expressionCount;
+    private long regExLength;
+    private long estimatedBytes;
+    private long sharedBytes;
+    private long lastAccessMillis;
+
+    /**
+     * Constructs a new usage snapshot.
+     *
+     * @param tenant Tenant name
+     * @param loaded Indicates whether or not the tenant's expressions are loaded
+     * @param expressionCount Number of expressions and templates
+     * @param regExLength Total length of the translated regular expressions
+     * @param estimatedBytes Estimated heap retained by the tenant's distinct patterns
+     * @param sharedBytes Part of the estimated heap taken by patterns that other loaded tenants use as well
+     * @param lastAccessMillis Time of the last lookup
+     */
+    public TenantUsage(String tenant, boolean loaded, int expressionCount, long regExLength, long estimatedBytes,
+                       long sharedBytes, long lastAccessMillis)
+    {
+        this.tenant = tenant;
+        this.loaded = loaded;
+        this.expressionCount = expressionCount;
+        this.regExLength = regExLength;
+        this.estimatedBytes = estimatedBytes;
+        this.sharedBytes = sharedBytes;
+        this.lastAccessMillis = lastAccessMillis;
+    }
+
+    /**
+     * Gets the tenant name.
+     *
+     * @return Tenant name
+     */
+    public String getTenant()
+    {
+        return tenant;
+    }
+
+    /**
+     * Indicates whether or not the tenant's expressions are loaded.
+     *
+     * @return True if loaded, false if unloaded after being idle
+     */
+    public boolean isLoaded()
+    {
+        return loaded;
+    }
+
+    /**
+     * Gets the number of expressions and templates.
+     *
+     * @return Expression count, or 0 if the tenant is not loaded
+     */
+    public int getExpressionCount()
+    {
+        return expressionCount;
+    }
+
+    /**
+     * Gets the total length of the translated regular expressions.
+     *
+     * @return Number of characters, or 0 if the tenant is not loaded
+     */
+    public long getRegExLength()
+    {
+        return regExLength;
+    }
+
+    /**
+     * Gets the estimated heap retained by the tenant's distinct patterns.
+     *
+     * @return Estimated size in bytes, or 0 if the tenant is not loaded
+     */
+    public long getEstimatedBytes()
+    {
+        return estimatedBytes;
+    }
+
+    /**
+     * Gets the part of the estimated heap taken by patterns that other loaded tenants use as well, which would not be
+     * freed by unloading this tenant.
+     *
+     * @return Estimated size in bytes
+     */
+    public long getSharedBytes()
+    {
+        return sharedBytes;
+    }
+
+    /**
+     * Gets the time of the last lookup.
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getLastAccessMillis()
+    {
+        return lastAccessMillis;
+    }
+}
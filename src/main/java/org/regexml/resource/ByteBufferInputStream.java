@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream reading the remaining bytes of a buffer. The stream needs no extra buffering since reads copy
+ * directly from the buffer.
+ */
+class ByteBufferInputStream extends InputStream
+{
+    private ByteBuffer buffer;
+
+    /**
+     * Constructs a new stream over a buffer, which the stream consumes.
+     *
+     * @param buffer Buffer to read
+     */
+    ByteBufferInputStream(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads one byte.
+     *
+     * @return Byte value or -1 at the end of the buffer
+     */
+    public int read()
+    {
+        return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    /**
+     * Reads up to len bytes into an array.
+     *
+     * @param b Destination array
+     * @param off Offset in the array
+     * @param len Maximum number of bytes
+     * @return Number of bytes read or -1 at the end of the buffer
+     */
+    public int read(byte[] b, int off, int len)
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        if (!buffer.hasRemaining())
+        {
+            return -1;
+        }
+
+        int count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+
+        return count;
+    }
+
+    /**
+     * Skips bytes.
+     *
+     * @param n Number of bytes to skip
+     * @return Number of bytes skipped
+     */
+    public long skip(long n)
+    {
+        int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + count);
+
+        return count;
+    }
+
+    /**
+     * Gets the number of bytes left.
+     *
+     * @return Remaining bytes
+     */
+    public int available()
+    {
+        return buffer.remaining();
+    }
+}
@@ -23,18 +23,22 @@ package org.regexml.resource;
 
 import org.regexml.exception.ExpressionFileNotFoundException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
 
 /**
  * Resource implementation that reads configuration files from the classpath.
  *
  * @author Dustin R. Callaway
  */
-public class ClassPathResource implements Resource
+public class ClassPathResource implements StreamResource
 {
     String name;
+    Charset charset;
 
     /**
      * Constructs a new ClassPathResource object.
@@ -42,8 +46,20 @@ public class ClassPathResource implements Resource
      * @param name Name of file in classpath containing expressions in XML
      */
     public ClassPathResource(String name)
+    {
+        this(name, null);
+    }
+
+    /**
+     * Constructs a new ClassPathResource object for a file in a known charset.
+     *
+     * @param name Name of file in classpath containing expressions in XML
+     * @param charset Charset of the file, or null to detect it from the file
+     */
+    public ClassPathResource(String name, Charset charset)
     {
         this.name = name;
+        this.charset = charset;
     }
 
     /**
@@ -57,12 +73,26 @@ public class ClassPathResource implements Resource
     }
 
     /**
-     * Returns a reader object for the classpath resource.
+     * Returns a buffered reader object for the classpath resource, decoding the file with the explicit charset or, if
+     * there is none, the platform charset.
      *
      * @return Reader for the file containing expressions in XML
      * @throws ExpressionFileNotFoundException
      */
     public Reader getReader() throws ExpressionFileNotFoundException
+    {
+        InputStream is = getInputStream();
+
+        return new BufferedReader(charset == null ? new InputStreamReader(is) : new InputStreamReader(is, charset));
+    }
+
+    /**
+     * Returns a buffered input stream for the classpath resource.
+     *
+     * @return Input stream for the file containing expressions in XML
+     * @throws ExpressionFileNotFoundException
+     */
+    public InputStream getInputStream() throws ExpressionFileNotFoundException
     {
         InputStream is = this.getClass().getResourceAsStream(name);
 
@@ -76,6 +106,16 @@ public class ClassPathResource implements Resource
             throw new ExpressionFileNotFoundException("File not found in classpath: " + name);
         }
 
-        return new InputStreamReader(is);
+        return new BufferedInputStream(is);
+    }
+
+    /**
+     * Returns the explicit charset of the file.
+     *
+     * @return Charset name or null if the encoding is detected from the file
+     */
+    public String getEncoding()
+    {
+        return charset == null ? null : charset.name();
     }
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import org.regexml.exception.ExpressionFileNotFoundException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Pattern;
+
+/**
+ * Resource set containing the files of a classpath package whose paths relative to the package match a glob. Every
+ * classpath root is scanned, whether a directory or a jar, so files with the same name in several jars are all
+ * included.
+ */
+public class ClassPathResourceSet implements ResourceSet
+{
+    private String packagePath;
+    private String glob;
+    private Pattern pattern;
+    private ClassLoader classLoader;
+
+    /**
+     * Constructs a new ClassPathResourceSet object using the class loader that loaded this class.
+     *
+     * @param packageName Package to scan, such as com.example.rules or com/example/rules
+     * @param glob Glob matched against paths relative to the package, such as **&#47;*.xml
+     */
+    public ClassPathResourceSet(String packageName, String glob)
+    {
+        this(packageName, glob, ClassPathResourceSet.class.getClassLoader());
+    }
+
+    /**
+     * Constructs a new ClassPathResourceSet object.
+     *
+     * @param packageName Package to scan, such as com.example.rules or com/example/rules
+     * @param glob Glob matched against paths relative to the package, such as **&#47;*.xml
+     * @param classLoader Class loader whose classpath is scanned
+     */
+    public ClassPathResourceSet(String packageName, String glob, ClassLoader classLoader)
+    {
+        String path = packageName.replace('.', '/');
+
+        while (path.startsWith("/"))
+        {
+            path = path.substring(1);
+        }
+
+        this.packagePath = path.length() == 0 || path.endsWith("/") ? path : path + "/";
+        this.glob = glob;
+        this.pattern = GlobPattern.compile(glob);
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Returns the package and glob of this set.
+     *
+     * @return Set name
+     */
+    public String getName()
+    {
+        return "classpath:" + packagePath + glob;
+    }
+
+    /**
+     * Lists the matching files of the package in every directory and jar of the classpath.
+     *
+     * @return Resources sorted by URL
+     * @throws ExpressionFileNotFoundException Indicates that the classpath could not be read
+     */
+    public List<Resource> getResources() throws ExpressionFileNotFoundException
+    {
+        List<String> urls = new ArrayList<String>();
+
+        try
+        {
+            for (Enumeration<URL> roots = classLoader.getResources(packagePath); roots.hasMoreElements();)
+            {
+                URL root = roots.nextElement();
+
+                if (root.getProtocol().equals("file"))
+                {
+                    collectFiles(new File(URLDecoder.decode(root.getPath(), "UTF-8")), root.toString(), urls);
+                }
+                else
+                {
+                    collectJarEntries(root, urls);
+                }
+            }
+
+            Collections.sort(urls);
+
+            List<Resource> resources = new ArrayList<Resource>(urls.size());
+
+            for (String url : urls)
+            {
+                resources.add(new UrlResource(new URL(url)));
+            }
+
+            return resources;
+        }
+        catch (IOException e)
+        {
+            throw new ExpressionFileNotFoundException("Cannot scan classpath for " + getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the matching files of a package directory and its subdirectories. Symbolic links that form a cycle are
+     * listed only once.
+     *
+     * @param dir Package directory
+     * @param baseUrl URL of the package directory
+     * @param urls URLs of the matching files
+     */
+    private void collectFiles(File dir, String baseUrl, List<String> urls)
+    {
+        String base = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+        List<String> paths = new ArrayList<String>();
+        DirectoryResourceSet.collectPaths(dir, "", pattern, new HashSet<String>(), paths);
+
+        for (String path : paths)
+        {
+            urls.add(base + path);
+        }
+    }
+
+    /**
+     * Adds the matching entries of the jar containing a package.
+     *
+     * @param root URL of the package inside the jar
+     * @param urls URLs of the matching entries
+     * @throws IOException Indicates that the jar could not be read
+     */
+    private void collectJarEntries(URL root, List<String> urls) throws IOException
+    {
+        URLConnection connection = root.openConnection();
+
+        if (!(connection instanceof JarURLConnection))
+        {
+            return; //neither a directory nor a jar, so it cannot be listed
+        }
+
+        JarURLConnection jarConnection = (JarURLConnection) connection;
+        jarConnection.setUseCaches(false); //a cached JarFile would be shared with, and closed under, other users
+        JarFile jar = jarConnection.getJarFile();
+
+        try
+        {
+            String jarUrl = jarConnection.getJarFileURL().toString();
+
+            for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();)
+            {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+
+                if (!entry.isDirectory() && name.startsWith(packagePath) &&
+                    pattern.matcher(name.substring(packagePath.length())).matches())
+                {
+                    urls.add("jar:" + jarUrl + "!/" + name);
+                }
+            }
+        }
+        finally
+        {
+            jar.close();
+        }
+    }
+}
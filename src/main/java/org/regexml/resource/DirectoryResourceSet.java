@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import org.regexml.exception.ExpressionFileNotFoundException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Resource set containing the files below a directory whose relative paths match a glob. Symbolic links are followed,
+ * but each directory is listed only once, so links that form a cycle do not cause endless recursion.
+ */
+public class DirectoryResourceSet implements ResourceSet
+{
+    private File directory;
+    private String glob;
+    private Pattern pattern;
+
+    /**
+     * Constructs a new DirectoryResourceSet object.
+     *
+     * @param directory Base directory
+     * @param glob Glob matched against paths relative to the base directory, such as **&#47;*.xml
+     */
+    public DirectoryResourceSet(File directory, String glob)
+    {
+        this.directory = directory;
+        this.glob = glob;
+        this.pattern = GlobPattern.compile(glob);
+    }
+
+    /**
+     * Returns the directory and glob of this set.
+     *
+     * @return Set name
+     */
+    public String getName()
+    {
+        return new File(directory, glob).getPath();
+    }
+
+    /**
+     * Lists the matching files below the base directory.
+     *
+     * @return Resources sorted by path
+     * @throws ExpressionFileNotFoundException Indicates that the base directory does not exist
+     */
+    public List<Resource> getResources() throws ExpressionFileNotFoundException
+    {
+        if (!directory.isDirectory())
+        {
+            throw new ExpressionFileNotFoundException("Directory not found: " + directory.getAbsolutePath());
+        }
+
+        List<String> paths = new ArrayList<String>();
+        collectPaths(directory, "", pattern, new HashSet<String>(), paths);
+        Collections.sort(paths);
+
+        List<Resource> resources = new ArrayList<Resource>(paths.size());
+
+        for (String path : paths)
+        {
+            try
+            {
+                resources.add(new UrlResource(new File(directory, path).toURI().toURL()));
+            }
+            catch (MalformedURLException e)
+            {
+                throw new ExpressionFileNotFoundException("Invalid file name: " + path);
+            }
+        }
+
+        return resources;
+    }
+
+    /**
+     * Adds the matching files of a directory and its subdirectories. Symbolic links are followed, but each directory is
+     * listed only once, under the first path in sorted order that reaches it.
+     *
+     * @param dir Directory to list
+     * @param prefix Path of the directory relative to the base directory, ending in a slash unless empty
+     * @param pattern Compiled glob matched against relative paths
+     * @param visited Canonical paths of the directories listed so far
+     * @param paths Relative paths of the matching files
+     */
+    static void collectPaths(File dir, String prefix, Pattern pattern, Set<String> visited, List<String> paths)
+    {
+        try
+        {
+            if (!visited.add(dir.getCanonicalPath()))
+            {
+                return; //already listed through another link, or a link back to an enclosing directory
+            }
+        }
+        catch (IOException e)
+        {
+            return; //not resolvable
+        }
+
+        File[] files = dir.listFiles();
+
+        if (files == null)
+        {
+            return; //not readable
+        }
+
+        Arrays.sort(files);
+
+        for (File file : files)
+        {
+            String path = prefix + file.getName();
+
+            if (file.isDirectory())
+            {
+                collectPaths(file, path + "/", pattern, visited, paths);
+            }
+            else if (pattern.matcher(path).matches())
+            {
+                paths.add(path);
+            }
+        }
+    }
+}
@@ -23,19 +23,25 @@ package org.regexml.resource;
 
 import org.regexml.exception.ExpressionFileNotFoundException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.Charset;
 
 /**
  * Resource implementation that reads configuration files from the classpath.
  *
  * @author Dustin R. Callaway
  */
-public class FileSystemResource implements Resource
+public class FileSystemResource implements StreamResource
 {
     File file;
+    Charset charset;
 
     /**
      * Constructs a new FileSystemResource object.
@@ -53,11 +59,35 @@ public class FileSystemResource implements Resource
      * @param file File containing expressions in XML
      */
     public FileSystemResource(File file)
+    {
+        this(file, null);
+    }
+
+    /**
+     * Constructs a new FileSystemResource object for a file in a known charset.
+     *
+     * @param name Name of file containing expressions in XML
+     * @param charset Charset of the file, or null to detect it from the file
+     */
+    public FileSystemResource(String name, Charset charset)
+    {
+        this(new File(name), charset);
+    }
+
+    /**
+     * Constructs a new FileSystemResource object for a file in a known charset.
+     *
+     * @param file File containing expressions in XML
+     * @param charset Charset of the file, or null to detect it from the file
+     */
+    public FileSystemResource(File file, Charset charset)
     {
         if (file.exists() && file.isFile())
         {
             this.file = file;
         }
+
+        this.charset = charset;
     }
 
     /**
@@ -71,12 +101,31 @@ public class FileSystemResource implements Resource
     }
 
     /**
-     * Returns a reader object for the file system resource.
+     * Returns a buffered reader object for the file system resource, decoding the file with the explicit charset or,
+     * if there is none, the platform charset.
      *
      * @return Reader for the file containing expressions in XML
      * @throws ExpressionFileNotFoundException
      */
     public Reader getReader() throws ExpressionFileNotFoundException
+    {
+        InputStream is = getInputStream();
+
+        if (is == null)
+        {
+            return null;
+        }
+
+        return new BufferedReader(charset == null ? new InputStreamReader(is) : new InputStreamReader(is, charset));
+    }
+
+    /**
+     * Returns a buffered input stream for the file system resource.
+     *
+     * @return Input stream for the file containing expressions in XML
+     * @throws ExpressionFileNotFoundException
+     */
+    public InputStream getInputStream() throws ExpressionFileNotFoundException
     {
         if (file == null)
         {
@@ -85,11 +134,21 @@ public class FileSystemResource implements Resource
 
         try
         {
-            return new FileReader(file);
+            return new BufferedInputStream(new FileInputStream(file));
         }
         catch (FileNotFoundException e)
         {
             throw new ExpressionFileNotFoundException("File not found: " + file.getAbsolutePath());
         }
     }
+
+    /**
+     * Returns the explicit charset of the file.
+     *
+     * @return Charset name or null if the encoding is detected from the file
+     */
+    public String getEncoding()
+    {
+        return charset == null ? null : charset.name();
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import java.util.regex.Pattern;
+
+/**
+ * Converts file name globs into regular expressions matched against slash-separated relative paths.
+ */
+final class GlobPattern
+{
+    /**
+     * Prevents instantiation.
+     */
+    private GlobPattern()
+    {
+    }
+
+    /**
+     * Compiles a glob. The wildcard * matches within one path segment, ** matches across segments, **&#47; matches
+     * zero or more directories and ? matches one character other than a slash.
+     *
+     * @param glob Glob such as **&#47;*.xml
+     * @return Pattern matching relative paths
+     */
+    static Pattern compile(String glob)
+    {
+        StringBuilder regEx = new StringBuilder(glob.length() * 2);
+
+        for (int i = 0; i < glob.length(); i++)
+        {
+            char c = glob.charAt(i);
+
+            if (glob.startsWith("**/", i))
+            {
+                regEx.append("(?:.*/)?");
+                i += 2;
+            }
+            else if (glob.startsWith("**", i))
+            {
+                regEx.append(".*");
+                i++;
+            }
+            else if (c == '*')
+            {
+                regEx.append("[^/]*");
+            }
+            else if (c == '?')
+            {
+                regEx.append("[^/]");
+            }
+            else
+            {
+                regEx.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regEx.toString());
+    }
+}
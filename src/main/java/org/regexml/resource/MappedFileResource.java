@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import org.regexml.exception.ExpressionFileNotFoundException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Resource implementation that maps a file into memory. Reading a mapped file needs no system call per block and no
+ * copy into a Java buffer, which makes large expressions files load faster. The file is mapped once, on first use,
+ * and the mapping lasts until the resource is garbage collected, so the file should not be truncated meanwhile.
+ */
+public class MappedFileResource implements StreamResource
+{
+    private File file;
+    private Charset charset;
+    private MappedByteBuffer mapping;
+
+    /**
+     * Constructs a new MappedFileResource object.
+     *
+     * @param name Name of file containing expressions in XML
+     */
+    public MappedFileResource(String name)
+    {
+        this(new File(name), null);
+    }
+
+    /**
+     * Constructs a new MappedFileResource object for a file in a known charset.
+     *
+     * @param file File containing expressions in XML
+     * @param charset Charset of the file, or null to detect it from the file
+     */
+    public MappedFileResource(File file, Charset charset)
+    {
+        this.file = file;
+        this.charset = charset;
+    }
+
+    /**
+     * Returns the name of the file represented by this resource.
+     *
+     * @return Name of file abstracted by this resource
+     */
+    public String getName()
+    {
+        return file.getName();
+    }
+
+    /**
+     * Returns a read-only view of the mapped file, positioned at its start. Each call returns an independent view.
+     *
+     * @return Buffer holding the file contents
+     * @throws ExpressionFileNotFoundException Indicates that the file could not be mapped
+     */
+    public ByteBuffer getByteBuffer() throws ExpressionFileNotFoundException
+    {
+        return getMapping().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns an input stream reading the mapped file.
+     *
+     * @return Input stream for the file containing expressions in XML
+     * @throws ExpressionFileNotFoundException Indicates that the file could not be mapped
+     */
+    public InputStream getInputStream() throws ExpressionFileNotFoundException
+    {
+        return new ByteBufferInputStream(getByteBuffer());
+    }
+
+    /**
+     * Returns a buffered reader object for the mapped file, decoding it with the explicit charset or, if there is
+     * none, the platform charset.
+     *
+     * @return Reader for the file containing expressions in XML
+     * @throws ExpressionFileNotFoundException Indicates that the file could not be mapped
+     */
+    public Reader getReader() throws ExpressionFileNotFoundException
+    {
+        InputStream is = getInputStream();
+
+        return new BufferedReader(charset == null ? new InputStreamReader(is) : new InputStreamReader(is, charset));
+    }
+
+    /**
+     * Returns the explicit charset of the file.
+     *
+     * @return Charset name or null if the encoding is detected from the file
+     */
+    public String getEncoding()
+    {
+        return charset == null ? null : charset.name();
+    }
+
+    /**
+     * Maps the file on first use.
+     *
+     * @return Mapping of the whole file
+     * @throws ExpressionFileNotFoundException Indicates that the file could not be mapped
+     */
+    private synchronized MappedByteBuffer getMapping() throws ExpressionFileNotFoundException
+    {
+        if (mapping == null)
+        {
+            try
+            {
+                RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+                try
+                {
+                    FileChannel channel = randomAccessFile.getChannel();
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); //outlives the channel
+                }
+                finally
+                {
+                    randomAccessFile.close();
+                }
+            }
+            catch (IOException e)
+            {
+                throw new ExpressionFileNotFoundException("Cannot map file: " + file.getAbsolutePath());
+            }
+        }
+
+        return mapping;
+    }
+}
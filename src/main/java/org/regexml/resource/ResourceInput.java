@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Opened resource handed to an XML parser, preferring bytes over characters. A StreamResource is read as bytes, so
+ * the parser decodes it according to its byte order mark and encoding declaration, or the resource's explicit
+ * charset; other resources are read through their reader.
+ */
+public class ResourceInput implements Closeable
+{
+    private Resource resource;
+    private InputStream inputStream;
+    private Reader reader;
+
+    /**
+     * Opens a resource.
+     *
+     * @param resource Resource to open
+     */
+    public ResourceInput(Resource resource)
+    {
+        this.resource = resource;
+
+        if (resource instanceof StreamResource)
+        {
+            inputStream = ((StreamResource) resource).getInputStream();
+        }
+        else
+        {
+            reader = resource.getReader();
+        }
+    }
+
+    /**
+     * Creates an event reader for the opened resource.
+     *
+     * @param inputFactory StAX factory
+     * @return Event reader
+     * @throws XMLStreamException Indicates that the parser could not be created
+     */
+    public XMLEventReader createEventReader(XMLInputFactory inputFactory) throws XMLStreamException
+    {
+        if (inputStream == null)
+        {
+            return inputFactory.createXMLEventReader(reader);
+        }
+
+        String encoding = ((StreamResource) resource).getEncoding();
+
+        return encoding == null ? inputFactory.createXMLEventReader(inputStream) :
+            inputFactory.createXMLEventReader(inputStream, encoding);
+    }
+
+    /**
+     * Creates a source for validating or transforming the opened resource.
+     *
+     * @return Source whose system ID is the resource name
+     * @throws UnsupportedEncodingException Indicates that the explicit charset is not supported
+     */
+    public Source createSource() throws UnsupportedEncodingException
+    {
+        StreamSource source;
+
+        if (inputStream == null)
+        {
+            source = new StreamSource(reader);
+        }
+        else
+        {
+            String encoding = ((StreamResource) resource).getEncoding();
+            source = encoding == null ? new StreamSource(inputStream) :
+                new StreamSource(new InputStreamReader(inputStream, encoding));
+        }
+
+        source.setSystemId(resource.getName());
+
+        return source;
+    }
+
+    /**
+     * Closes the opened stream or reader.
+     *
+     * @throws IOException Indicates that closing failed
+     */
+    public void close() throws IOException
+    {
+        if (inputStream != null)
+        {
+            inputStream.close();
+        }
+        else if (reader != null)
+        {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import org.regexml.exception.ExpressionFileNotFoundException;
+
+import java.util.List;
+
+/**
+ * Represents a collection of resource files containing XML expressions, such as all matching files below a
+ * directory or in a classpath package.
+ */
+public interface ResourceSet
+{
+    /**
+     * Gets a description of the collection for use in messages.
+     *
+     * @return Collection name
+     */
+    public String getName();
+
+    /**
+     * Finds the resources in the collection.
+     *
+     * @return Resources, sorted by name so that the order does not depend on the file system
+     * @throws ExpressionFileNotFoundException Indicates that the collection could not be listed
+     */
+    public List<Resource> getResources();
+}
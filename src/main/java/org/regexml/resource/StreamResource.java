@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import org.regexml.exception.ExpressionFileNotFoundException;
+
+import java.io.InputStream;
+
+/**
+ * Resource that can also be read as bytes. Parsers given bytes rather than characters decode the file themselves,
+ * which honours the encoding declaration and byte order mark of the XML file and lets the parser use its own fast
+ * UTF-8 decoder.
+ */
+public interface StreamResource extends Resource
+{
+    /**
+     * Gets a buffered input stream for the resource. The caller closes the stream.
+     *
+     * @return Input stream for the resource
+     * @throws ExpressionFileNotFoundException Indicates that the resource could not be opened
+     */
+    public InputStream getInputStream();
+
+    /**
+     * Gets the charset the resource was explicitly declared to use.
+     *
+     * @return Charset name, or null to detect the encoding from the file as the XML specification describes
+     */
+    public String getEncoding();
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.resource;
+
+import org.regexml.exception.ExpressionFileNotFoundException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+/**
+ * Resource implementation that reads configuration files from a URL, such as a file or a jar entry found by a
+ * resource set. The name is the full URL, so files with the same name in different directories or jars are told
+ * apart in messages.
+ */
+public class UrlResource implements StreamResource
+{
+    private URL url;
+    private Charset charset;
+
+    /**
+     * Constructs a new UrlResource object.
+     *
+     * @param url URL of the file containing expressions in XML
+     */
+    public UrlResource(URL url)
+    {
+        this(url, null);
+    }
+
+    /**
+     * Constructs a new UrlResource object for a file in a known charset.
+     *
+     * @param url URL of the file containing expressions in XML
+     * @param charset Charset of the file, or null to detect it from the file
+     */
+    public UrlResource(URL url, Charset charset)
+    {
+        this.url = url;
+        this.charset = charset;
+    }
+
+    /**
+     * Returns the URL of the file represented by this resource.
+     *
+     * @return URL of file abstracted by this resource
+     */
+    public String getName()
+    {
+        return url.toString();
+    }
+
+    /**
+     * Returns a buffered reader object for the URL resource, decoding the file with the explicit charset or, if there
+     * is none, the platform charset.
+     *
+     * @return Reader for the file containing expressions in XML
+     * @throws ExpressionFileNotFoundException Indicates that the URL could not be opened
+     */
+    public Reader getReader() throws ExpressionFileNotFoundException
+    {
+        InputStream is = getInputStream();
+
+        return new BufferedReader(charset == null ? new InputStreamReader(is) : new InputStreamReader(is, charset));
+    }
+
+    /**
+     * Returns a buffered input stream for the URL resource.
+     *
+     * @return Input stream for the file containing expressions in XML
+     * @throws ExpressionFileNotFoundException Indicates that the URL could not be opened
+     */
+    public InputStream getInputStream() throws ExpressionFileNotFoundException
+    {
+        try
+        {
+            return new BufferedInputStream(url.openStream());
+        }
+        catch (IOException e)
+        {
+            throw new ExpressionFileNotFoundException("File not found: " + url);
+        }
+    }
+
+    /**
+     * Returns the explicit charset of the file.
+     *
+     * @return Charset name or null if the encoding is detected from the file
+     */
+    public String getEncoding()
+    {
+        return charset == null ? null : charset.name();
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.server;
+
+import org.regexml.ExpressionMatch;
+import org.regexml.exception.MatchServerException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Client for a MatchServer on the same host. A client holds one connection and is not thread safe. Batches may be
+ * pipelined by calling send() several times before collecting the results with receive(), which returns them in the
+ * order the batches were sent.
+ * <p>
+ * Responses are read from the connection by a daemon thread as soon as the server writes them, so the server never
+ * blocks on a full socket while the client is still sending. Results wait in memory until receive() collects them;
+ * to bound that memory, at most getMaxPendingBatches() batches may be sent and not yet received, and send() rejects
+ * further batches until receive() is called.
+ */
+public class MatchClient
+{
+    private static final int DEFAULT_MAX_PENDING_BATCHES = 64;
+
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+    private BlockingQueue<String[]> sentInputs = new LinkedBlockingQueue<String[]>();
+    private BlockingQueue<Response> responses = new LinkedBlockingQueue<Response>();
+    private int maxPendingBatches = DEFAULT_MAX_PENDING_BATCHES;
+    private int pendingBatches;
+    private Thread reader;
+
+    /**
+     * Connects to a match server on the loopback interface.
+     *
+     * @param port Port the server listens on
+     * @throws MatchServerException Indicates that the server could not be reached
+     */
+    public MatchClient(int port) throws MatchServerException
+    {
+        try
+        {
+            socket = new Socket(InetAddress.getByName(null), port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+        catch (IOException e)
+        {
+            throw new MatchServerException("Unable to connect to match server on port " + port, e);
+        }
+
+        reader = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                readResponses();
+            }
+        }, "regexml-match-client-" + socket.getLocalPort());
+
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Gets the maximum number of batches that may be sent and not yet received.
+     *
+     * @return Maximum number of pending batches
+     */
+    public int getMaxPendingBatches()
+    {
+        return maxPendingBatches;
+    }
+
+    /**
+     * Sets the maximum number of batches that may be sent and not yet received. The results of pending batches are
+     * held in memory, so the limit bounds the memory used by a client that pipelines.
+     *
+     * @param maxPendingBatches Maximum number of pending batches
+     */
+    public void setMaxPendingBatches(int maxPendingBatches)
+    {
+        this.maxPendingBatches = Math.max(1, maxPendingBatches);
+    }
+
+    /**
+     * Matches a batch of inputs and waits for the results.
+     *
+     * @param ids Expression ID of each request
+     * @param inputs Input of each request
+     * @return Match of each request or null where the expression did not match
+     * @throws MatchServerException Indicates a connection failure or an error reported by the server
+     * @throws IllegalStateException Indicates that the maximum number of batches is pending
+     */
+    public ExpressionMatch[] match(String[] ids, String[] inputs) throws MatchServerException, IllegalStateException
+    {
+        send(ids, inputs);
+
+        return receive();
+    }
+
+    /**
+     * Sends a batch of requests without waiting for the results.
+     *
+     * @param ids Expression ID of each request
+     * @param inputs Input of each request
+     * @throws MatchServerException Indicates a connection failure
+     * @throws IllegalArgumentException Indicates that the arrays differ in length or exceed the maximum batch size
+     * @throws IllegalStateException Indicates that the maximum number of batches is pending, so receive() must be
+     * called first
+     */
+    public void send(String[] ids, String[] inputs)
+        throws MatchServerException, IllegalArgumentException, IllegalStateException
+    {
+        if (ids.length != inputs.length || ids.length > MatchProtocol.MAX_BATCH_SIZE)
+        {
+            throw new IllegalArgumentException("Batch needs one ID per input and at most " +
+                MatchProtocol.MAX_BATCH_SIZE + " requests");
+        }
+
+        if (pendingBatches >= maxPendingBatches)
+        {
+            throw new IllegalStateException(pendingBatches + " batches are pending; receive results before sending " +
+                "more");
+        }
+
+        sentInputs.add(inputs.clone()); //queued first, since the reader may see the response before send() returns
+        pendingBatches++;
+
+        try
+        {
+            out.writeInt(ids.length);
+
+            for (int i = 0; i < ids.length; i++)
+            {
+                out.writeUTF(ids[i]);
+                MatchProtocol.writeInput(out, inputs[i]);
+            }
+
+            out.flush();
+        }
+        catch (IOException e)
+        {
+            throw new MatchServerException("Unable to send requests to match server", e);
+        }
+    }
+
+    /**
+     * Receives the results of the oldest batch sent and not yet received, waiting until they arrive. The whole batch
+     * is read even if the server reports an error for one of its requests.
+     *
+     * @return Match of each request or null where the expression did not match
+     * @throws MatchServerException Indicates a connection failure, an error reported by the server or that the thread
+     * was interrupted while waiting
+     * @throws IllegalStateException Indicates that no batch is outstanding
+     */
+    public ExpressionMatch[] receive() throws MatchServerException, IllegalStateException
+    {
+        if (pendingBatches == 0)
+        {
+            throw new IllegalStateException("No batch has been sent");
+        }
+
+        Response response;
+
+        try
+        {
+            response = responses.take();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MatchServerException("Interrupted while waiting for results from match server", e);
+        }
+
+        if (response.isConnectionFailure())
+        {
+            responses.add(response); //every later batch fails the same way
+            throw response.getError();
+        }
+
+        pendingBatches--;
+
+        if (response.getError() != null)
+        {
+            throw response.getError();
+        }
+
+        return response.getMatches();
+    }
+
+    /**
+     * Closes the connection, which also stops the response reader.
+     */
+    public void close()
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            // already closed
+        }
+
+        reader.interrupt();
+    }
+
+    /**
+     * Reads the response batches of the sent batches in order until the connection fails or is closed.
+     */
+    private void readResponses()
+    {
+        try
+        {
+            while (true)
+            {
+                responses.add(readResponse(sentInputs.take()));
+            }
+        }
+        catch (InterruptedException e)
+        {
+            // closed while idle
+        }
+        catch (IOException e)
+        {
+            responses.add(new Response(null, new MatchServerException("Unable to receive results from match server",
+                e), true));
+        }
+        catch (RuntimeException e)
+        {
+            responses.add(new Response(null, new MatchServerException("Invalid response from match server", e),
+                true)); //the stream cannot be trusted after a malformed response, so it is not read any further
+        }
+    }
+
+    /**
+     * Reads the response batch of one request batch.
+     *
+     * @param inputs Inputs of the request batch
+     * @return Matches and the first error reported by the server
+     * @throws IOException Indicates a connection failure or a response out of step with the requests
+     */
+    private Response readResponse(String[] inputs) throws IOException
+    {
+        ExpressionMatch[] matches = new ExpressionMatch[inputs.length];
+        String error = null;
+
+        for (int i = 0; i < inputs.length; i++)
+        {
+            byte status = in.readByte();
+
+            if (status == MatchProtocol.STATUS_MATCH)
+            {
+                int[] offsets = new int[(in.readUnsignedShort() + 1) * 2];
+
+                for (int j = 0; j < offsets.length; j++)
+                {
+                    offsets[j] = in.readInt();
+                }
+
+                matches[i] = new ExpressionMatch(inputs[i], offsets);
+            }
+            else if (status == MatchProtocol.STATUS_ERROR)
+            {
+                String message = in.readUTF();
+                error = error == null ? message : error;
+            }
+            else if (status != MatchProtocol.STATUS_NO_MATCH)
+            {
+                throw new IOException("Unexpected response status " + status);
+            }
+        }
+
+        return new Response(matches, error == null ? null : new MatchServerException(error), false);
+    }
+
+    /**
+     * Results of one batch as read from the connection.
+     */
+    private static class Response
+    {
+        private ExpressionMatch[] matches;
+        private MatchServerException error;
+        private boolean connectionFailure;
+
+        /**
+         * Constructs a new response.
+         *
+         * @param matches Match of each request or null where the expression did not match
+         * @param error First error reported by the server or the connection failure, or null
+         * @param connectionFailure True if the connection failed before the batch was read
+         */
+        Response(ExpressionMatch[] matches, MatchServerException error, boolean connectionFailure)
+        {
+            this.matches = matches;
+            this.error = error;
+            this.connectionFailure = connectionFailure;
+        }
+
+        /**
+         * Gets the match of each request.
+         *
+         * @return Matches, with null where the expression did not match
+         */
+        ExpressionMatch[] getMatches()
+        {
+            return matches;
+        }
+
+        /**
+         * Gets the error to report for the batch.
+         *
+         * @return Error or null
+         */
+        MatchServerException getError()
+        {
+            return error;
+        }
+
+        /**
+         * Indicates whether or not the connection failed, which fails this and every later batch.
+         *
+         * @return True for a connection failure
+         */
+        boolean isConnectionFailure()
+        {
+            return connectionFailure;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Binary protocol spoken between MatchClient and MatchServer. A request batch is an int request count followed by, for
+ * each request, the expression ID in modified UTF-8 and the input as an int byte length and UTF-8 bytes. The response
+ * batch holds one status byte per request, followed by the group count as an unsigned short and the start and end
+ * offset of every group for a match, or a modified UTF-8 message for an error. A match with more than MAX_GROUP_COUNT
+ * groups is answered with an error. Clients may send several batches before reading responses,
+ * which arrive in request order.
+ */
+final class MatchProtocol
+{
+    public static final byte STATUS_NO_MATCH = 0;
+    public static final byte STATUS_MATCH = 1;
+    public static final byte STATUS_ERROR = 2;
+    public static final int MAX_BATCH_SIZE = 65536;
+    public static final int MAX_INPUT_BYTES = 16 * 1024 * 1024;
+    public static final int MAX_GROUP_COUNT = 0xFFFF;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Prevents instantiation.
+     */
+    private MatchProtocol()
+    {
+    }
+
+    /**
+     * Writes an input.
+     *
+     * @param out Destination stream
+     * @param input Input text
+     * @throws IOException Indicates that the stream could not be written
+     */
+    public static void writeInput(DataOutputStream out, String input) throws IOException
+    {
+        byte[] bytes = input.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads an input.
+     *
+     * @param in Source stream
+     * @return Input text
+     * @throws IOException Indicates that the stream could not be read or the input is too long
+     */
+    public static String readInput(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+
+        if (length < 0 || length > MAX_INPUT_BYTES)
+        {
+            throw new IOException("Invalid input length: " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Reads the request count of a batch.
+     *
+     * @param in Source stream
+     * @return Number of requests in the batch
+     * @throws IOException Indicates that the stream could not be read or the batch is too large
+     */
+    public static int readBatchSize(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+
+        if (size < 0 || size > MAX_BATCH_SIZE)
+        {
+            throw new IOException("Invalid batch size: " + size);
+        }
+
+        return size;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.server;
+
+import org.regexml.Expression;
+import org.regexml.ExpressionFactory;
+import org.regexml.ExpressionMatch;
+import org.regexml.exception.ExpressionNotFoundException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Serves the expressions of one factory to other processes on the same host, so that several services can share a
+ * single loaded and warmed set of compiled patterns. The server listens on the loopback interface only and handles
+ * each connection as one task on a caller-supplied executor; requests on a connection are answered in order and
+ * clients may pipeline batches. See MatchClient for the client side.
+ */
+public class MatchServer
+{
+    private ExpressionFactory factory;
+    private ExecutorService executor;
+    private volatile ServerSocket serverSocket;
+    private Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<Socket, Boolean>());
+
+    /**
+     * Constructs a new match server.
+     *
+     * @param factory Factory holding the served expressions, which must not change while the server runs
+     * @param executor Executor running one task per connection, so its thread count limits concurrent connections
+     */
+    public MatchServer(ExpressionFactory factory, ExecutorService executor)
+    {
+        this.factory = factory;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts listening on the loopback interface. Connections are accepted on a daemon thread.
+     *
+     * @param port Port to listen on or 0 to pick a free port
+     * @throws IOException Indicates that the port could not be bound
+     * @throws IllegalStateException Indicates that the server is already running
+     */
+    public synchronized void start(int port) throws IOException, IllegalStateException
+    {
+        if (serverSocket != null)
+        {
+            throw new IllegalStateException("Match server is already running");
+        }
+
+        final ServerSocket socket = new ServerSocket(port, 50, InetAddress.getByName(null));
+        serverSocket = socket;
+
+        Thread acceptor = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                acceptConnections(socket);
+            }
+        }, "regexml-match-server-" + socket.getLocalPort());
+
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return Local port or -1 if the server is not running
+     */
+    public int getPort()
+    {
+        ServerSocket socket = serverSocket;
+
+        return socket == null ? -1 : socket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of open client connections.
+     *
+     * @return Number of connections
+     */
+    public int getConnectionCount()
+    {
+        return connections.size();
+    }
+
+    /**
+     * Stops listening and closes all client connections. The executor is left running.
+     */
+    public synchronized void stop()
+    {
+        if (serverSocket == null)
+        {
+            return;
+        }
+
+        closeQuietly(serverSocket);
+        serverSocket = null;
+
+        for (Socket connection : connections)
+        {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Accepts connections until the server socket is closed.
+     *
+     * @param socket Server socket
+     */
+    private void acceptConnections(ServerSocket socket)
+    {
+        while (!socket.isClosed())
+        {
+            final Socket connection;
+
+            try
+            {
+                connection = socket.accept();
+            }
+            catch (IOException e)
+            {
+                continue; //closed by stop() or a failed handshake
+            }
+
+            connections.add(connection);
+
+            try
+            {
+                executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        serve(connection);
+                    }
+                });
+            }
+            catch (RejectedExecutionException e)
+            {
+                connections.remove(connection);
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Answers request batches on a connection until the client disconnects.
+     *
+     * @param connection Client connection
+     */
+    private void serve(Socket connection)
+    {
+        try
+        {
+            connection.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            while (true)
+            {
+                int size = MatchProtocol.readBatchSize(in);
+
+                for (int i = 0; i < size; i++)
+                {
+                    String id = in.readUTF();
+                    String input = MatchProtocol.readInput(in);
+                    answer(id, input, out);
+                }
+
+                if (in.available() == 0)
+                {
+                    out.flush(); //flush once the client has no further batches in flight
+                }
+            }
+        }
+        catch (EOFException e)
+        {
+            // client disconnected
+        }
+        catch (SocketException e)
+        {
+            // connection closed by stop() or reset by the client
+        }
+        catch (IOException e)
+        {
+            // malformed request, drop the connection
+        }
+        finally
+        {
+            connections.remove(connection);
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Matches one request and writes the response.
+     *
+     * @param id Expression ID
+     * @param input Input to match
+     * @param out Response stream
+     * @throws IOException Indicates that the response could not be written
+     */
+    private void answer(String id, String input, DataOutputStream out) throws IOException
+    {
+        ExpressionMatch match;
+
+        try
+        {
+            Expression expression = factory.getExpression(id);
+            match = expression.find(input);
+        }
+        catch (ExpressionNotFoundException e)
+        {
+            out.writeByte(MatchProtocol.STATUS_ERROR);
+            out.writeUTF(e.getMessage());
+            return;
+        }
+        catch (RuntimeException e)
+        {
+            out.writeByte(MatchProtocol.STATUS_ERROR);
+            out.writeUTF("Matching " + id + " failed: " + e);
+            return;
+        }
+
+        if (match == null)
+        {
+            out.writeByte(MatchProtocol.STATUS_NO_MATCH);
+            return;
+        }
+
+        if (match.groupCount() > MatchProtocol.MAX_GROUP_COUNT)
+        {
+            out.writeByte(MatchProtocol.STATUS_ERROR);
+            out.writeUTF("Expression " + id + " has " + match.groupCount() + " groups, limit is " +
+                MatchProtocol.MAX_GROUP_COUNT);
+            return;
+        }
+
+        out.writeByte(MatchProtocol.STATUS_MATCH);
+        out.writeShort(match.groupCount());
+
+        for (int i = 0; i <= match.groupCount(); i++)
+        {
+            out.writeInt(match.start(i));
+            out.writeInt(match.end(i));
+        }
+    }
+
+    /**
+     * Closes a socket, ignoring errors.
+     *
+     * @param socket Socket to close
+     */
+    private static void closeQuietly(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            // already closed
+        }
+    }
+
+    /**
+     * Closes a server socket, ignoring errors.
+     *
+     * @param socket Server socket to close
+     */
+    private static void closeQuietly(ServerSocket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e)
+        {
+            // already closed
+        }
+    }
+}
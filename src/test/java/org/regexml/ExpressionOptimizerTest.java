@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import junit.framework.TestCase;
+import org.regexml.resource.ClassPathResource;
+
+import java.util.Random;
+
+/**
+ * Verifies that optimization never changes the result of find().
+ */
+public class ExpressionOptimizerTest extends TestCase
+{
+    private static final String[] IDS = {"expressionIgnoresCase", "groupIgnoresCase", "caseSensitive"};
+    private static final String ALPHABET = "abcABCX";
+
+    private ExpressionFactory optimized;
+    private ExpressionFactory unoptimized;
+
+    /**
+     * Loads the expressions with and without optimization.
+     */
+    protected void setUp()
+    {
+        FactoryOptions options = new FactoryOptions();
+        options.setOptimize(true);
+        optimized = new ExpressionFactory(new ClassPathResource("optimizer.xml"), options);
+
+        options = new FactoryOptions();
+        options.setOptimize(false);
+        unoptimized = new ExpressionFactory(new ClassPathResource("optimizer.xml"), options);
+    }
+
+    /**
+     * Literal alternatives that differ only in case keep their order of preference when case is ignored.
+     */
+    public void testCaseInsensitiveAlternation()
+    {
+        assertEquals("0-4", describe(optimized.getExpression("expressionIgnoresCase").find("abcX")));
+        assertEquals("0-4", describe(optimized.getExpression("groupIgnoresCase").find("abcX")));
+    }
+
+    /**
+     * Compares optimized and unoptimized results on random inputs.
+     */
+    public void testSameResultsAsUnoptimized()
+    {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 5000; i++)
+        {
+            StringBuilder input = new StringBuilder();
+
+            for (int length = random.nextInt(8); length > 0; length--)
+            {
+                input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+
+            for (String id : IDS)
+            {
+                assertEquals(id + " on \"" + input + "\"", describe(unoptimized.getExpression(id).find(input)),
+                    describe(optimized.getExpression(id).find(input)));
+            }
+        }
+    }
+
+    /**
+     * Describes a match for comparison.
+     *
+     * @param match Match or null
+     * @return Bounds of the match or null
+     */
+    private static String describe(ExpressionMatch match)
+    {
+        return match == null ? null : match.start() + "-" + match.end();
+    }
+}
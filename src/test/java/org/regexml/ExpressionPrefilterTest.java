@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import junit.framework.TestCase;
+import org.regexml.resource.ClassPathResource;
+
+import java.util.Random;
+
+/**
+ * Verifies that prefiltering never changes the result of find().
+ */
+public class ExpressionPrefilterTest extends TestCase
+{
+    private static final String[] IDS =
+        {"alternation", "groupAlternation", "ignoreCaseAlternation", "capturedAlternation", "literal"};
+    private static final String ALPHABET = "abcxyAB ";
+
+    private ExpressionFactory filtered;
+    private ExpressionFactory unfiltered;
+
+    /**
+     * Loads the expressions with and without prefiltering.
+     */
+    protected void setUp()
+    {
+        FactoryOptions options = new FactoryOptions();
+        options.setPrefilter(true);
+        filtered = new ExpressionFactory(new ClassPathResource("prefilter.xml"), options);
+
+        options = new FactoryOptions();
+        options.setPrefilter(false);
+        unfiltered = new ExpressionFactory(new ClassPathResource("prefilter.xml"), options);
+    }
+
+    /**
+     * An alternation that is not enclosed in a group splits the whole expression, so the prefilter must not require
+     * the first character of the first match element.
+     */
+    public void testUnenclosedAlternation()
+    {
+        Expression expression = filtered.getExpression("alternation");
+
+        assertEquals("xa|b", expression.getRegExString());
+        assertNotNull(expression.find("b"));
+        assertNotNull(expression.find("ab"));
+        assertNotNull(expression.find("yb"));
+        assertNotNull(filtered.getExpression("ignoreCaseAlternation").find("B"));
+    }
+
+    /**
+     * Compares filtered and unfiltered results on random inputs.
+     */
+    public void testSameResultsAsUnfiltered()
+    {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 5000; i++)
+        {
+            StringBuilder input = new StringBuilder();
+
+            for (int length = random.nextInt(8); length > 0; length--)
+            {
+                input.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+
+            for (String id : IDS)
+            {
+                assertEquals(id + " on \"" + input + "\"", describe(unfiltered.getExpression(id).find(input)),
+                    describe(filtered.getExpression(id).find(input)));
+            }
+        }
+    }
+
+    /**
+     * Describes a match for comparison.
+     *
+     * @param match Match or null
+     * @return Bounds of the match or null
+     */
+    private static String describe(ExpressionMatch match)
+    {
+        return match == null ? null : match.start() + "-" + match.end();
+    }
+}
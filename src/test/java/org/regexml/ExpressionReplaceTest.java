@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import junit.framework.TestCase;
+import org.regexml.resource.ClassPathResource;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Verifies that replacing in a character stream gives the same result as replacing in memory.
+ */
+public class ExpressionReplaceTest extends TestCase
+{
+    private static final String[] IDS = {"lookaround", "optional", "boundary", "literal"};
+    private static final int INPUT_LENGTH = 20000;
+    private static final int CHUNK_SIZE = 8192;
+
+    private ExpressionFactory factory;
+    private ReplacementTemplate template;
+
+    /**
+     * Loads the expressions.
+     */
+    protected void setUp()
+    {
+        factory = new ExpressionFactory(new ClassPathResource("replace.xml"), new FactoryOptions());
+        template = ReplacementTemplate.parse("<$0>");
+    }
+
+    /**
+     * An empty match where one round of the stream ends is replaced only once.
+     */
+    public void testEmptyMatchAtChunkBoundary() throws IOException
+    {
+        assertSameAsInMemory("lookaround", input(CHUNK_SIZE - 3, "a"), 5);
+    }
+
+    /**
+     * Places matches at every offset around the chunk boundaries.
+     */
+    public void testMatchesAroundChunkBoundaries() throws IOException
+    {
+        for (int offset = -12; offset <= 12; offset++)
+        {
+            for (String id : IDS)
+            {
+                for (int maxMatchLength : new int[]{2, 5, 100})
+                {
+                    assertSameAsInMemory(id, input(CHUNK_SIZE + offset, "ab"), maxMatchLength);
+                    assertSameAsInMemory(id, input(CHUNK_SIZE - maxMatchLength + offset, "aab"), maxMatchLength);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the results of both replace methods.
+     *
+     * @param id ID of expression
+     * @param input Input to rewrite
+     * @param maxMatchLength Maximum match length passed to the stream variant
+     * @throws IOException Not expected, since both input and output are in memory
+     */
+    private void assertSameAsInMemory(String id, String input, int maxMatchLength) throws IOException
+    {
+        Expression expression = factory.getExpression(id);
+        StringBuilder expected = new StringBuilder();
+        StringBuilder actual = new StringBuilder();
+        int expectedCount = expression.replace(input, template, expected);
+        int actualCount = expression.replace(new StringReader(input), template, actual, maxMatchLength);
+
+        assertEquals(id + " with maxMatchLength " + maxMatchLength, expectedCount, actualCount);
+        assertEquals(id + " with maxMatchLength " + maxMatchLength, expected.toString(), actual.toString());
+    }
+
+    /**
+     * Builds an input of filler characters with text inserted at the given index.
+     *
+     * @param index Index of the inserted text
+     * @param text Text to insert
+     * @return Input
+     */
+    private static String input(int index, String text)
+    {
+        StringBuilder input = new StringBuilder(INPUT_LENGTH);
+
+        while (input.length() < INPUT_LENGTH)
+        {
+            input.append('x');
+        }
+
+        return input.replace(index, index + text.length(), text).toString();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml;
+
+import junit.framework.TestCase;
+import org.regexml.resource.ClassPathResource;
+
+import java.util.Arrays;
+
+/**
+ * Verifies that parameter values substituted into a template match only their own text.
+ */
+public class ExpressionTemplateTest extends TestCase
+{
+    private ExpressionFactory factory;
+
+    /**
+     * Loads the templates.
+     */
+    protected void setUp()
+    {
+        factory = new ExpressionFactory(new ClassPathResource("template.xml"), new FactoryOptions());
+    }
+
+    /**
+     * A '.' in a value matches only a '.'.
+     */
+    public void testDot()
+    {
+        Expression expression = factory.getTemplate("host").instantiate("example.com");
+
+        assertNotNull(expression.find("example.com"));
+        assertNull(expression.find("exampleXcom"));
+    }
+
+    /**
+     * Backslashes, including a trailing backslash and a \Q sequence, are matched literally.
+     */
+    public void testBackslash()
+    {
+        ExpressionTemplate template = factory.getTemplate("host");
+
+        assertNotNull(template.instantiate("a\\").find("a\\"));
+        assertNotNull(template.instantiate("a\\Q").find("a\\Q"));
+        assertNull(template.instantiate("a\\Q").find("aQ"));
+        assertNotNull(template.instantiate("a\\Qb\\E.").find("a\\Qb\\E."));
+        assertNull(template.instantiate("a\\d").find("a1"));
+    }
+
+    /**
+     * Brackets and other metacharacters cannot form a character class or a group.
+     */
+    public void testMetacharacters()
+    {
+        ExpressionTemplate template = factory.getTemplate("host");
+
+        assertNotNull(template.instantiate("[ab]").find("[ab]"));
+        assertNull(template.instantiate("[ab]").find("a"));
+        assertNotNull(template.instantiate("a|b").find("a|b"));
+        assertNull(template.instantiate("a|b").find("b"));
+        assertNotNull(template.instantiate(Arrays.asList("a.b", "c\\")).find("c\\"));
+        assertNull(template.instantiate(Arrays.asList("a.b", "c\\")).find("aXb"));
+    }
+
+    /**
+     * Values inside a character class add only their own characters.
+     */
+    public void testCharacterClass()
+    {
+        Expression expression = factory.getTemplate("hostChars").instantiate("a.\\]");
+
+        assertNotNull(expression.find("a.\\]"));
+        assertNull(expression.find("b"));
+    }
+}
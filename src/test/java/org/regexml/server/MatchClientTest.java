@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2010 Dustin R. Callaway
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.regexml.server;
+
+import junit.framework.TestCase;
+import org.regexml.ExpressionFactory;
+import org.regexml.ExpressionMatch;
+import org.regexml.exception.MatchServerException;
+import org.regexml.resource.ClassPathResource;
+import org.regexml.resource.FileSystemResource;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Verifies pipelining between MatchClient and MatchServer.
+ */
+public class MatchClientTest extends TestCase
+{
+    private static final int BATCHES = 16;
+    private static final int BATCH_SIZE = 8192;
+    private static final int GROUPS = 30;
+
+    private ExecutorService executor;
+    private MatchServer server;
+    private MatchClient client;
+
+    /**
+     * Starts a server with an expression of many capture groups, so that responses are much larger than requests.
+     *
+     * @throws Exception Indicates that the server could not be started
+     */
+    protected void setUp() throws Exception
+    {
+        executor = Executors.newCachedThreadPool();
+        server = new MatchServer(new ExpressionFactory(new ClassPathResource("groups.xml")), executor);
+        server.start(0);
+        client = new MatchClient(server.getPort());
+    }
+
+    /**
+     * Stops the client and server.
+     */
+    protected void tearDown()
+    {
+        client.close();
+        server.stop();
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sends more responses than the socket buffers hold before receiving any of them.
+     *
+     * @throws Exception Indicates that pipelining failed
+     */
+    public void testPipelineBeyondSocketBuffers() throws Exception
+    {
+        final String[] ids = new String[BATCH_SIZE];
+        final String[] inputs = new String[BATCH_SIZE];
+        char[] input = new char[GROUPS];
+        Arrays.fill(input, 'a');
+        Arrays.fill(ids, "groups");
+        Arrays.fill(inputs, new String(input));
+
+        final int[] received = new int[1];
+        final Exception[] failure = new Exception[1];
+
+        Thread pipeline = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    for (int i = 0; i < BATCHES; i++)
+                    {
+                        client.send(ids, inputs);
+                    }
+
+                    for (int i = 0; i < BATCHES; i++)
+                    {
+                        ExpressionMatch[] matches = client.receive();
+                        assertEquals(BATCH_SIZE, matches.length);
+                        assertEquals(GROUPS, matches[BATCH_SIZE - 1].groupCount());
+                        received[0]++;
+                    }
+                }
+                catch (Exception e)
+                {
+                    failure[0] = e;
+                }
+            }
+        });
+
+        pipeline.setDaemon(true);
+        pipeline.start();
+        pipeline.join(60000);
+
+        assertFalse("Pipelining deadlocked after " + received[0] + " batches", pipeline.isAlive());
+        assertNull(failure[0]);
+        assertEquals(BATCHES, received[0]);
+    }
+
+    /**
+     * Rejects batches beyond the pending limit instead of buffering without bound.
+     *
+     * @throws Exception Indicates that a request failed
+     */
+    public void testPendingLimit() throws Exception
+    {
+        String[] ids = {"groups"};
+        String[] inputs = {"b"};
+        client.setMaxPendingBatches(2);
+        client.send(ids, inputs);
+        client.send(ids, inputs);
+
+        try
+        {
+            client.send(ids, inputs);
+            fail("Expected the third batch to be rejected");
+        }
+        catch (IllegalStateException e)
+        {
+            // expected
+        }
+
+        assertNull(client.receive()[0]);
+        client.send(ids, inputs);
+        assertNull(client.receive()[0]);
+        assertNull(client.receive()[0]);
+    }
+
+    /**
+     * Transfers group counts above Short.MAX_VALUE intact and rejects counts that do not fit the protocol, without
+     * desynchronizing later responses.
+     *
+     * @throws Exception Indicates that a request failed
+     */
+    public void testLargeGroupCounts() throws Exception
+    {
+        File file = File.createTempFile("groups", ".xml");
+        Writer writer = new FileWriter(file);
+
+        try
+        {
+            writer.write("<regexml xmlns=\"http://schemas.regexml.org/expressions\" autoEscape=\"false\">");
+            writeAlternation(writer, "many", 40000);
+            writeAlternation(writer, "tooMany", MatchProtocol.MAX_GROUP_COUNT + 1);
+            writer.write("</regexml>");
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        MatchServer largeServer = new MatchServer(new ExpressionFactory(new FileSystemResource(file)), executor);
+        largeServer.start(0);
+        MatchClient largeClient = new MatchClient(largeServer.getPort());
+
+        try
+        {
+            ExpressionMatch[] matches = largeClient.match(new String[]{"many", "many"}, new String[]{"a", "xa"});
+            assertEquals(40000, matches[0].groupCount());
+            assertEquals(1, matches[1].start());
+
+            try
+            {
+                largeClient.match(new String[]{"tooMany"}, new String[]{"a"});
+                fail("Expected the group count to be rejected");
+            }
+            catch (MatchServerException e)
+            {
+                // expected
+            }
+
+            assertEquals(2, largeClient.match(new String[]{"many"}, new String[]{"xxa"})[0].start());
+        }
+        finally
+        {
+            largeClient.close();
+            largeServer.stop();
+            file.delete();
+        }
+    }
+
+    /**
+     * Writes an expression matching "a" followed by the given number of alternatives, never taken, that each hold a
+     * group. Alternatives rather than a sequence of groups keep the pattern compiler from overflowing the stack.
+     *
+     * @param writer Destination of the expression
+     * @param id ID of expression
+     * @param groups Number of capture groups
+     * @throws Exception Indicates that the expression could not be written
+     */
+    private static void writeAlternation(Writer writer, String id, int groups) throws Exception
+    {
+        writer.write("<expression id=\"" + id + "\"><match equals=\"a");
+
+        for (int i = 0; i < groups; i++)
+        {
+            writer.write("|(b)");
+        }
+
+        writer.write("\"/></expression>");
+    }
+}